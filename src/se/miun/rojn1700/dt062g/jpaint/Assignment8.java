@@ -42,6 +42,9 @@ public class Assignment8 {
 		   declared as final.
 		*/
 		final Client client = new Client(address, port);
+
+		// Set up reading and writing drawings while the GUI is created
+		FileHandler.warmUp();
 		
 		// Make sure GUI is created on the event dispatching thread
 		SwingUtilities.invokeLater(new Runnable() {
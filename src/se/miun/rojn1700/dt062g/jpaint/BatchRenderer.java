@@ -0,0 +1,265 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <h1>BatchRenderer</h1>
+ * This file contains the class BatchRenderer, a headless command line program that renders drawings saved as XML to
+ * PNG images.
+ * <p>
+ * Usage: BatchRenderer [-scale factor] [-size widthxheight] [-threads count] input output
+ * <p>
+ * The input is a directory, in which case all XML files in it are rendered, or a file name pattern such as
+ * "xml/Mona*.xml". Every drawing is written to the output directory as a PNG with the same name as the XML file.
+ * Without a size the image is made large enough to hold the whole drawing, unless that is more than MAX_PIXELS, in
+ * which case the drawing is reported as failed instead. A file that can not be read is reported as failed as well, and
+ * no image is written for it. The files are rendered in parallel by a fixed amount of worker threads, and the
+ * throughput is printed when all files are done.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-17
+ */
+public class BatchRenderer {
+    /**
+     * The most pixels of an image, so that a drawing reaching far out, or to infinity, is not rendered to an image
+     * taking up all memory of the workers.
+     */
+    public static final long MAX_PIXELS = 1L << 25;
+
+    private double scale;
+    private int width;
+    private int height;
+
+    /**
+     * Instantiates a new BatchRenderer.
+     *
+     * @param scale  the factor the drawings are scaled with.
+     * @param width  the width of the images, 0 to fit each drawing.
+     * @param height the height of the images, 0 to fit each drawing.
+     */
+    public BatchRenderer(double scale, int width, int height) {
+        this.scale = scale;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        double scale = 1;
+        int width = 0;
+        int height = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        try {
+            while (i < args.length && args[i].startsWith("-")) {
+                if (args[i].equals("-scale")) {
+                    scale = Double.parseDouble(args[i + 1]);
+                } else if (args[i].equals("-size")) {
+                    String[] size = args[i + 1].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                i += 2;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid option: " + e.getMessage());
+            printUsage();
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            return;
+        }
+        if ((long) width * height > MAX_PIXELS) {
+            System.err.println("The size " + width + "x" + height + " is larger than " + MAX_PIXELS + " pixels");
+            printUsage();
+            return;
+        }
+        if (args.length - i != 2 || scale <= 0 || threads < 1) {
+            printUsage();
+            return;
+        }
+
+        List<File> files = findFiles(args[i]);
+        File output = new File(args[i + 1]);
+        if (!output.isDirectory() && !output.mkdirs()) {
+            System.err.println("Could not create directory " + output);
+            return;
+        }
+        new BatchRenderer(scale, width, height).renderAll(files, output, threads);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchRenderer [-scale factor] [-size widthxheight] [-threads count] input output");
+        System.err.println("  input  a directory of drawings, or a pattern such as xml/*.xml");
+        System.err.println("  output the directory to write the PNG images to");
+    }
+
+    /**
+     * Finds the XML files of a directory, or the files matching a pattern.
+     *
+     * @param input a directory or a file name pattern.
+     * @return the files, sorted by name.
+     */
+    static List<File> findFiles(String input) {
+        File directory = new File(input);
+        String pattern = "*.xml";
+        if (!directory.isDirectory()) {
+            Path path = Paths.get(input);
+            directory = path.getParent() == null ? new File(".") : path.getParent().toFile();
+            pattern = path.getFileName().toString();
+        }
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        List<File> files = new ArrayList<>();
+        File[] candidates = directory.listFiles();
+        if (candidates == null) {
+            return files;
+        }
+        Arrays.sort(candidates);
+        for (File file : candidates) {
+            if (file.isFile() && matcher.matches(Paths.get(file.getName()))) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Renders drawings to PNG images on a fixed amount of worker threads, and prints the throughput.
+     *
+     * @param files   the XML files of the drawings.
+     * @param output  the directory to write the images to.
+     * @param threads the amount of worker threads.
+     */
+    public void renderAll(List<File> files, final File output, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (final File file : files) {
+            results.add(pool.submit(new Callable<Integer>() {
+                public Integer call() throws IOException {
+                    return render(file, output);
+                }
+            }));
+        }
+        int rendered = 0;
+        long shapes = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                shapes += results.get(i).get();
+                rendered++;
+            } catch (ExecutionException e) {
+                System.err.println(files.get(i).getName() + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                System.err.println(e.getMessage());
+                break;
+            }
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Rendered " + rendered + " of " + files.size() + " drawings with " + shapes + " shapes in "
+                + String.format("%.2f", seconds) + " s");
+        System.out.println(String.format("%.1f files/s, %.0f shapes/s", rendered / seconds, shapes / seconds));
+        for (DrawingCodec codec : FileHandler.getCodecs()) {
+            if (codec.getReadTimings().getCount() > 0) {
+                System.out.println("Parsed " + codec.getReadTimings() + " as " + codec.getName());
+            }
+        }
+    }
+
+    /**
+     * Renders a drawing to a PNG image in a directory.
+     *
+     * @param file   the XML file of the drawing.
+     * @param output the directory to write the image to.
+     * @return the amount of shapes in the drawing.
+     * @throws IOException if the drawing could not be read or the image could not be written.
+     */
+    public int render(File file, File output) throws IOException {
+        Drawing drawing = FileHandler.load(file);
+        String name = file.getName();
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        ImageIO.write(render(drawing), "png", new File(output, name + ".png"));
+        return drawing.getSize();
+    }
+
+    /**
+     * Renders a drawing saved as XML to a thumbnail. The thumbnail shows the drawing from the origin to its bottom
+     * right corner, scaled down to fit within a square while keeping its proportions.
+     *
+     * @param file the XML file of the drawing.
+     * @param size the largest width and height of the thumbnail.
+     * @return the thumbnail.
+     * @throws IOException if the drawing could not be read.
+     */
+    public static BufferedImage renderThumbnail(File file, int size) throws IOException {
+        Drawing drawing = FileHandler.load(file);
+        double[] bounds = drawing.getStatistics().getBounds();
+        double width = bounds == null ? 1 : Math.max(1, bounds[2] + 1);
+        double height = bounds == null ? 1 : Math.max(1, bounds[3] + 1);
+        double scale = Math.min(size / width, size / height);
+        int thumbnailWidth = Math.min(size, Math.max(1, (int) Math.ceil(width * scale)));
+        int thumbnailHeight = Math.min(size, Math.max(1, (int) Math.ceil(height * scale)));
+        return new BatchRenderer(scale, thumbnailWidth, thumbnailHeight).render(drawing);
+    }
+
+    /**
+     * Renders a drawing to an image on a white background. Without a set size, the image reaches from the origin to
+     * the bottom right corner of the drawing.
+     *
+     * @param drawing the drawing to render.
+     * @return the image.
+     * @throws IllegalArgumentException if the image would have more than MAX_PIXELS pixels.
+     */
+    public BufferedImage render(Drawing drawing) {
+        int imageWidth = width;
+        int imageHeight = height;
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            double[] bounds = drawing.getStatistics().getBounds();
+            double fitWidth = bounds == null ? 1 : Math.max(1, Math.ceil((bounds[2] + 1) * scale));
+            double fitHeight = bounds == null ? 1 : Math.max(1, Math.ceil((bounds[3] + 1) * scale));
+            // Also false for NaN and infinite sizes
+            if (!(fitWidth * fitHeight <= MAX_PIXELS)) {
+                throw new IllegalArgumentException("The drawing reaches to " + bounds[2] + "," + bounds[3]
+                        + ", too far out for an image of at most " + MAX_PIXELS + " pixels, set a size or a scale");
+            }
+            imageWidth = (int) fitWidth;
+            imageHeight = (int) fitHeight;
+        }
+        BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, imageWidth, imageHeight);
+        g.setClip(0, 0, imageWidth, imageHeight);
+        g.scale(scale, scale);
+        drawing.drawBatched(g);
+        g.dispose();
+        return image;
+    }
+}
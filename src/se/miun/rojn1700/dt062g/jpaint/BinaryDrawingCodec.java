@@ -0,0 +1,539 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>BinaryDrawingCodec</h1>
+ * This file contains the class BinaryDrawingCodec, which reads and writes drawings in a compact binary format.
+ * <p>
+ * A file starts with the magic number "JPNT" and a version byte, followed by a header holding the name and the author,
+ * the amount of shapes, the bounds of the drawing and the palette of the colors used. The shapes follow in blocks of
+ * at most BLOCK_SIZE shapes. The header and every block end with a CRC-32 checksum, so a damaged file is detected
+ * instead of read as a different drawing. Fixed size numbers are written big-endian.
+ * <p>
+ * A shape is written as a tag byte holding its kind and whether it has an end point, followed by the index of its color
+ * in the palette. Coordinates that are whole hundredths, which is what drawings are usually made of, are written as
+ * a whole amount of hundredths with zigzag varint encoding, where small numbers of either sign take few bytes. The
+ * start point of a shape is written as its offset from the start point of the shape before it in the block, the end
+ * point and every later point of a stroke as their offsets from the point before. A shape with any other
+ * coordinate, eg. drawn while zoomed, has all its coordinates written as raw doubles, which the tag tells. Every value
+ * thereby reads back exactly as it was written, and as every block starts over from the origin, each block can be read
+ * on its own.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-29
+ */
+class BinaryDrawingCodec extends DrawingCodec {
+    /**
+     * The first bytes of every file in the format.
+     */
+    static final byte[] MAGIC = {'J', 'P', 'N', 'T'};
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 1;
+    /**
+     * The most shapes written in one block.
+     */
+    static final int BLOCK_SIZE = 4096;
+    /**
+     * The most bytes read at once into a block whose length has not been confirmed by reading it.
+     */
+    static final int READ_STEP = 1 << 20;
+    /**
+     * The amount of steps per unit of the coordinates written as whole numbers.
+     */
+    private static final double PRECISION = PointBuffer.PRECISION;
+    /**
+     * The largest amount of steps written as a whole number, so that every such amount is an exact double.
+     */
+    private static final double MAX_STEPS = 1L << 52;
+
+    /**
+     * The bits of the tag byte.
+     */
+    private static final int KIND_MASK = 0x03;
+    private static final int HAS_END = 0x04;
+    private static final int RAW = 0x08;
+
+    /**
+     * Instantiates a new BinaryDrawingCodec.
+     */
+    BinaryDrawingCodec() {
+        super("Binary", ".jpb");
+    }
+
+    @Override
+    boolean accepts(byte[] header, int length) {
+        return length >= MAGIC.length && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC);
+    }
+
+    @Override
+    protected void encode(Drawing drawing, OutputStream stream) throws IOException {
+        ShapeStore store = drawing.getStore();
+        DataOutputStream out = new DataOutputStream(stream);
+        CRC32 crc = new CRC32();
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        writeHeader(drawing, out, crc);
+
+        ByteWriter block = new ByteWriter(BLOCK_SIZE * 16);
+        for (int from = 0; from < store.size(); from += BLOCK_SIZE) {
+            int to = Math.min(store.size(), from + BLOCK_SIZE);
+            block.size = 0;
+            writeBlock(store, null, from, to, block);
+            writeChecked(out, to - from, block, crc);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the header of a drawing, holding everything but its shapes, followed by its checksum.
+     *
+     * @return the amount of bytes written.
+     */
+    static int writeHeader(Drawing drawing, DataOutputStream out, CRC32 crc) throws IOException {
+        ShapeStore store = drawing.getStore();
+        ByteWriter header = new ByteWriter(256);
+        header.writeString(drawing.getName());
+        header.writeString(drawing.getAuthor());
+        header.writeVarint(store.size());
+        double[] bounds = store.getStatistics().getBounds();
+        for (int k = 0; k < 4; k++) {
+            header.writeDouble(bounds != null ? bounds[k] : Double.NaN);
+        }
+        ColorPalette palette = store.getPalette();
+        header.writeVarint(palette.size());
+        for (int c = 0; c < palette.size(); c++) {
+            header.writeString(palette.getName(c));
+        }
+        out.writeInt(header.size);
+        out.write(header.bytes, 0, header.size);
+        crc.reset();
+        crc.update(header.bytes, 0, header.size);
+        out.writeInt((int) crc.getValue());
+        return header.size + 8;
+    }
+
+    /**
+     * Writes a block of an amount of shapes, its length and its checksum.
+     *
+     * @return the amount of bytes written.
+     */
+    static int writeChecked(DataOutputStream out, int count, ByteWriter block, CRC32 crc) throws IOException {
+        out.writeInt(count);
+        out.writeInt(block.size);
+        out.write(block.bytes, 0, block.size);
+        crc.reset();
+        crc.update(block.bytes, 0, block.size);
+        out.writeInt((int) crc.getValue());
+        return block.size + 12;
+    }
+
+    /**
+     * Writes shapes of a store as the content of a block. The shapes are a range of the store, or a range of an
+     * array of their indexes.
+     *
+     * @param indexes the indexes of the shapes to write, or null to write the shapes from and to the range itself.
+     */
+    static void writeBlock(ShapeStore store, int[] indexes, int from, int to, ByteWriter out) {
+        long lastX = 0;
+        long lastY = 0;
+        for (int n = from; n < to; n++) {
+            int i = indexes != null ? indexes[n] : n;
+            byte kind = store.getKind(i);
+            boolean hasEnd = store.hasEndPoint(i);
+            int count = store.getPointCount(i);
+            boolean whole = isWhole(store.getStartX(i)) && isWhole(store.getStartY(i));
+            if (kind == ShapeStore.STROKE) {
+                for (int k = 1; whole && k < count; k++) {
+                    whole = isWhole(store.getPointX(i, k)) && isWhole(store.getPointY(i, k));
+                }
+            } else if (hasEnd) {
+                whole = whole && isWhole(store.getEndX(i)) && isWhole(store.getEndY(i));
+            }
+            out.writeByte(kind | (hasEnd ? HAS_END : 0) | (whole ? 0 : RAW));
+            out.writeVarint(store.getColorIndex(i));
+            if (kind == ShapeStore.STROKE) {
+                out.writeVarint(count);
+            }
+            if (!whole) {
+                if (kind == ShapeStore.STROKE) {
+                    for (int k = 0; k < count; k++) {
+                        out.writeDouble(store.getPointX(i, k));
+                        out.writeDouble(store.getPointY(i, k));
+                    }
+                } else {
+                    out.writeDouble(store.getStartX(i));
+                    out.writeDouble(store.getStartY(i));
+                    if (hasEnd) {
+                        out.writeDouble(store.getEndX(i));
+                        out.writeDouble(store.getEndY(i));
+                    }
+                }
+                continue;
+            }
+            long x = steps(store.getStartX(i));
+            long y = steps(store.getStartY(i));
+            out.writeZigzag(x - lastX);
+            out.writeZigzag(y - lastY);
+            lastX = x;
+            lastY = y;
+            if (kind == ShapeStore.STROKE) {
+                for (int k = 1; k < count; k++) {
+                    long pointX = steps(store.getPointX(i, k));
+                    long pointY = steps(store.getPointY(i, k));
+                    out.writeZigzag(pointX - x);
+                    out.writeZigzag(pointY - y);
+                    x = pointX;
+                    y = pointY;
+                }
+            } else if (hasEnd) {
+                out.writeZigzag(steps(store.getEndX(i)) - x);
+                out.writeZigzag(steps(store.getEndY(i)) - y);
+            }
+        }
+    }
+
+    /**
+     * Checks if a coordinate is a whole amount of steps that reads back as exactly the same double.
+     */
+    private static boolean isWhole(double value) {
+        double steps = Math.rint(value * PRECISION);
+        return Math.abs(steps) < MAX_STEPS
+                && Double.doubleToRawLongBits(steps / PRECISION) == Double.doubleToRawLongBits(value);
+    }
+
+    private static long steps(double value) {
+        return (long) Math.rint(value * PRECISION);
+    }
+
+    @Override
+    protected Drawing decode(InputStream stream) throws IOException {
+        try {
+            return readDrawing(new DataInputStream(stream));
+        } catch (EOFException e) {
+            throw new EOFException("Damaged binary drawing: unexpected end of file");
+        }
+    }
+
+    private static Drawing readDrawing(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary drawing");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the binary drawing format");
+        }
+        CRC32 crc = new CRC32();
+        // The bounds in the header are for readers that only look at the header
+        Header header = Header.read(in, crc);
+        Drawing drawing = new Drawing(header.name, header.author);
+        ShapeStore store = drawing.getStore();
+        int[] colors = header.intern(store);
+        int shapes = header.shapes;
+
+        PointBuffer points = new PointBuffer();
+        int read = 0;
+        while (read < shapes) {
+            int count = in.readInt();
+            if (count <= 0 || count > shapes - read) {
+                throw new IOException("Damaged binary drawing: block of " + count + " shapes");
+            }
+            ByteReader block = new ByteReader(readChecked(in, in.readInt(), crc));
+            readBlock(block, count, store, colors, points);
+            read += count;
+        }
+        return drawing;
+    }
+
+    /**
+     * Reads an amount of bytes followed by their checksum, and checks it. The length comes from the file and is not
+     * trusted: the bytes are read in steps of at most READ_STEP, growing the array as they arrive, so a damaged length
+     * ends in an EOFException at the end of the file instead of an array of up to 2 GB.
+     */
+    static byte[] readChecked(DataInputStream in, int length, CRC32 crc) throws IOException {
+        if (length < 0) {
+            throw new IOException("Damaged binary drawing: length " + length);
+        }
+        byte[] bytes = new byte[Math.min(length, READ_STEP)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            int step = Math.min(bytes.length - read, READ_STEP);
+            in.readFully(bytes, read, step);
+            read += step;
+        }
+        crc.reset();
+        crc.update(bytes, 0, length);
+        if (in.readInt() != (int) crc.getValue()) {
+            throw new IOException("Damaged binary drawing: checksum mismatch");
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the shapes of a block into a store.
+     */
+    static void readBlock(ByteReader in, int count, ShapeStore store, int[] colors, PointBuffer points)
+            throws IOException {
+        long lastX = 0;
+        long lastY = 0;
+        for (int n = 0; n < count; n++) {
+            int tag = in.readByte();
+            byte kind = (byte) (tag & KIND_MASK);
+            boolean hasEnd = (tag & HAS_END) != 0;
+            int colorIndex = in.readVarint();
+            if (kind >= ShapeStore.KINDS || colorIndex >= colors.length) {
+                throw new IOException("Damaged binary drawing: shape of kind " + kind + " and color " + colorIndex);
+            }
+            int color = colors[colorIndex];
+            if (kind == ShapeStore.STROKE) {
+                int pointCount = in.readVarint();
+                points.clear();
+                if ((tag & RAW) != 0) {
+                    for (int k = 0; k < pointCount; k++) {
+                        points.add(in.readDouble(), in.readDouble());
+                    }
+                } else {
+                    long x = lastX + in.readZigzag();
+                    long y = lastY + in.readZigzag();
+                    lastX = x;
+                    lastY = y;
+                    points.add(x / PRECISION, y / PRECISION);
+                    for (int k = 1; k < pointCount; k++) {
+                        x += in.readZigzag();
+                        y += in.readZigzag();
+                        points.add(x / PRECISION, y / PRECISION);
+                    }
+                }
+                store.addStroke(points, 0, points.size(), color);
+                continue;
+            }
+            double startX;
+            double startY;
+            double endX = Double.NaN;
+            double endY = Double.NaN;
+            if ((tag & RAW) != 0) {
+                startX = in.readDouble();
+                startY = in.readDouble();
+                if (hasEnd) {
+                    endX = in.readDouble();
+                    endY = in.readDouble();
+                }
+            } else {
+                long x = lastX + in.readZigzag();
+                long y = lastY + in.readZigzag();
+                lastX = x;
+                lastY = y;
+                startX = x / PRECISION;
+                startY = y / PRECISION;
+                if (hasEnd) {
+                    endX = (x + in.readZigzag()) / PRECISION;
+                    endY = (y + in.readZigzag()) / PRECISION;
+                }
+            }
+            store.add(kind, startX, startY, endX, endY, color);
+        }
+        if (in.position != in.bytes.length) {
+            throw new IOException("Damaged binary drawing: block longer than its shapes");
+        }
+    }
+
+    /**
+     * The header of a drawing, holding everything but its shapes.
+     */
+    static class Header {
+        String name;
+        String author;
+        int shapes;
+        /**
+         * The bounds of the shapes as {minX, minY, maxX, maxY}, all NaN if no shape has an end point.
+         */
+        double[] bounds = new double[4];
+        String[] colors;
+
+        /**
+         * Reads a header and its checksum.
+         */
+        static Header read(DataInputStream in, CRC32 crc) throws IOException {
+            ByteReader reader = new ByteReader(readChecked(in, in.readInt(), crc));
+            Header header = new Header();
+            header.name = reader.readString();
+            header.author = reader.readString();
+            header.shapes = reader.readVarint();
+            for (int k = 0; k < 4; k++) {
+                header.bounds[k] = reader.readDouble();
+            }
+            header.colors = new String[reader.readVarint()];
+            for (int c = 0; c < header.colors.length; c++) {
+                header.colors[c] = reader.readString();
+            }
+            return header;
+        }
+
+        /**
+         * Adds the colors to the palette of a store.
+         *
+         * @return the index in the palette of every color.
+         */
+        int[] intern(ShapeStore store) {
+            int[] indexes = new int[colors.length];
+            for (int c = 0; c < colors.length; c++) {
+                indexes[c] = store.getPalette().intern(colors[c]);
+            }
+            return indexes;
+        }
+    }
+
+    /**
+     * A growable array of bytes being written.
+     */
+    static class ByteWriter {
+        byte[] bytes;
+        int size;
+
+        ByteWriter(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + more, bytes.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a non-negative number seven bits at a time, lowest first, with the high bit set on all but the last.
+         */
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a number of either sign, mapping 0, -1, 1, -2 and so on to 0, 1, 2, 3.
+         */
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (bits >>> shift);
+            }
+        }
+
+        /**
+         * Writes a string as UTF-8, after its length plus one. A length of zero stands for null.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+    }
+
+    /**
+     * Reads the values written by a ByteWriter from an array of bytes.
+     */
+    static class ByteReader {
+        final byte[] bytes;
+        int position;
+
+        ByteReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() throws IOException {
+            if (position >= bytes.length) {
+                throw new EOFException("Damaged binary drawing: unexpected end of block");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarlong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Damaged binary drawing: varint too long");
+        }
+
+        int readVarint() throws IOException {
+            long value = readVarlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Damaged binary drawing: count " + value);
+            }
+            return (int) value;
+        }
+
+        long readZigzag() throws IOException {
+            long value = readVarlong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() throws IOException {
+            if (position + 8 > bytes.length) {
+                throw new EOFException("Damaged binary drawing: unexpected end of block");
+            }
+            long bits = 0;
+            for (int k = 0; k < 8; k++) {
+                bits = (bits << 8) | (bytes[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() throws IOException {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (position + length > bytes.length) {
+                throw new EOFException("Damaged binary drawing: unexpected end of header");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <h1>ChunkStreamer</h1>
+ * This file contains the class ChunkStreamer, which shows a drawing too large to load through a DrawingPanel by
+ * reading the part of it around the viewport from a ChunkedDrawingFile as the viewport moves.
+ * <p>
+ * The streamer has a drawing of its own, holding the shapes of the chunks read. The panel tells the streamer about
+ * its viewport every time it is painted, and once the viewport is no longer inside the region read, the chunks around
+ * it are read by a SwingWorker. The region read reaches half the size of the viewport beyond it on every side, so
+ * that panning a little does not need any reading. When the chunks have been read, they take the place of the shapes
+ * of the drawing as one change, which the panel renders as any other. The chunks read last are kept by the file, so
+ * going back to a part looked at before does not read the file again. At most MAX_SHAPES shapes are read, so when
+ * zoomed out over too much of the drawing the chunks closest to the middle of the viewport are shown.
+ * <p>
+ * The drawing is only a view of a part of the file, so shapes can not be drawn on it.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class ChunkStreamer {
+    /**
+     * Chunked drawings with at least this many shapes are streamed instead of loaded.
+     */
+    static final int STREAM_SIZE = 1000000;
+    /**
+     * The most shapes read for the viewport.
+     */
+    static final int MAX_SHAPES = 1000000;
+
+    private final ChunkedDrawingFile file;
+    private final Drawing drawing;
+    /**
+     * The region of the drawing read, and the region being read, as {minX, minY, maxX, maxY}. Null if none.
+     */
+    private double[] loaded;
+    private double[] loading;
+    /**
+     * The worker reading the region being read, or null.
+     */
+    private SwingWorker<ShapeStore, Void> reader;
+
+    /**
+     * Instantiates a new ChunkStreamer. Nothing is read until the streamer is told about a viewport.
+     *
+     * @param file the file to read the drawing from.
+     */
+    ChunkStreamer(ChunkedDrawingFile file) {
+        this.file = file;
+        drawing = new Drawing(file.getName(), file.getAuthor());
+    }
+
+    /**
+     * Gets the file the drawing is read from.
+     *
+     * @return the file
+     */
+    ChunkedDrawingFile getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the drawing holding the shapes read.
+     *
+     * @return the drawing
+     */
+    Drawing getDrawing() {
+        return drawing;
+    }
+
+    /**
+     * Checks if a region of the drawing is being read.
+     *
+     * @return true if chunks are being read.
+     */
+    boolean isReading() {
+        return reader != null;
+    }
+
+    /**
+     * Tells the streamer about the part of the drawing shown, starting to read the chunks around it unless they have
+     * already been read or are being read. Called on the event dispatch thread.
+     *
+     * @param viewport the viewport of the panel.
+     * @param width    the width of the panel.
+     * @param height   the height of the panel.
+     */
+    void update(Viewport viewport, int width, int height) {
+        double minX = viewport.toDrawingX(0);
+        double minY = viewport.toDrawingY(0);
+        double maxX = viewport.toDrawingX(width);
+        double maxY = viewport.toDrawingY(height);
+        if (contains(loading, minX, minY, maxX, maxY)
+                || (reader == null && contains(loaded, minX, minY, maxX, maxY))) {
+            return;
+        }
+        if (reader != null) {
+            reader.cancel(false);
+        }
+        double marginX = (maxX - minX) / 2;
+        double marginY = (maxY - minY) / 2;
+        final double[] region = {minX - marginX, minY - marginY, maxX + marginX, maxY + marginY};
+        loading = region;
+        reader = new SwingWorker<ShapeStore, Void>() {
+            @Override
+            protected ShapeStore doInBackground() throws Exception {
+                return file.read(region[0], region[1], region[2], region[3], MAX_SHAPES);
+            }
+
+            @Override
+            protected void done() {
+                if (reader != this) {
+                    return;
+                }
+                reader = null;
+                loading = null;
+                // A region that could not be read is not tried again until the viewport leaves it
+                loaded = region;
+                try {
+                    drawing.replaceStore(get(), DrawingEvent.REPLACED);
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    System.err.println(cause.getMessage());
+                }
+            }
+        };
+        reader.execute();
+    }
+
+    private static boolean contains(double[] region, double minX, double minY, double maxX, double maxY) {
+        return region != null && region[0] <= minX && region[1] <= minY && region[2] >= maxX && region[3] >= maxY;
+    }
+
+    /**
+     * Stops reading and closes the file.
+     */
+    void close() {
+        if (reader != null) {
+            reader.cancel(false);
+            reader = null;
+            loading = null;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
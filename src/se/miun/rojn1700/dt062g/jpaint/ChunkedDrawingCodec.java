@@ -0,0 +1,282 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>ChunkedDrawingCodec</h1>
+ * This file contains the class ChunkedDrawingCodec, which reads and writes drawings with their shapes grouped into
+ * spatial chunks, so that the shapes in a part of a huge drawing can be read without reading the rest.
+ * <p>
+ * A file starts with the magic number "JPCK" and a version byte, followed by the same header as in the compact binary
+ * format. The shapes are then sorted into chunks of at most CHUNK_SIZE shapes lying close together: they are cut into
+ * vertical slices by the x-value of their centers, and every slice into chunks by the y-value. Each chunk is written
+ * as a block of the binary format, after the indexes the shapes have in the drawing, so the order they are drawn in
+ * is kept. The chunks are followed by a footer listing the bounds of every chunk, where it starts and how long it is,
+ * and the file ends with the position of the footer and the magic number again. A ChunkedDrawingFile thereby only
+ * has to read the header and the footer when opening a file, and then reads the chunks intersecting a region as they
+ * are needed.
+ * <p>
+ * Reading a whole file from a stream reads the chunks in the order they were written, and puts the shapes back in the
+ * order of the drawing once all are read.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class ChunkedDrawingCodec extends DrawingCodec {
+    /**
+     * The first and the last bytes of every file in the format.
+     */
+    static final byte[] MAGIC = {'J', 'P', 'C', 'K'};
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 1;
+    /**
+     * The most shapes written in one chunk.
+     */
+    static final int CHUNK_SIZE = BinaryDrawingCodec.BLOCK_SIZE;
+    /**
+     * The length of the end of a file, holding the position of the footer and the magic number.
+     */
+    static final int TAIL_LENGTH = 8 + MAGIC.length;
+    /**
+     * The amount of steps the centers of the shapes are rounded to along each axis when sorting them into chunks.
+     */
+    private static final double GRID = 1 << 30;
+
+    /**
+     * Instantiates a new ChunkedDrawingCodec.
+     */
+    ChunkedDrawingCodec() {
+        super("Chunked", ".jpc");
+    }
+
+    @Override
+    boolean accepts(byte[] header, int length) {
+        return length >= MAGIC.length && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC);
+    }
+
+    @Override
+    protected void encode(Drawing drawing, OutputStream stream) throws IOException {
+        ShapeStore store = drawing.getStore();
+        DataOutputStream out = new DataOutputStream(stream);
+        CRC32 crc = new CRC32();
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        long offset = MAGIC.length + 1 + BinaryDrawingCodec.writeHeader(drawing, out, crc);
+
+        int[][] chunks = partition(store, CHUNK_SIZE);
+        BinaryDrawingCodec.ByteWriter footer = new BinaryDrawingCodec.ByteWriter(16 + chunks.length * 48);
+        footer.writeVarint(chunks.length);
+        BinaryDrawingCodec.ByteWriter block = new BinaryDrawingCodec.ByteWriter(CHUNK_SIZE * 20);
+        for (int[] chunk : chunks) {
+            block.size = 0;
+            int last = -1;
+            for (int index : chunk) {
+                block.writeVarint(index - last - 1);
+                last = index;
+            }
+            BinaryDrawingCodec.writeBlock(store, chunk, 0, chunk.length, block);
+            int length = BinaryDrawingCodec.writeChecked(out, chunk.length, block, crc);
+
+            double[] bounds = getBounds(store, chunk);
+            for (int k = 0; k < 4; k++) {
+                footer.writeDouble(bounds[k]);
+            }
+            footer.writeVarint(offset);
+            footer.writeVarint(length);
+            footer.writeVarint(chunk.length);
+            offset += length;
+        }
+        // A block of no shapes tells a reader going through the file that the chunks have ended
+        BinaryDrawingCodec.writeChecked(out, 0, footer, crc);
+        out.writeLong(offset);
+        out.write(MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Sorts the shapes of a store into chunks of shapes lying close together, by the centers of their bounding boxes.
+     * A shape without an end point lies at its start point. The shapes of every chunk are in the order of the store.
+     *
+     * @param store     the store holding the shapes.
+     * @param chunkSize the most shapes in one chunk.
+     * @return the indexes of the shapes of every chunk.
+     */
+    static int[][] partition(ShapeStore store, int chunkSize) {
+        int size = store.size();
+        double[] centerX = new double[size];
+        double[] centerY = new double[size];
+        double[] extent = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < size; i++) {
+            double[] bounds = store.getBounds(i);
+            centerX[i] = bounds != null ? (bounds[0] + bounds[2]) / 2 : store.getStartX(i);
+            centerY[i] = bounds != null ? (bounds[1] + bounds[3]) / 2 : store.getStartY(i);
+            if (Double.isFinite(centerX[i]) && Double.isFinite(centerY[i])) {
+                extent[0] = Math.min(extent[0], centerX[i]);
+                extent[1] = Math.min(extent[1], centerY[i]);
+                extent[2] = Math.max(extent[2], centerX[i]);
+                extent[3] = Math.max(extent[3], centerY[i]);
+            }
+        }
+
+        int chunkCount = (size + chunkSize - 1) / chunkSize;
+        int sliceSize = (int) Math.min(size, (long) Math.ceil(Math.sqrt(chunkCount)) * chunkSize);
+        // The shapes are sorted as numbers holding the rounded center above the index of the shape
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = round(centerX[i], extent[0], extent[2]) << 32 | i;
+        }
+        Arrays.sort(keys);
+        for (int from = 0; from < size; from += sliceSize) {
+            int to = Math.min(size, from + sliceSize);
+            for (int n = from; n < to; n++) {
+                int i = (int) keys[n];
+                keys[n] = round(centerY[i], extent[1], extent[3]) << 32 | i;
+            }
+            Arrays.sort(keys, from, to);
+        }
+
+        int[][] chunks = new int[chunkCount][];
+        for (int c = 0; c < chunkCount; c++) {
+            int from = c * chunkSize;
+            int[] chunk = new int[Math.min(chunkSize, size - from)];
+            for (int n = 0; n < chunk.length; n++) {
+                chunk[n] = (int) keys[from + n];
+            }
+            Arrays.sort(chunk);
+            chunks[c] = chunk;
+        }
+        return chunks;
+    }
+
+    /**
+     * Rounds a value to the steps of the grid between two values. A value that is not finite is put at the start.
+     */
+    private static long round(double value, double min, double max) {
+        if (!Double.isFinite(value) || !(max > min)) {
+            return 0;
+        }
+        return (long) ((value - min) / (max - min) * GRID);
+    }
+
+    /**
+     * Gets the bounds of a chunk, which hold the bounding boxes of its shapes and the start points of its shapes
+     * without an end point.
+     */
+    private static double[] getBounds(ShapeStore store, int[] chunk) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i : chunk) {
+            double[] shape = store.getBounds(i);
+            if (shape == null) {
+                shape = new double[]{store.getStartX(i), store.getStartY(i), store.getStartX(i), store.getStartY(i)};
+            }
+            bounds[0] = Math.min(bounds[0], shape[0]);
+            bounds[1] = Math.min(bounds[1], shape[1]);
+            bounds[2] = Math.max(bounds[2], shape[2]);
+            bounds[3] = Math.max(bounds[3], shape[3]);
+        }
+        return bounds;
+    }
+
+    @Override
+    protected Drawing decode(InputStream stream) throws IOException {
+        try {
+            return readDrawing(new DataInputStream(stream));
+        } catch (EOFException e) {
+            throw new EOFException("Damaged chunked drawing: unexpected end of file");
+        }
+    }
+
+    private static Drawing readDrawing(DataInputStream in) throws IOException {
+        readStart(in);
+        CRC32 crc = new CRC32();
+        BinaryDrawingCodec.Header header = BinaryDrawingCodec.Header.read(in, crc);
+        Drawing drawing = new Drawing(header.name, header.author);
+        ShapeStore store = drawing.getStore();
+        header.intern(store);
+
+        // The shapes are read in the order of the chunks, and then added to the drawing in their own order
+        ShapeStore unsorted = new ShapeStore();
+        int[] colors = header.intern(unsorted);
+        int[] positions = new int[header.shapes];
+        Arrays.fill(positions, -1);
+        PointBuffer points = new PointBuffer();
+        while (unsorted.size() < header.shapes) {
+            int count = in.readInt();
+            byte[] chunk = BinaryDrawingCodec.readChecked(in, in.readInt(), crc);
+            int first = unsorted.size();
+            int[] indexes = readChunk(chunk, count, header.shapes - first, header.shapes, unsorted, colors, points);
+            for (int n = 0; n < count; n++) {
+                if (positions[indexes[n]] != -1) {
+                    throw new IOException("Damaged chunked drawing: shape " + indexes[n] + " written twice");
+                }
+                positions[indexes[n]] = first + n;
+            }
+        }
+        for (int position : positions) {
+            store.add(unsorted, position);
+        }
+        return drawing;
+    }
+
+    /**
+     * Reads and checks the magic number and the version at the start of a file.
+     */
+    static void readStart(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a chunked drawing");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the chunked drawing format");
+        }
+    }
+
+    /**
+     * Reads the shapes of a chunk into a store.
+     *
+     * @param chunk  the content of the chunk.
+     * @param count  the amount of shapes in the chunk.
+     * @param left   the most shapes the chunk may hold.
+     * @param shapes the amount of shapes of the drawing.
+     * @param store  the store to add the shapes to.
+     * @param colors the index in the palette of the store of every color of the file.
+     * @param points a buffer used for the points of strokes.
+     * @return the index of every shape of the chunk in the drawing, in the order they were added to the store.
+     * @throws IOException if the chunk is damaged.
+     */
+    static int[] readChunk(byte[] chunk, int count, int left, int shapes, ShapeStore store, int[] colors,
+                           PointBuffer points) throws IOException {
+        if (count <= 0 || count > left) {
+            throw new IOException("Damaged chunked drawing: chunk of " + count + " shapes");
+        }
+        BinaryDrawingCodec.ByteReader in = new BinaryDrawingCodec.ByteReader(chunk);
+        int[] indexes = new int[count];
+        long last = -1;
+        for (int n = 0; n < count; n++) {
+            last += in.readVarint() + 1L;
+            if (last >= shapes) {
+                throw new IOException("Damaged chunked drawing: shape " + last + " of " + shapes);
+            }
+            indexes[n] = (int) last;
+        }
+        BinaryDrawingCodec.readBlock(in, count, store, colors, points);
+        return indexes;
+    }
+}
@@ -0,0 +1,409 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>ChunkedDrawingFile</h1>
+ * This file contains the class ChunkedDrawingFile, which reads the parts of a drawing in a file written by the
+ * ChunkedDrawingCodec that intersect a region, without reading the rest of the file.
+ * <p>
+ * Opening a file only reads its header and the footer listing its chunks, which takes about as long for a file of
+ * gigabytes as for a small one. Reading a region then reads the chunks whose bounds intersect it, and puts their
+ * shapes together in the order of the drawing, so they are drawn as the whole drawing draws them. The last chunks
+ * read are kept decoded in a cache of a bounded amount of chunks, and the chunk used the longest time ago is dropped
+ * first, so moving back and forth over a drawing reads every chunk from the file once.
+ * <p>
+ * A file may be read by several threads at once.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class ChunkedDrawingFile implements Closeable {
+    /**
+     * The amount of decoded chunks kept by default, which is about a million shapes.
+     */
+    static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final File file;
+    private final FileChannel channel;
+    private final BinaryDrawingCodec.Header header;
+    /**
+     * The bounds of every chunk as {minX, minY, maxX, maxY}, one after the other.
+     */
+    private final double[] bounds;
+    /**
+     * The position in the file, the length and the amount of shapes of every chunk.
+     */
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] counts;
+    /**
+     * The decoded chunks, in the order they were last used. Guarded by itself.
+     */
+    private final LinkedHashMap<Integer, Chunk> cache = new LinkedHashMap<Integer, Chunk>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    private volatile int cacheSize = DEFAULT_CACHE_SIZE;
+    /**
+     * The amount of chunks read from the file, not counting those found in the cache. Guarded by the cache.
+     */
+    private long chunksRead;
+
+    private ChunkedDrawingFile(File file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        ChunkedDrawingCodec.readStart(in);
+        CRC32 crc = new CRC32();
+        header = BinaryDrawingCodec.Header.read(in, crc);
+
+        long size = channel.size();
+        ByteBuffer tail = read(size - ChunkedDrawingCodec.TAIL_LENGTH, ChunkedDrawingCodec.TAIL_LENGTH);
+        long footerOffset = tail.getLong();
+        byte[] magic = new byte[ChunkedDrawingCodec.MAGIC.length];
+        tail.get(magic);
+        if (!Arrays.equals(magic, ChunkedDrawingCodec.MAGIC) || footerOffset < 0
+                || footerOffset > size - ChunkedDrawingCodec.TAIL_LENGTH) {
+            throw new IOException("Damaged chunked drawing: no footer");
+        }
+        DataInputStream footerIn = new DataInputStream(new ByteArrayInputStream(
+                read(footerOffset, (int) (size - ChunkedDrawingCodec.TAIL_LENGTH - footerOffset)).array()));
+        if (footerIn.readInt() != 0) {
+            throw new IOException("Damaged chunked drawing: no footer");
+        }
+        BinaryDrawingCodec.ByteReader footer =
+                new BinaryDrawingCodec.ByteReader(BinaryDrawingCodec.readChecked(footerIn, footerIn.readInt(), crc));
+        int chunkCount = footer.readVarint();
+        bounds = new double[chunkCount * 4];
+        offsets = new long[chunkCount];
+        lengths = new int[chunkCount];
+        counts = new int[chunkCount];
+        long shapes = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            for (int k = 0; k < 4; k++) {
+                bounds[c * 4 + k] = footer.readDouble();
+            }
+            offsets[c] = footer.readVarlong();
+            lengths[c] = footer.readVarint();
+            counts[c] = footer.readVarint();
+            shapes += counts[c];
+            if (offsets[c] < 0 || offsets[c] + lengths[c] > footerOffset) {
+                throw new IOException("Damaged chunked drawing: chunk " + c + " outside of the file");
+            }
+        }
+        if (shapes != header.shapes) {
+            throw new IOException("Damaged chunked drawing: " + shapes + " shapes in chunks of " + header.shapes);
+        }
+    }
+
+    /**
+     * Opens a file, reading its header and its footer.
+     *
+     * @param fileName the file name.
+     * @return the opened file.
+     * @throws IOException if the file could not be read or is not a chunked drawing.
+     */
+    static ChunkedDrawingFile open(String fileName) throws IOException {
+        File file = new File(fileName);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ChunkedDrawingFile(file, channel);
+        } catch (EOFException e) {
+            channel.close();
+            throw new EOFException("Damaged chunked drawing: unexpected end of file");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an amount of bytes from a position in the file.
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new EOFException("Damaged chunked drawing: unexpected end of file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Damaged chunked drawing: unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets the path of the file.
+     *
+     * @return the path
+     */
+    String getPath() {
+        return file.getPath();
+    }
+
+    /**
+     * Gets the name of the drawing.
+     *
+     * @return the name
+     */
+    String getName() {
+        return header.name;
+    }
+
+    /**
+     * Gets the author of the drawing.
+     *
+     * @return the author
+     */
+    String getAuthor() {
+        return header.author;
+    }
+
+    /**
+     * Gets the amount of shapes of the drawing.
+     *
+     * @return the size
+     */
+    int getSize() {
+        return header.shapes;
+    }
+
+    /**
+     * Gets the bounds of the shapes of the drawing.
+     *
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if no shape has an end point.
+     */
+    double[] getBounds() {
+        return Double.isNaN(header.bounds[0]) ? null : header.bounds.clone();
+    }
+
+    /**
+     * Gets the amount of chunks of the drawing.
+     *
+     * @return the amount of chunks
+     */
+    int getChunkCount() {
+        return counts.length;
+    }
+
+    /**
+     * Sets the amount of decoded chunks kept, dropping the chunks used the longest time ago beyond it.
+     *
+     * @param cacheSize the amount of chunks.
+     */
+    void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        synchronized (cache) {
+            Iterator<Integer> eldest = cache.keySet().iterator();
+            while (cache.size() > cacheSize) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of decoded chunks kept.
+     *
+     * @return the amount of chunks
+     */
+    int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Gets the amount of chunks read from the file so far. Chunks found in the cache are not counted.
+     *
+     * @return the amount of chunks
+     */
+    long getChunksRead() {
+        synchronized (cache) {
+            return chunksRead;
+        }
+    }
+
+    /**
+     * Finds the chunks whose bounds intersect a rectangle.
+     *
+     * @param minX the smallest x-value of the rectangle.
+     * @param minY the smallest y-value of the rectangle.
+     * @param maxX the largest x-value of the rectangle.
+     * @param maxY the largest y-value of the rectangle.
+     * @return the indexes of the chunks.
+     */
+    int[] findChunks(double minX, double minY, double maxX, double maxY) {
+        int[] found = new int[counts.length];
+        int size = 0;
+        for (int c = 0; c < counts.length; c++) {
+            if (bounds[c * 4] <= maxX && bounds[c * 4 + 1] <= maxY
+                    && bounds[c * 4 + 2] >= minX && bounds[c * 4 + 3] >= minY) {
+                found[size++] = c;
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Reads the shapes of the chunks intersecting a rectangle, which are all shapes intersecting it and shapes lying
+     * close to it. When the chunks hold more shapes than allowed, the chunks closest to the center of the rectangle
+     * are read until the next would hold too many.
+     *
+     * @param minX      the smallest x-value of the rectangle.
+     * @param minY      the smallest y-value of the rectangle.
+     * @param maxX      the largest x-value of the rectangle.
+     * @param maxY      the largest y-value of the rectangle.
+     * @param maxShapes the most shapes to read.
+     * @return a store holding the shapes read, in the order of the drawing, with the colors of the drawing in its
+     * palette in the order of the file.
+     * @throws IOException if a chunk could not be read or is damaged.
+     */
+    ShapeStore read(double minX, double minY, double maxX, double maxY, int maxShapes) throws IOException {
+        int[] found = findChunks(minX, minY, maxX, maxY);
+        long total = 0;
+        for (int c : found) {
+            total += counts[c];
+        }
+        if (total > maxShapes) {
+            found = closest(found, (minX + maxX) / 2, (minY + maxY) / 2, maxShapes);
+        }
+
+        Chunk[] chunks = new Chunk[found.length];
+        int size = 0;
+        for (int k = 0; k < found.length; k++) {
+            chunks[k] = getChunk(found[k]);
+            size += chunks[k].indexes.length;
+        }
+        // The shapes are sorted as numbers holding their index in the drawing above the chunk holding them
+        long[] keys = new long[size];
+        int n = 0;
+        for (int k = 0; k < chunks.length; k++) {
+            for (int index : chunks[k].indexes) {
+                keys[n++] = (long) index << 32 | k;
+            }
+        }
+        Arrays.sort(keys);
+
+        ShapeStore store = new ShapeStore();
+        header.intern(store);
+        int[] next = new int[chunks.length];
+        for (long key : keys) {
+            int k = (int) key;
+            store.add(chunks[k].shapes, next[k]++);
+        }
+        return store;
+    }
+
+    /**
+     * Picks the chunks closest to a point, until the next would bring the amount of shapes above the most allowed.
+     */
+    private int[] closest(int[] found, final double x, final double y, int maxShapes) {
+        Integer[] sorted = new Integer[found.length];
+        for (int k = 0; k < found.length; k++) {
+            sorted[k] = found[k];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(distance(a, x, y), distance(b, x, y));
+            }
+        });
+        int picked = 0;
+        long total = 0;
+        while (picked < sorted.length && total + counts[sorted[picked]] <= maxShapes) {
+            total += counts[sorted[picked++]];
+        }
+        int[] closest = new int[picked];
+        for (int k = 0; k < picked; k++) {
+            closest[k] = sorted[k];
+        }
+        return closest;
+    }
+
+    /**
+     * Gets the square of the distance from a point to the center of a chunk.
+     */
+    private double distance(int c, double x, double y) {
+        double dx = (bounds[c * 4] + bounds[c * 4 + 2]) / 2 - x;
+        double dy = (bounds[c * 4 + 1] + bounds[c * 4 + 3]) / 2 - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Gets a decoded chunk from the cache, or reads it from the file and puts it in the cache.
+     */
+    private Chunk getChunk(int c) throws IOException {
+        synchronized (cache) {
+            Chunk chunk = cache.get(c);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        // Read without holding the cache, so other threads can use the cached chunks meanwhile
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(offsets[c], lengths[c]).array()));
+        Chunk chunk = new Chunk();
+        try {
+            int count = in.readInt();
+            if (count != counts[c]) {
+                throw new IOException("Damaged chunked drawing: chunk " + c + " of " + count + " shapes");
+            }
+            byte[] content = BinaryDrawingCodec.readChecked(in, in.readInt(), new CRC32());
+            chunk.shapes = new ShapeStore();
+            int[] colors = header.intern(chunk.shapes);
+            chunk.indexes = ChunkedDrawingCodec.readChunk(content, count, count, header.shapes, chunk.shapes, colors,
+                    new PointBuffer());
+        } catch (EOFException e) {
+            throw new EOFException("Damaged chunked drawing: chunk " + c + " cut short");
+        }
+        synchronized (cache) {
+            chunksRead++;
+            cache.put(c, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Closes the file. Reading from it afterwards fails.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * The shapes of a chunk, and the index of every shape in the drawing.
+     */
+    private static class Chunk {
+        private int[] indexes;
+        private ShapeStore shapes;
+    }
+}
@@ -0,0 +1,146 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1>ColorPalette</h1>
+ * This file contains the class ColorPalette, which interns the colors used in a drawing.
+ * <p>
+ * Every distinct color string is given a small index, and is decoded into a Color only once. Shapes stored in a
+ * drawing refer to their color by index, so drawing them needs neither string parsing nor new Color objects. The
+ * original strings are kept, so the colors are saved exactly as they were given.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-14
+ */
+class ColorPalette {
+    /**
+     * The index of every color by its string. Null in a copy until a color is looked up, as a copy is mostly only
+     * read.
+     */
+    private Map<String, Integer> indexes = new HashMap<>();
+    private ArrayList<String> names = new ArrayList<>();
+    private Color[] colors = new Color[8];
+    private int[] argb = new int[8];
+
+    /**
+     * Gets the index of a color, adding it to the palette if it is new. A color that is null or can not be decoded
+     * is kept, but has no Color.
+     *
+     * @param name the color as a string accepted by Color.decode, ie. "#rrggbb".
+     * @return the index of the color.
+     */
+    int intern(String name) {
+        Integer index = getIndexes().get(name);
+        if (index != null) {
+            return index;
+        }
+        Color color;
+        try {
+            color = Color.decode(name);
+        } catch (NullPointerException | NumberFormatException e) {
+            color = null;
+        }
+        return add(name, color);
+    }
+
+    /**
+     * Gets the index of a color, adding it to the palette on the format "#rrggbb" if it is new. The given Color
+     * object is used as the decoded color.
+     *
+     * @param color the color.
+     * @return the index of the color.
+     */
+    int intern(Color color) {
+        String name = String.format("#%06x", color.getRGB() & 0x00FFFFFF);
+        Integer index = getIndexes().get(name);
+        if (index != null) {
+            return index;
+        }
+        return add(name, color);
+    }
+
+    /**
+     * Gets the amount of colors in the palette.
+     *
+     * @return the size
+     */
+    int size() {
+        return names.size();
+    }
+
+    /**
+     * Gets the string of a color, as it was given to the palette.
+     *
+     * @param index the index of the color.
+     * @return the name of the color.
+     */
+    String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Gets the decoded Color of a color.
+     *
+     * @param index the index of the color.
+     * @return the Color, or null if the color could not be decoded.
+     */
+    Color getColor(int index) {
+        return colors[index];
+    }
+
+    /**
+     * Gets the ARGB value of a color.
+     *
+     * @param index the index of the color.
+     * @return the ARGB value, 0 if the color could not be decoded.
+     */
+    int getARGB(int index) {
+        return argb[index];
+    }
+
+    /**
+     * Creates a copy of the palette, with the colors at the same indexes.
+     *
+     * @return the copy
+     */
+    ColorPalette copy() {
+        ColorPalette copy = new ColorPalette();
+        copy.indexes = null;
+        copy.names = new ArrayList<>(names);
+        copy.colors = colors.clone();
+        copy.argb = argb.clone();
+        return copy;
+    }
+
+    private int add(String name, Color color) {
+        int index = names.size();
+        if (index == colors.length) {
+            colors = Arrays.copyOf(colors, index * 2);
+            argb = Arrays.copyOf(argb, index * 2);
+        }
+        names.add(name);
+        colors[index] = color;
+        argb[index] = color == null ? 0 : color.getRGB();
+        getIndexes().put(name, index);
+        return index;
+    }
+
+    private Map<String, Integer> getIndexes() {
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            for (int index = 0; index < names.size(); index++) {
+                indexes.put(names.get(index), index);
+            }
+        }
+        return indexes;
+    }
+}
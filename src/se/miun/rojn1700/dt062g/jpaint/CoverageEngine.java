@@ -0,0 +1,871 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <h1>CoverageEngine</h1>
+ * This file contains the class CoverageEngine, which computes the area actually covered by the shapes of a drawing,
+ * counting overlapping parts only once, and how much of it is visible in each color when the shapes are painted in
+ * order.
+ * <p>
+ * The plane is split into a grid of cells and every shape is assigned to the cells its bounding box overlaps. Each
+ * row of cells is a horizontal band that is computed as its own task on the fork/join pool. Within a cell the
+ * shapes are swept from top to bottom. The cell is split into slabs at the top and bottom of every shape and at every
+ * height where the edge of a circle crosses the edge of another shape or of the cell. Within such a slab neither the
+ * set of shapes nor the left to right order of their cross sections changes, so the order found on the middle line
+ * of the slab, together with which shape is on top, holds for the whole slab. The visible area between two
+ * neighbouring edges is then the difference of the integrals of the edges over the slab, which are known in closed
+ * form for both straight edges and circle arcs, so the result is exact up to rounding.
+ * <p>
+ * Cells with very many shapes would get too many crossings. There only tops and bottoms are used, and slabs crossed by
+ * circles are integrated with adaptive Gauss-Legendre quadrature instead, using a cosine substitution that removes
+ * the square root behaviour at the top and bottom of a circle.
+ * <p>
+ * The areas are those of the geometric shapes, circles use the exact value of pi and the coordinates are not
+ * rounded to pixels. Shapes without an end point cover nothing, and strokes are lines, which cover no area either.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-13
+ */
+class CoverageEngine {
+    /**
+     * The amount of nodes used by the Gauss-Legendre rule.
+     */
+    private static final int GAUSS_POINTS = 6;
+    /**
+     * The maximum depth of the adaptive subdivision of a slab.
+     */
+    private static final int MAX_DEPTH = 12;
+    /**
+     * The tolerated error of a slab, relative to the area of the slab.
+     */
+    private static final double TOLERANCE = 1e-11;
+    /**
+     * The aimed for amount of cells per shape.
+     */
+    private static final double CELLS_PER_SHAPE = 0.25;
+    /**
+     * Crossings between shapes are only added as slab edges in cells with at most this many shapes, in larger cells
+     * the adaptive integration has to handle them.
+     */
+    private static final int MAX_CROSSING_SHAPES = 64;
+
+    private static final double[] NODES = new double[GAUSS_POINTS];
+    private static final double[] WEIGHTS = new double[GAUSS_POINTS];
+
+    static {
+        // Find the roots of the Legendre polynomial with Newton's method
+        for (int i = 0; i < GAUSS_POINTS; i++) {
+            double x = Math.cos(Math.PI * (i + 0.75) / (GAUSS_POINTS + 0.5));
+            double derivative;
+            double delta;
+            do {
+                double p0 = 1;
+                double p1 = x;
+                for (int k = 2; k <= GAUSS_POINTS; k++) {
+                    double p2 = ((2 * k - 1) * x * p1 - (k - 1) * p0) / k;
+                    p0 = p1;
+                    p1 = p2;
+                }
+                derivative = GAUSS_POINTS * (x * p1 - p0) / (x * x - 1);
+                delta = p1 / derivative;
+                x -= delta;
+            } while (Math.abs(delta) > 1e-15);
+            NODES[i] = x;
+            WEIGHTS[i] = 2 / ((1 - x * x) * derivative * derivative);
+        }
+    }
+
+    private final int n;
+    private final boolean[] circle;
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final double[] centerX;
+    private final double[] centerY;
+    private final double[] radius;
+    private final int[] colorOf;
+    private final String[] colors;
+
+    private double gridX;
+    private double gridY;
+    private double cellSize;
+    private int columns;
+    private int rows;
+
+    /**
+     * Reads the complete shapes of a store covering an area into the arrays used by the engine, keeping their order.
+     */
+    private CoverageEngine(ShapeStore store) {
+        int complete = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (coversArea(store, i)) {
+                complete++;
+            }
+        }
+        n = complete;
+        circle = new boolean[n];
+        minX = new double[n];
+        minY = new double[n];
+        maxX = new double[n];
+        maxY = new double[n];
+        centerX = new double[n];
+        centerY = new double[n];
+        radius = new double[n];
+        colorOf = new int[n];
+        ColorPalette palette = store.getPalette();
+        int[] colorIds = new int[palette.size()];
+        Arrays.fill(colorIds, -1);
+        int used = 0;
+        int s = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (!coversArea(store, i)) {
+                continue;
+            }
+            double sx = store.getStartX(i);
+            double sy = store.getStartY(i);
+            double ex = store.getEndX(i);
+            double ey = store.getEndY(i);
+            if (store.getKind(i) == ShapeStore.CIRCLE) {
+                double r = Math.hypot(sx - ex, sy - ey);
+                circle[s] = true;
+                centerX[s] = sx;
+                centerY[s] = sy;
+                radius[s] = r;
+                minX[s] = sx - r;
+                minY[s] = sy - r;
+                maxX[s] = sx + r;
+                maxY[s] = sy + r;
+            } else {
+                minX[s] = Math.min(sx, ex);
+                minY[s] = Math.min(sy, ey);
+                maxX[s] = Math.max(sx, ex);
+                maxY[s] = Math.max(sy, ey);
+            }
+            int color = store.getColorIndex(i);
+            if (colorIds[color] < 0) {
+                colorIds[color] = used++;
+            }
+            colorOf[s] = colorIds[color];
+            s++;
+        }
+        colors = new String[used];
+        for (int color = 0; color < colorIds.length; color++) {
+            if (colorIds[color] >= 0) {
+                colors[colorIds[color]] = palette.getName(color);
+            }
+        }
+    }
+
+    private static boolean coversArea(ShapeStore store, int i) {
+        return store.hasEndPoint(i) && store.getKind(i) != ShapeStore.STROKE;
+    }
+
+    /**
+     * Computes the covered area and the visible area per color of the shapes in a store.
+     *
+     * @param store the store holding the shapes.
+     * @return the coverage of the shapes.
+     */
+    static Coverage compute(ShapeStore store) {
+        CoverageEngine engine = new CoverageEngine(store);
+        double[] colorAreas = new double[engine.colors.length];
+        if (engine.n > 0 && engine.layoutGrid()) {
+            int[][] bands = engine.assignToBands();
+            colorAreas = ForkJoinPool.commonPool().invoke(new BandTask(engine, bands, 0, engine.rows));
+        }
+        return new Coverage(engine.colors, colorAreas);
+    }
+
+    /**
+     * Chooses the cell size and the extent of the grid.
+     *
+     * @return false if the shapes cover no area at all.
+     */
+    private boolean layoutGrid() {
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        double extent = 0;
+        for (int s = 0; s < n; s++) {
+            left = Math.min(left, minX[s]);
+            top = Math.min(top, minY[s]);
+            right = Math.max(right, maxX[s]);
+            bottom = Math.max(bottom, maxY[s]);
+            extent += Math.max(maxX[s] - minX[s], maxY[s] - minY[s]);
+        }
+        double width = right - left;
+        double height = bottom - top;
+        if (!(width > 0 && height > 0)) {
+            return false;
+        }
+        // Cells a few times larger than the average shape keep the amount of shapes per cell small, as long as
+        // that does not result in too many cells
+        cellSize = Math.max(2 * extent / n, Math.sqrt(width * height / (CELLS_PER_SHAPE * n + 1)));
+        cellSize = Math.min(cellSize, Math.max(width, height));
+        gridX = left;
+        gridY = top;
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        return true;
+    }
+
+    /**
+     * Groups the shapes by the rows of cells they overlap.
+     *
+     * @return for every row, the shapes overlapping it in ascending order.
+     */
+    private int[][] assignToBands() {
+        int[] counts = new int[rows];
+        for (int s = 0; s < n; s++) {
+            for (int row = row(minY[s]); row <= row(maxY[s]); row++) {
+                counts[row]++;
+            }
+        }
+        int[][] bands = new int[rows][];
+        for (int row = 0; row < rows; row++) {
+            bands[row] = new int[counts[row]];
+            counts[row] = 0;
+        }
+        for (int s = 0; s < n; s++) {
+            for (int row = row(minY[s]); row <= row(maxY[s]); row++) {
+                bands[row][counts[row]++] = s;
+            }
+        }
+        return bands;
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) ((y - gridY) / cellSize)));
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - gridX) / cellSize)));
+    }
+
+    /**
+     * Computes the visible area per color of one row of cells.
+     */
+    private double[] computeBand(int row, int[] shapes) {
+        double[] colorAreas = new double[colors.length];
+        int[] counts = new int[columns];
+        for (int s : shapes) {
+            for (int column = column(minX[s]); column <= column(maxX[s]); column++) {
+                counts[column]++;
+            }
+        }
+        int[][] cells = new int[columns][];
+        for (int column = 0; column < columns; column++) {
+            cells[column] = new int[counts[column]];
+            counts[column] = 0;
+        }
+        for (int s : shapes) {
+            for (int column = column(minX[s]); column <= column(maxX[s]); column++) {
+                cells[column][counts[column]++] = s;
+            }
+        }
+        Scanline scanline = new Scanline();
+        double y0 = gridY + row * cellSize;
+        double y1 = row == rows - 1 ? Double.POSITIVE_INFINITY : y0 + cellSize;
+        for (int column = 0; column < columns; column++) {
+            if (cells[column].length == 0) {
+                continue;
+            }
+            double x0 = gridX + column * cellSize;
+            double x1 = column == columns - 1 ? Double.POSITIVE_INFINITY : x0 + cellSize;
+            computeCell(cells[column], x0, y0, x1, y1, scanline, colorAreas);
+        }
+        return colorAreas;
+    }
+
+    /**
+     * Computes the visible area per color of the parts of some shapes that are inside a cell.
+     */
+    private void computeCell(int[] shapes, double x0, double y0, double x1, double y1, Scanline scanline,
+                             double[] colorAreas) {
+        Edges edges = new Edges(y0, y1, shapes.length * 2 + 2);
+        edges.add(y0);
+        edges.add(y1);
+        boolean circles = false;
+        for (int s : shapes) {
+            edges.add(minY[s]);
+            edges.add(maxY[s]);
+            circles |= circle[s];
+        }
+        // With every crossing as an edge, the order of the cross sections never changes within a slab
+        boolean exact = !circles || shapes.length <= MAX_CROSSING_SHAPES;
+        if (circles && exact) {
+            addCrossings(shapes, x0, x1, edges);
+        }
+        int count = edges.sort();
+        // Slab e lies between edge e - 1 and edge e, find the first and last slab of every shape
+        int[] first = new int[shapes.length];
+        int[] last = new int[shapes.length];
+        for (int j = 0; j < shapes.length; j++) {
+            first[j] = edges.indexOf(minY[shapes[j]]) + 1;
+            last[j] = edges.indexOf(maxY[shapes[j]]);
+        }
+        int[] byFirst = sortBySlab(first, count);
+        int[] byLast = sortBySlab(last, count);
+        BitSet crossing = new BitSet(shapes.length);
+        int[] active = new int[shapes.length];
+        double[] visible = new double[shapes.length];
+        int added = 0;
+        int removed = 0;
+        for (int e = 1; e < count; e++) {
+            while (added < byFirst.length && first[byFirst[added]] == e) {
+                crossing.set(byFirst[added++]);
+            }
+            while (removed < byLast.length && last[byLast[removed]] < e) {
+                crossing.clear(byLast[removed++]);
+            }
+            double top = edges.y[e - 1];
+            double bottom = edges.y[e];
+            if (Double.isInfinite(bottom)) {
+                continue;
+            }
+            int m = 0;
+            circles = false;
+            for (int j = crossing.nextSetBit(0); j >= 0; j = crossing.nextSetBit(j + 1)) {
+                active[m++] = j;
+                circles |= circle[shapes[j]];
+            }
+            if (m == 0) {
+                continue;
+            }
+            Arrays.fill(visible, 0, m, 0);
+            if (exact) {
+                scanline.integrate(this, shapes, active, m, x0, x1, top, bottom, visible);
+            } else if (circles) {
+                integrate(shapes, active, m, x0, x1, top, bottom, 0, Math.PI, scanline, visible, 0);
+            } else {
+                scanline.measure(this, shapes, active, m, x0, x1, (top + bottom) / 2, bottom - top, visible);
+            }
+            for (int k = 0; k < m; k++) {
+                colorAreas[colorOf[shapes[active[k]]]] += visible[k];
+            }
+        }
+    }
+
+    /**
+     * Orders the shapes of a cell by a slab index with a counting sort.
+     *
+     * @return the positions of the shapes, ordered by slab.
+     */
+    private static int[] sortBySlab(int[] slab, int slabs) {
+        int[] starts = new int[slabs + 1];
+        for (int value : slab) {
+            starts[value + 1]++;
+        }
+        for (int e = 1; e <= slabs; e++) {
+            starts[e] += starts[e - 1];
+        }
+        int[] order = new int[slab.length];
+        for (int j = 0; j < slab.length; j++) {
+            order[starts[slab[j]]++] = j;
+        }
+        return order;
+    }
+
+    /**
+     * Adds the heights at which the cross section of a circle in a cell starts or stops overlapping that of another
+     * shape or the cell, which are the points where the visible lengths are not smooth.
+     */
+    private void addCrossings(int[] shapes, double x0, double x1, Edges edges) {
+        for (int a = 0; a < shapes.length; a++) {
+            int s = shapes[a];
+            if (!circle[s]) {
+                continue;
+            }
+            addVerticalCrossings(s, x0, edges);
+            addVerticalCrossings(s, x1, edges);
+            for (int b = 0; b < shapes.length; b++) {
+                int t = shapes[b];
+                if (!circle[t]) {
+                    addVerticalCrossings(s, minX[t], edges);
+                    addVerticalCrossings(s, maxX[t], edges);
+                } else if (b > a) {
+                    addCircleCrossings(s, t, edges);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the heights at which a circle crosses a vertical line.
+     */
+    private void addVerticalCrossings(int s, double x, Edges edges) {
+        double dx = x - centerX[s];
+        double squared = radius[s] * radius[s] - dx * dx;
+        if (squared > 0) {
+            double dy = Math.sqrt(squared);
+            edges.add(centerY[s] - dy);
+            edges.add(centerY[s] + dy);
+        }
+    }
+
+    /**
+     * Adds the heights at which two circles cross each other.
+     */
+    private void addCircleCrossings(int s, int t, Edges edges) {
+        double dx = centerX[t] - centerX[s];
+        double dy = centerY[t] - centerY[s];
+        double distance = Math.hypot(dx, dy);
+        if (distance == 0 || distance >= radius[s] + radius[t] || distance <= Math.abs(radius[s] - radius[t])) {
+            return;
+        }
+        double along = (distance * distance + radius[s] * radius[s] - radius[t] * radius[t]) / (2 * distance);
+        double across = Math.sqrt(Math.max(0, radius[s] * radius[s] - along * along));
+        double y = centerY[s] + along * dy / distance;
+        edges.add(y - across * dx / distance);
+        edges.add(y + across * dx / distance);
+    }
+
+    /**
+     * Integrates the visible length of the active shapes over a part of a slab, given as an interval of the angle
+     * in the substitution y = top + (bottom - top) * (1 - cos(angle)) / 2. The two halves of the interval are
+     * subdivided further until they agree with the whole interval.
+     */
+    private void integrate(int[] shapes, int[] active, int m, double x0, double x1, double top, double bottom, double from,
+                           double to, Scanline scanline, double[] visible, int depth) {
+        double middle = (from + to) / 2;
+        double[] whole = new double[m];
+        double[] left = new double[m];
+        double[] right = new double[m];
+        double wholeSum = gauss(shapes, active, m, x0, x1, top, bottom, from, to, scanline, whole);
+        double halvesSum = gauss(shapes, active, m, x0, x1, top, bottom, from, middle, scanline, left)
+                + gauss(shapes, active, m, x0, x1, top, bottom, middle, to, scanline, right);
+        double width = Math.min(x1, maxXOf(shapes, active, m)) - Math.max(x0, minXOf(shapes, active, m));
+        double tolerance = TOLERANCE * width * (bottom - top) * (to - from) / Math.PI;
+        if (Math.abs(wholeSum - halvesSum) <= tolerance || depth == MAX_DEPTH) {
+            for (int k = 0; k < m; k++) {
+                visible[k] += left[k] + right[k];
+            }
+        } else {
+            integrate(shapes, active, m, x0, x1, top, bottom, from, middle, scanline, visible, depth + 1);
+            integrate(shapes, active, m, x0, x1, top, bottom, middle, to, scanline, visible, depth + 1);
+        }
+    }
+
+    /**
+     * Applies the Gauss-Legendre rule to an interval of the angle.
+     *
+     * @return the sum of the integrated visible lengths.
+     */
+    private double gauss(int[] shapes, int[] active, int m, double x0, double x1, double top, double bottom, double from,
+                         double to, Scanline scanline, double[] visible) {
+        double halfAngle = (to - from) / 2;
+        double middleAngle = (to + from) / 2;
+        double halfHeight = (bottom - top) / 2;
+        for (int g = 0; g < GAUSS_POINTS; g++) {
+            double angle = middleAngle + halfAngle * NODES[g];
+            double y = top + halfHeight * (1 - Math.cos(angle));
+            double weight = WEIGHTS[g] * halfAngle * halfHeight * Math.sin(angle);
+            scanline.measure(this, shapes, active, m, x0, x1, y, weight, visible);
+        }
+        double sum = 0;
+        for (int k = 0; k < m; k++) {
+            sum += visible[k];
+        }
+        return sum;
+    }
+
+    private double minXOf(int[] shapes, int[] active, int m) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < m; k++) {
+            min = Math.min(min, minX[shapes[active[k]]]);
+        }
+        return min;
+    }
+
+    private double maxXOf(int[] shapes, int[] active, int m) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < m; k++) {
+            max = Math.max(max, maxX[shapes[active[k]]]);
+        }
+        return max;
+    }
+
+    /**
+     * The heights at which a cell is split into slabs, clamped to the cell.
+     */
+    private static class Edges {
+        private final double top;
+        private final double bottom;
+        private double[] y;
+        private int count;
+
+        Edges(double top, double bottom, int capacity) {
+            this.top = top;
+            this.bottom = bottom;
+            y = new double[capacity];
+        }
+
+        void add(double value) {
+            if (count == y.length) {
+                y = Arrays.copyOf(y, count * 2);
+            }
+            y[count++] = Math.max(top, Math.min(bottom, value));
+        }
+
+        /**
+         * Finds the position of a height among the sorted heights. The height is clamped to the cell first.
+         *
+         * @return the position of the height.
+         */
+        int indexOf(double value) {
+            return Arrays.binarySearch(y, 0, count, Math.max(top, Math.min(bottom, value)));
+        }
+
+        /**
+         * Sorts the heights and removes duplicates.
+         *
+         * @return the amount of distinct heights.
+         */
+        int sort() {
+            Arrays.sort(y, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || y[i] > y[distinct - 1]) {
+                    y[distinct++] = y[i];
+                }
+            }
+            count = distinct;
+            return count;
+        }
+    }
+
+    /**
+     * Reusable buffers for measuring the visible lengths along one horizontal line.
+     */
+    private static class Scanline {
+        private double[] x = new double[16];
+        private int[] event = new int[16];
+        /**
+         * The integral over the slab of the x-value of every event, indexed by event.
+         */
+        private double[] integral = new double[16];
+        /**
+         * Bits for the active shapes currently covering the sweep line, the highest set bit is the topmost shape.
+         */
+        private long[] covering = new long[1];
+        /**
+         * The cell the arc primitives below belong to.
+         */
+        private int[] shapes;
+        /**
+         * The last height at which the arc primitive of every circle in the cell was computed, and its value.
+         */
+        private double[] arcY = new double[16];
+        private double[] arcPrimitive = new double[16];
+
+        /**
+         * Adds the exact visible area of every active shape within a slab, clipped to [x0, x1], to visible. The
+         * order of the edges of the cross sections must be the same throughout the slab, it is taken from the
+         * middle of the slab. The area between two neighbouring edges is then the difference of their integrals,
+         * which are known in closed form for both straight edges and circle arcs.
+         */
+        void integrate(CoverageEngine engine, int[] shapes, int[] active, int m, double x0, double x1, double top,
+                       double bottom, double[] visible) {
+            ensureCapacity(m * 2);
+            if (arcY.length < shapes.length) {
+                arcY = new double[shapes.length];
+                arcPrimitive = new double[shapes.length];
+            }
+            if (this.shapes != shapes) {
+                this.shapes = shapes;
+                Arrays.fill(arcY, 0, shapes.length, Double.NaN);
+            }
+            double y = (top + bottom) / 2;
+            double height = bottom - top;
+            int count = 0;
+            for (int k = 0; k < m; k++) {
+                int j = active[k];
+                int s = shapes[j];
+                double a;
+                double b;
+                double integralA;
+                double integralB;
+                if (engine.circle[s]) {
+                    double r = engine.radius[s];
+                    double dy = y - engine.centerY[s];
+                    double half = Math.sqrt(Math.max(0, r * r - dy * dy));
+                    // The primitive at the top of a slab is usually the one at the bottom of the slab above
+                    double primitiveTop = arcY[j] == top ? arcPrimitive[j] : primitive(r, top - engine.centerY[s]);
+                    arcY[j] = bottom;
+                    arcPrimitive[j] = primitive(r, bottom - engine.centerY[s]);
+                    double arc = arcPrimitive[j] - primitiveTop;
+                    a = engine.centerX[s] - half;
+                    b = engine.centerX[s] + half;
+                    integralA = engine.centerX[s] * height - arc;
+                    integralB = engine.centerX[s] * height + arc;
+                } else {
+                    a = engine.minX[s];
+                    b = engine.maxX[s];
+                    integralA = a * height;
+                    integralB = b * height;
+                }
+                if (a < x0) {
+                    a = x0;
+                    integralA = x0 * height;
+                }
+                if (b > x1) {
+                    b = x1;
+                    integralB = x1 * height;
+                }
+                if (b > a) {
+                    x[count] = a;
+                    event[count] = k * 2;
+                    integral[k * 2] = integralA;
+                    count++;
+                    x[count] = b;
+                    event[count] = k * 2 + 1;
+                    integral[k * 2 + 1] = integralB;
+                    count++;
+                }
+            }
+            sort(x, event, 0, count - 1);
+            int words = (m + 63) >> 6;
+            Arrays.fill(covering, 0, words, 0);
+            int topmost = -1;
+            for (int e = 0; e < count; e++) {
+                if (topmost >= 0) {
+                    visible[topmost] += integral[event[e]] - integral[event[e - 1]];
+                }
+                int k = event[e] >> 1;
+                if ((event[e] & 1) == 0) {
+                    covering[k >> 6] |= 1L << k;
+                    topmost = Math.max(topmost, k);
+                } else {
+                    covering[k >> 6] &= ~(1L << k);
+                    if (k == topmost) {
+                        topmost = highestCovering(k >> 6);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Gets a primitive of the half width of a circle, sqrt(r^2 - u^2), where u is the height relative to the
+         * center.
+         */
+        private static double primitive(double r, double u) {
+            u = Math.max(-r, Math.min(r, u));
+            return (u * Math.sqrt(Math.max(0, r * r - u * u)) + r * r * Math.asin(u / r)) / 2;
+        }
+
+        /**
+         * Finds the highest covering bit, starting at a word and going down.
+         *
+         * @return the position of the bit, -1 if no bit is set.
+         */
+        private int highestCovering(int word) {
+            for (int w = word; w >= 0; w--) {
+                if (covering[w] != 0) {
+                    return (w << 6) + 63 - Long.numberOfLeadingZeros(covering[w]);
+                }
+            }
+            return -1;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (x.length < capacity) {
+                x = new double[capacity];
+                event = new int[capacity];
+                integral = new double[capacity];
+                covering = new long[(capacity / 2 + 63) >> 6];
+            }
+        }
+
+        /**
+         * Adds the visible length of every active shape along the line at y, clipped to [x0, x1] and multiplied by
+         * a weight, to visible. The active shapes must be in drawing order.
+         */
+        void measure(CoverageEngine engine, int[] shapes, int[] active, int m, double x0, double x1, double y,
+                     double weight, double[] visible) {
+            ensureCapacity(m * 2);
+            int count = 0;
+            for (int k = 0; k < m; k++) {
+                int s = shapes[active[k]];
+                double a;
+                double b;
+                if (engine.circle[s]) {
+                    double dy = y - engine.centerY[s];
+                    double squared = engine.radius[s] * engine.radius[s] - dy * dy;
+                    if (squared <= 0) {
+                        continue;
+                    }
+                    double half = Math.sqrt(squared);
+                    a = engine.centerX[s] - half;
+                    b = engine.centerX[s] + half;
+                } else {
+                    a = engine.minX[s];
+                    b = engine.maxX[s];
+                }
+                a = Math.max(a, x0);
+                b = Math.min(b, x1);
+                if (b > a) {
+                    x[count] = a;
+                    event[count++] = k * 2;
+                    x[count] = b;
+                    event[count++] = k * 2 + 1;
+                }
+            }
+            sort(x, event, 0, count - 1);
+            int words = (m + 63) >> 6;
+            Arrays.fill(covering, 0, words, 0);
+            int topmost = -1;
+            for (int e = 0; e < count; e++) {
+                if (topmost >= 0) {
+                    visible[topmost] += (x[e] - x[e - 1]) * weight;
+                }
+                int k = event[e] >> 1;
+                if ((event[e] & 1) == 0) {
+                    covering[k >> 6] |= 1L << k;
+                    topmost = Math.max(topmost, k);
+                } else {
+                    covering[k >> 6] &= ~(1L << k);
+                    if (k == topmost) {
+                        topmost = highestCovering(k >> 6);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sorts the events by their x-values.
+         */
+        private static void sort(double[] x, int[] event, int low, int high) {
+            while (high - low > 16) {
+                double pivot = x[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (x[i] < pivot) {
+                        i++;
+                    }
+                    while (x[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(x, event, i++, j--);
+                    }
+                }
+                if (j - low < high - i) {
+                    sort(x, event, low, j);
+                    low = i;
+                } else {
+                    sort(x, event, i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && x[j - 1] > x[j]; j--) {
+                    swap(x, event, j, j - 1);
+                }
+            }
+        }
+
+        private static void swap(double[] x, int[] event, int i, int j) {
+            double tx = x[i];
+            x[i] = x[j];
+            x[j] = tx;
+            int te = event[i];
+            event[i] = event[j];
+            event[j] = te;
+        }
+    }
+
+    /**
+     * Computes a range of bands, splitting the range in two while it holds more than one band.
+     */
+    private static class BandTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final CoverageEngine engine;
+        private final int[][] bands;
+        private final int from;
+        private final int to;
+
+        BandTask(CoverageEngine engine, int[][] bands, int from, int to) {
+            this.engine = engine;
+            this.bands = bands;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from == 1) {
+                return engine.computeBand(from, bands[from]);
+            }
+            int middle = (from + to) >>> 1;
+            BandTask top = new BandTask(engine, bands, from, middle);
+            top.fork();
+            double[] result = new BandTask(engine, bands, middle, to).compute();
+            double[] other = top.join();
+            for (int c = 0; c < result.length; c++) {
+                result[c] += other[c];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The result of a coverage computation.
+     */
+    static class Coverage {
+        private final double coveredArea;
+        private final Map<String, Double> visibleAreas = new LinkedHashMap<>();
+
+        Coverage(String[] colors, double[] colorAreas) {
+            double covered = 0;
+            for (int c = 0; c < colors.length; c++) {
+                covered += colorAreas[c];
+                visibleAreas.put(colors[c], colorAreas[c]);
+            }
+            coveredArea = covered;
+        }
+
+        /**
+         * Gets the area covered by at least one shape.
+         *
+         * @return the covered area
+         */
+        public double getCoveredArea() {
+            return coveredArea;
+        }
+
+        /**
+         * Gets the area in which each color is visible, when shapes drawn later cover earlier ones. Shapes without
+         * a color are grouped under null.
+         *
+         * @return a map from colors, as they were given to the drawing, to visible area.
+         */
+        public Map<String, Double> getVisibleAreas() {
+            return visibleAreas;
+        }
+
+        /**
+         * Gets the area in which a color is visible.
+         *
+         * @param color the color on the format "#rrggbb".
+         * @return the visible area, 0 if no shape has the color.
+         */
+        public double getVisibleArea(String color) {
+            Double area = visibleAreas.get(color);
+            return area == null ? 0 : area;
+        }
+    }
+}
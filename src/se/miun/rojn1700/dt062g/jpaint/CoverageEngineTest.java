@@ -0,0 +1,198 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <h1>CoverageEngineTest</h1>
+ * This class tests CoverageEngine. Drawings with known areas are checked against their exact values, and random
+ * drawings are checked against a brute force raster that samples which shape is on top at every point of a fine
+ * grid. Finally the time to compute the coverage of a large drawing is printed.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-13
+ */
+public class CoverageEngineTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        // TEST 1
+        // Drawings with exactly known areas
+        System.out.println("Exact areas...");
+        Drawing drawing = new Drawing();
+        drawing.addShape(rectangle(0, 0, 10, 10, "#ff0000"));
+        drawing.addShape(rectangle(5, 5, 15, 15, "#0000ff"));
+        check("overlapping rectangles", 175, drawing.getCoverage().getCoveredArea(), 1e-9);
+        check("red part", 75, drawing.getCoverage().getVisibleArea("#ff0000"), 1e-9);
+        check("blue part", 100, drawing.getCoverage().getVisibleArea("#0000ff"), 1e-9);
+
+        drawing = new Drawing();
+        drawing.addShape(circle(50, 50, 20, "#00ff00"));
+        check("circle", Math.PI * 400, drawing.getCoverage().getCoveredArea(), 1e-9);
+
+        drawing = new Drawing();
+        drawing.addShape(circle(0, 0, 10, "#00ff00"));
+        drawing.addShape(circle(0, 0, 5, "#ff0000"));
+        drawing.addShape(circle(100, 0, 10, "#00ff00"));
+        check("nested circles", 200 * Math.PI, drawing.getCoverage().getCoveredArea(), 1e-9);
+        check("ring", 175 * Math.PI, drawing.getCoverage().getVisibleArea("#00ff00"), 1e-9);
+
+        drawing = new Drawing();
+        drawing.addShape(circle(0, 0, 10, "#00ff00"));
+        drawing.addShape(circle(10, 0, 10, "#ff0000"));
+        double lens = 2 * 100 * Math.acos(0.5) - 5 * Math.sqrt(300);
+        check("two circles", 200 * Math.PI - lens, drawing.getCoverage().getCoveredArea(), 1e-9);
+        check("covered circle", 100 * Math.PI - lens, drawing.getCoverage().getVisibleArea("#00ff00"), 1e-9);
+
+        drawing = new Drawing();
+        drawing.addShape(circle(0, 0, 10, "#00ff00"));
+        drawing.addShape(rectangle(-20, 0, 20, 20, "#ff0000"));
+        check("half circle", 50 * Math.PI, drawing.getCoverage().getVisibleArea("#00ff00"), 1e-9);
+
+        // TEST 2
+        // Shapes without an end point or without area
+        System.out.println("\nDegenerate shapes...");
+        drawing = new Drawing();
+        drawing.addShape(new Rectangle(0, 0, "#ff0000"));
+        drawing.addShape(rectangle(0, 0, 0, 10, "#ff0000"));
+        check("no area", 0, drawing.getCoverage().getCoveredArea(), 0);
+        drawing.addShape(rectangle(-10, -10, -5, -5, "#ff0000"));
+        check("negative coordinates", 25, drawing.getCoverage().getCoveredArea(), 1e-9);
+
+        // TEST 3
+        // Random drawings against the raster
+        System.out.println("\nRandom drawings against raster...");
+        Random random = new Random(62);
+        String[] colors = {"#000000", "#ff0000", "#00ff00", "#0000ff", "#ffffff"};
+        for (int test = 0; test < 20; test++) {
+            drawing = new Drawing();
+            int shapes = 1 + random.nextInt(40);
+            for (int i = 0; i < shapes; i++) {
+                double x = random.nextDouble() * 100;
+                double y = random.nextDouble() * 100;
+                String color = colors[random.nextInt(colors.length)];
+                if (random.nextBoolean()) {
+                    drawing.addShape(rectangle(x, y, x + random.nextDouble() * 40 - 20, y + random.nextDouble() * 40
+                            - 20, color));
+                } else {
+                    drawing.addShape(circle(x, y, random.nextDouble() * 20, color));
+                }
+            }
+            compareWithRaster("random drawing " + test, drawing);
+        }
+
+        // A crowded drawing, with too many shapes in one cell to split it at every crossing
+        drawing = new Drawing();
+        for (int i = 0; i < 100; i++) {
+            double x = random.nextDouble() * 30;
+            double y = random.nextDouble() * 30;
+            String color = colors[random.nextInt(colors.length)];
+            if (random.nextBoolean()) {
+                drawing.addShape(rectangle(x, y, x + random.nextDouble() * 10, y + random.nextDouble() * 10, color));
+            } else {
+                drawing.addShape(circle(x, y, random.nextDouble() * 10, color));
+            }
+        }
+        compareWithRaster("crowded drawing", drawing);
+
+        // TEST 4
+        // Performance
+        System.out.println("\nLarge drawing...");
+        drawing = new Drawing();
+        for (int i = 0; i < 1000000; i++) {
+            double x = random.nextDouble() * 10000;
+            double y = random.nextDouble() * 10000;
+            String color = colors[random.nextInt(colors.length)];
+            if (random.nextBoolean()) {
+                drawing.addShape(rectangle(x, y, x + random.nextDouble() * 20, y + random.nextDouble() * 20, color));
+            } else {
+                drawing.addShape(circle(x, y, random.nextDouble() * 10, color));
+            }
+        }
+        long start = System.nanoTime();
+        double covered = drawing.getCoverage().getCoveredArea();
+        long time = (System.nanoTime() - start) / 1000000;
+        System.out.println("1000000 shapes covering " + covered + " computed in " + time + " ms");
+
+        if (failures > 0) {
+            System.err.println("\n" + failures + " check(s) failed!");
+            System.exit(-1);
+        }
+        System.out.println("\nAll checks passed");
+    }
+
+    /**
+     * Compares the coverage of a drawing with a raster sampled at 10 points per unit in both directions. The raster
+     * can only be wrong close to the edges of the shapes, so the tolerance is the length of the edges times the size
+     * of a sample.
+     */
+    private static void compareWithRaster(String name, Drawing drawing) {
+        int samplesPerUnit = 10;
+        double sampleArea = 1.0 / (samplesPerUnit * samplesPerUnit);
+        Map<String, Double> raster = new HashMap<>();
+        double edges = 0;
+        for (int i = 0; i < drawing.getSize(); i++) {
+            Shape shape = drawing.getShape(i);
+            edges += 2 * Math.abs(shape.getEndX() - shape.getStartX()) + 2 * Math.abs(shape.getEndY() - shape.getStartY());
+        }
+        for (int sy = -30 * samplesPerUnit; sy < 130 * samplesPerUnit; sy++) {
+            for (int sx = -30 * samplesPerUnit; sx < 130 * samplesPerUnit; sx++) {
+                double x = (sx + 0.5) / samplesPerUnit;
+                double y = (sy + 0.5) / samplesPerUnit;
+                String top = null;
+                boolean covered = false;
+                for (int i = 0; i < drawing.getSize(); i++) {
+                    if (inside(drawing.getShape(i), x, y)) {
+                        top = drawing.getShape(i).getColor();
+                        covered = true;
+                    }
+                }
+                if (covered) {
+                    Double area = raster.get(top);
+                    raster.put(top, (area == null ? 0 : area) + sampleArea);
+                }
+            }
+        }
+        double tolerance = 2 * edges / samplesPerUnit;
+        CoverageEngine.Coverage coverage = drawing.getCoverage();
+        double rasterCovered = 0;
+        for (Map.Entry<String, Double> entry : raster.entrySet()) {
+            rasterCovered += entry.getValue();
+            check(name + " " + entry.getKey(), entry.getValue(), coverage.getVisibleArea(entry.getKey()), tolerance);
+        }
+        check(name, rasterCovered, coverage.getCoveredArea(), tolerance);
+    }
+
+    private static boolean inside(Shape shape, double x, double y) {
+        if (shape instanceof Circle) {
+            double radius = Math.hypot(shape.getEndX() - shape.getStartX(), shape.getEndY() - shape.getStartY());
+            return Math.hypot(x - shape.getStartX(), y - shape.getStartY()) < radius;
+        }
+        return x > Math.min(shape.getStartX(), shape.getEndX()) && x < Math.max(shape.getStartX(), shape.getEndX())
+                && y > Math.min(shape.getStartY(), shape.getEndY()) && y < Math.max(shape.getStartY(), shape.getEndY());
+    }
+
+    private static Shape rectangle(double x1, double y1, double x2, double y2, String color) {
+        Shape shape = new Rectangle(x1, y1, color);
+        shape.addPoint(x2, y2);
+        return shape;
+    }
+
+    private static Shape circle(double x, double y, double radius, String color) {
+        Shape shape = new Circle(x, y, color);
+        shape.addPoint(x + radius, y);
+        return shape;
+    }
+
+    private static void check(String name, double expected, double actual, double tolerance) {
+        if (Math.abs(expected - actual) > tolerance) {
+            failures++;
+            System.err.println("FAILED " + name + ": expected " + expected + " but was " + actual);
+        } else {
+            System.out.println("OK " + name + ": " + actual);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package se.miun.rojn1700.dt062g.jpaint;
 
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.annotation.*;
 import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.hypot;
 /**
  * <h1>Drawables</h1>
- * This file contains classes and interfaces required to create different drawable shapes, ie. circles and rectangles.
+ * This file contains classes and interfaces required to create different drawable shapes, ie. circles, rectangles
+ * and freehand strokes.
  * <p>
  * Giving proper comments in your program makes it more
  * user friendly and it is assumed as a high quality code.
@@ -47,14 +56,97 @@ class Drawing implements Drawable {
     private String name = "";
     @XmlElement
     private String author = "";
+    /**
+     * The shapes of the drawing, stored column-wise instead of as one object per shape.
+     */
+    @XmlTransient
+    private ShapeStore store;
+    /**
+     * List view of the store used by JAXB. Reading it yields detached copies of the stored shapes, adding to it
+     * appends to the store.
+     */
     @XmlElement(name = "shape")
-    private ArrayList<Shape> shapes;
+    private List<Shape> shapes;
+    /**
+     * The margin added around the clip when looking for shapes to draw.
+     */
+    static final double CLIP_MARGIN = 1;
+    @XmlTransient
+    private List<DrawingListener> listeners = new ArrayList<>();
+    /**
+     * The changes made since the last event, collected while a batch is open.
+     */
+    @XmlTransient
+    private DrawingEvent pending;
+    /**
+     * The amount of open batches. Events are only fired when the outermost batch ends.
+     */
+    @XmlTransient
+    private int batchDepth;
+    /**
+     * Collects the changes to the shapes into events for the listeners, set on the store while anyone listens.
+     */
+    @XmlTransient
+    private ShapeStore.ChangeListener storeListener = new ShapeStore.ChangeListener() {
+        @Override
+        public void shapesChanged(int type, double[] bounds) {
+            if (pending == null) {
+                pending = new DrawingEvent(Drawing.this);
+            }
+            pending.include(type, bounds);
+            if (batchDepth == 0) {
+                fireDrawingChanged();
+            }
+        }
+    };
+    /**
+     * Records the changes made to the drawing so they can be undone, null if they are not recorded.
+     */
+    @XmlTransient
+    private DrawingHistory history;
+    /**
+     * Records the changes made to the drawing on disk, null if they are not recorded.
+     */
+    @XmlTransient
+    private DrawingJournal journal;
+    /**
+     * The most shapes moved from the queue of appended shapes into the store by one call from the append executor,
+     * so the thread owning the drawing is not kept busy for long.
+     */
+    static final int DRAIN_BATCH = 2048;
+    /**
+     * Shapes appended by any thread, waiting to be moved into the store by the thread owning the drawing.
+     */
+    @XmlTransient
+    private final ShapeQueue appended = new ShapeQueue();
+    /**
+     * Runs the moving of appended shapes into the store on the thread owning the drawing, null if that thread calls
+     * drainAppended itself.
+     */
+    @XmlTransient
+    private volatile Executor appendExecutor;
+    /**
+     * Set from when a drain has been handed to the append executor until it starts.
+     */
+    @XmlTransient
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    @XmlTransient
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduled.set(false);
+            if (drainAppended(DRAIN_BATCH) == DRAIN_BATCH) {
+                scheduleDrain();
+            }
+        }
+    };
 
     /**
      * Instantiates a new Drawing.
      */
     public Drawing() {
-        shapes = new ArrayList<>();
+        store = new ShapeStore();
+        shapes = new XmlShapeList();
     }
 
     /**
@@ -64,7 +156,7 @@ class Drawing implements Drawable {
      * @param author the author
      */
     public Drawing(String name, String author) {
-        shapes = new ArrayList<>();
+        this();
         this.name = name;
         this.author = author;
     }
@@ -72,15 +164,195 @@ class Drawing implements Drawable {
     @Override
     public void draw() {
         System.out.println("A drawing by " + author + " called " + name);
-        for (int i = 0; i < shapes.size(); i++) {
-            System.out.println(shapes.get(i));
+        Shape[] flyweights = store.createFlyweights();
+        for (int i = 0; i < store.size(); i++) {
+            System.out.println(store.bind(flyweights, i));
         }
     }
 
+    /**
+     * Draws the shapes of the drawing. If the graphics has a clip, only the shapes whose bounds intersect it are
+     * drawn.
+     *
+     * @param g the graphics to draw on.
+     */
     @Override
     public void draw(Graphics g) {
-        for (Shape s : shapes) {
-            s.draw(g);
+        Shape[] flyweights = store.createFlyweights();
+        java.awt.Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            for (int i = 0; i < store.size(); i++) {
+                store.bind(flyweights, i).draw(g);
+            }
+            return;
+        }
+        // Shapes are drawn at truncated integer coordinates, so allow for a pixel of rounding on each side
+        int[] visible = store.query(clip.getMinX() - CLIP_MARGIN, clip.getMinY() - CLIP_MARGIN,
+                clip.getMaxX() + CLIP_MARGIN, clip.getMaxY() + CLIP_MARGIN);
+        for (int i : visible) {
+            store.bind(flyweights, i).draw(g);
+        }
+    }
+
+    /**
+     * Draws the shapes of the drawing like draw(Graphics), but fills runs of shapes with the same color at once and
+     * leaves out shapes hidden by later shapes. Only antialiased pixels where shapes of the same color overlap may
+     * differ from draw(Graphics).
+     *
+     * @param g the graphics to draw on.
+     */
+    void drawBatched(Graphics g) {
+        Shape[] flyweights = store.createFlyweights();
+        BitSet hidden = store.getCuller().getHidden();
+        ShapeBatch batch = new ShapeBatch((Graphics2D) g);
+        java.awt.Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            for (int i = 0; i < store.size(); i++) {
+                if (!hidden.get(i)) {
+                    batch.add(store.bind(flyweights, i));
+                }
+            }
+        } else {
+            int[] visible = store.query(clip.getMinX() - CLIP_MARGIN, clip.getMinY() - CLIP_MARGIN,
+                    clip.getMaxX() + CLIP_MARGIN, clip.getMaxY() + CLIP_MARGIN);
+            for (int i : visible) {
+                if (!hidden.get(i)) {
+                    batch.add(store.bind(flyweights, i));
+                }
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Creates a copy of the drawing without the shapes that never show, for export. Left out are shapes completely
+     * hidden by a later shape, shapes without an end point and shapes without a valid color.
+     *
+     * @return the compacted copy, with the same name and author.
+     */
+    Drawing getVisibleCopy() {
+        Drawing copy = new Drawing(name, author);
+        BitSet hidden = store.getCuller().getHidden();
+        Shape[] flyweights = store.createFlyweights();
+        for (int i = 0; i < store.size(); i++) {
+            if (store.hasEndPoint(i) && store.getPaint(i) != null && !hidden.get(i)) {
+                copy.addShape(store.bind(flyweights, i));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the amount of shapes completely hidden by a later shape.
+     *
+     * @return the amount of hidden shapes
+     */
+    int getHiddenCount() {
+        return store.getCuller().getHiddenCount();
+    }
+
+    /**
+     * Draws the shapes of the drawing from an index to the end, ie. the shapes added since the drawing had a known
+     * size.
+     *
+     * @param g    the graphics to draw on.
+     * @param from the index of the first shape to draw.
+     */
+    void draw(Graphics g, int from) {
+        Shape[] flyweights = store.createFlyweights();
+        for (int i = from; i < store.size(); i++) {
+            store.bind(flyweights, i).draw(g);
+        }
+    }
+
+    /**
+     * Gets the bounding box of a shape of the drawing.
+     *
+     * @param index the index of the shape.
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if the shape has no end point.
+     */
+    double[] getBounds(int index) {
+        return store.getBounds(index);
+    }
+
+    /**
+     * Creates a copy of the drawing holding its shapes as they are now, with the same modification count, for reading
+     * on another thread while the drawing goes on changing. Must be called on the thread owning the drawing. Nobody
+     * listens to the changes of the copy, and they are not recorded.
+     *
+     * @return the copy
+     */
+    Drawing snapshot() {
+        Drawing copy = new Drawing(name, author);
+        copy.store = store.snapshot();
+        return copy;
+    }
+
+    /**
+     * Gets the amount of changes made to the shapes of the drawing. Adding a shape counts as exactly one change.
+     *
+     * @return the modification count
+     */
+    int getModCount() {
+        return store.getModCount();
+    }
+
+    /**
+     * Adds a listener told about changes to the shapes of the drawing. Listeners are called on the thread making the
+     * change.
+     *
+     * @param listener the listener to add.
+     */
+    void addDrawingListener(DrawingListener listener) {
+        if (listeners.isEmpty()) {
+            store.setChangeListener(storeListener);
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added by addDrawingListener.
+     *
+     * @param listener the listener to remove.
+     */
+    void removeDrawingListener(DrawingListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            store.setChangeListener(null);
+            pending = null;
+        }
+    }
+
+    /**
+     * Starts a batch of changes. The changes made until the matching call to endChanges() are reported to the
+     * listeners in a single event. Batches may be nested.
+     */
+    void beginChanges() {
+        if (batchDepth++ == 0 && history != null) {
+            history.beginStep();
+        }
+    }
+
+    /**
+     * Ends a batch of changes started by beginChanges(), reporting the changes if it was the outermost batch.
+     */
+    void endChanges() {
+        if (--batchDepth == 0) {
+            if (history != null) {
+                history.endStep();
+            }
+            if (pending != null) {
+                fireDrawingChanged();
+            }
+        }
+    }
+
+    private void fireDrawingChanged() {
+        DrawingEvent event = pending;
+        pending = null;
+        event.setModCount(store.getModCount());
+        for (DrawingListener listener : new ArrayList<>(listeners)) {
+            listener.drawingChanged(event);
         }
     }
 
@@ -99,7 +371,13 @@ class Drawing implements Drawable {
      * @param name the name
      */
     public void setName(String name) {
+        if (history != null) {
+            history.renamed(this.name, name, author, author);
+        }
         this.name = name;
+        if (journal != null) {
+            journal.renamed(name, author);
+        }
     }
 
     /**
@@ -117,71 +395,325 @@ class Drawing implements Drawable {
      * @param author the author
      */
     public void setAuthor(String author) {
+        if (history != null) {
+            history.renamed(name, name, this.author, author);
+        }
         this.author = author;
+        if (journal != null) {
+            journal.renamed(name, author);
+        }
+    }
+
+    /**
+     * Sets the name and the author without recording the change, eg. when undoing a change of them.
+     *
+     * @param name   the name.
+     * @param author the author.
+     */
+    void restoreNames(String name, String author) {
+        this.name = name;
+        this.author = author;
+        if (journal != null) {
+            journal.renamed(name, author);
+        }
     }
 
     /**
-     * Adds a shape to the ArrayList shapes.
+     * Adds a shape to the drawing. The start point, end point and color of the shape are copied into the store, so
+     * later changes to the given object are not reflected in the drawing.
      *
      * @param shape the shape
      */
     public void addShape(Shape shape) {
         if (shape != null) {
-            shapes.add(shape);
+            int index = store.add(shape);
+            if (history != null) {
+                history.added(index);
+            }
+            if (journal != null) {
+                journal.added(index);
+            }
+        }
+    }
+
+    /**
+     * Adds a shape to the drawing from any thread, eg. one receiving shapes over the network. The shape is queued
+     * without locking and moved into the drawing later by drainAppended on the thread owning the drawing, which is
+     * asked to do so through the append executor if one is set. The shape must not be changed afterwards.
+     *
+     * @param shape the shape
+     */
+    void append(Shape shape) {
+        if (shape != null) {
+            appended.add(shape);
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Moves shapes appended by other threads into the drawing, in the order they were published. Must be called on the
+     * thread owning the drawing. The shapes are added as one batch of changes, and make up one step of the history.
+     *
+     * @param max the most shapes to move.
+     * @return the amount of shapes moved.
+     */
+    int drainAppended(int max) {
+        Shape shape = max > 0 ? appended.poll() : null;
+        if (shape == null) {
+            return 0;
+        }
+        int count = 0;
+        beginChanges();
+        try {
+            do {
+                addShape(shape);
+                count++;
+            } while (count < max && (shape = appended.poll()) != null);
+        } finally {
+            endChanges();
+        }
+        return count;
+    }
+
+    /**
+     * Sets the executor that runs drainAppended on the thread owning the drawing whenever shapes have been appended,
+     * eg. one running tasks on the event dispatch thread. Shapes already waiting are drained right away.
+     *
+     * @param executor the executor, or null to leave draining to the owning thread.
+     */
+    void setAppendExecutor(Executor executor) {
+        appendExecutor = executor;
+        scheduleDrain();
+    }
+
+    /**
+     * Hands a drain to the append executor, unless there is no executor or a drain is already waiting to start.
+     */
+    private void scheduleDrain() {
+        Executor executor = appendExecutor;
+        if (executor != null && drainScheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * Removes the shapes from an index to the end of the drawing, last first. Used when adding them is undone, so
+     * the removal is not recorded.
+     *
+     * @param from the index of the first shape to remove.
+     */
+    void removeShapes(int from) {
+        beginChanges();
+        while (store.size() > from) {
+            store.removeLast();
         }
+        endChanges();
+        if (journal != null) {
+            journal.removed(from);
+        }
+    }
+
+    /**
+     * Puts another store in place of the store of the drawing, without copying any shapes. Listeners are told about
+     * the swap as a single change covering the shapes of both stores.
+     *
+     * @param replacement the store to take over the shapes from.
+     * @param type        the kind of change reported, DrawingEvent.CLEARED or DrawingEvent.REPLACED.
+     * @return the store that was replaced.
+     */
+    ShapeStore replaceStore(ShapeStore replacement, int type) {
+        ShapeStore replaced = store;
+        double[] before = replaced.getStatistics().getBounds();
+        double[] after = replacement.getStatistics().getBounds();
+        replacement.continueModCount(replaced);
+        replaced.setChangeListener(null);
+        store = replacement;
+        if (!listeners.isEmpty()) {
+            store.setChangeListener(storeListener);
+            double[] bounds = before != null ? before : after;
+            if (before != null && after != null) {
+                bounds[0] = Math.min(before[0], after[0]);
+                bounds[1] = Math.min(before[1], after[1]);
+                bounds[2] = Math.max(before[2], after[2]);
+                bounds[3] = Math.max(before[3], after[3]);
+            }
+            storeListener.shapesChanged(type, bounds);
+        }
+        if (journal != null) {
+            if (replacement.size() == 0) {
+                journal.cleared();
+            } else {
+                journal.reset();
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Gets the history recording the changes to the drawing.
+     *
+     * @return the history, or null if changes are not recorded.
+     */
+    DrawingHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the history recording the changes to the drawing. Called by the history.
+     *
+     * @param history the history, or null to stop recording.
+     */
+    void setHistory(DrawingHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Gets the journal recording the changes to the drawing on disk.
+     *
+     * @return the journal, or null if changes are not recorded on disk.
+     */
+    DrawingJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal recording the changes to the drawing on disk. Called by the journal.
+     *
+     * @param journal the journal, or null to stop recording.
+     */
+    void setJournal(DrawingJournal journal) {
+        this.journal = journal;
     }
 
+    /**
+     * Gets a shape of the drawing. The returned shape is a view of the stored shape, changes made to it are written
+     * to the drawing.
+     *
+     * @param index the index of the shape
+     * @return the shape
+     */
     public Shape getShape(Integer index) {
-        return shapes.get(index);
+        if (index < 0 || index >= store.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + store.size());
+        }
+        return store.view(index);
+    }
+
+    /**
+     * Gets the shapes that a point lies inside of.
+     *
+     * @param x the x-value of the point.
+     * @param y the y-value of the point.
+     * @return views of the shapes, in the order they are drawn.
+     */
+    public List<Shape> getShapesAt(double x, double y) {
+        List<Shape> result = new ArrayList<>();
+        for (int i : store.query(x, y, x, y)) {
+            if (store.contains(i, x, y)) {
+                result.add(store.view(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the shapes whose bounding boxes intersect a rectangle.
+     *
+     * @param x      the x-value of the upper left corner of the rectangle.
+     * @param y      the y-value of the upper left corner of the rectangle.
+     * @param width  the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return views of the shapes, in the order they are drawn.
+     */
+    public List<Shape> getShapesIn(double x, double y, double width, double height) {
+        List<Shape> result = new ArrayList<>();
+        for (int i : store.query(x, y, x + width, y + height)) {
+            result.add(store.view(i));
+        }
+        return result;
     }
 
     /**
      * Gets amount of shapes in the drawing.
      *
-     * @return the size of the ArrayList shapes.
+     * @return the amount of shapes in the store.
      */
     public int getSize() {
-        return shapes.size();
+        return store.size();
+    }
+
+    /**
+     * Gets the running statistics of the drawing, with totals per shape type and color. The statistics are kept up
+     * to date as shapes are added, changed and cleared.
+     *
+     * @return the statistics
+     */
+    DrawingStatistics getStatistics() {
+        return store.getStatistics();
+    }
+
+    /**
+     * Gets the store holding the shapes of the drawing.
+     *
+     * @return the store
+     */
+    ShapeStore getStore() {
+        return store;
     }
 
     /**
-     * Gets the total circumference of the shapes of the drawing.
+     * Gets the palette of the drawing, holding every color used by its shapes decoded once.
+     *
+     * @return the palette
+     */
+    ColorPalette getPalette() {
+        return store.getPalette();
+    }
+
+    /**
+     * Gets the total circumference of the shapes of the drawing. Shapes without an end point are not counted.
      *
      * @return the total circumference
      */
     public double getTotalCircumference() {
-        double totalCircumference = 0;
-        for (int i = 0; i < shapes.size(); i++) {
-            try {
-                totalCircumference += shapes.get(i).getCircumference();
-            } catch (NoEndPointException e) {
-            }
-            ;
-        }
-        return totalCircumference;
+        return store.getStatistics().getTotals().getCircumference();
     }
 
     /**
-     * Gets the total area of the shapes of the drawing.
+     * Gets the total area of the shapes of the drawing. Shapes without an end point are not counted.
      *
      * @return the total area
      */
     public double getTotalArea() {
-        double totalArea = 0;
-        for (int i = 0; i < shapes.size(); i++) {
-            try {
-                totalArea += shapes.get(i).getArea();
-            } catch (NoEndPointException e) {
-            }
-            ;
-        }
-        return totalArea;
+        return store.getStatistics().getTotals().getArea();
+    }
+
+    /**
+     * Computes the area covered by the shapes of the drawing, where overlapping parts are only counted once, and the
+     * area visible in each color when the shapes are drawn in order. Unlike getTotalArea() the real value of pi is
+     * used.
+     *
+     * @return the coverage of the drawing
+     */
+    CoverageEngine.Coverage getCoverage() {
+        return CoverageEngine.compute(store);
     }
 
     public void clear() {
-        shapes.clear();
+        if (history != null && history.isRecording()) {
+            // The history keeps the shapes instead of them being thrown away, so the clear can be undone
+            history.cleared(replaceStore(new ShapeStore(), DrawingEvent.CLEARED), name, author);
+        } else {
+            store.clear();
+            if (journal != null) {
+                journal.cleared();
+            }
+        }
         author = "";
         name = "";
+        if (journal != null) {
+            journal.renamed(name, author);
+        }
     }
 
     @Override
@@ -189,6 +721,32 @@ class Drawing implements Drawable {
         return "Drawing[name=" + getName() + ";author=" + getAuthor() + ";size=" + getSize() + ";circumference=" + getTotalCircumference() + ";area" + getTotalArea() + "]";
     }
 
+    /**
+     * The list JAXB reads and fills the shapes of the drawing through. Shapes are handed out as detached copies,
+     * since JAXB accesses the fields of the shapes directly.
+     */
+    private class XmlShapeList extends AbstractList<Shape> {
+        @Override
+        public Shape get(int index) {
+            return store.copy(index);
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+
+        @Override
+        public boolean add(Shape shape) {
+            addShape(shape);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            store.clear();
+        }
+    }
 
 }
 
@@ -264,10 +822,12 @@ class Point {
 
 /**
  * The type Shape.
+ * A shape is either standalone, holding its own points and color, or a view of a shape stored in a ShapeStore, in
+ * which case all reads and writes go through to the store.
  */
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
-@XmlSeeAlso({Circle.class, Rectangle.class})
+@XmlSeeAlso({Circle.class, Rectangle.class, Stroke.class})
 abstract class Shape implements Drawable {
     @XmlElement
     private String color;
@@ -276,6 +836,33 @@ abstract class Shape implements Drawable {
      */
     @XmlElement(name = "point")
     protected ArrayList<Point> points;
+    /**
+     * The store this shape is a view of, null for standalone shapes.
+     */
+    @XmlTransient
+    private ShapeStore store;
+    /**
+     * The index of the shape in the store.
+     */
+    @XmlTransient
+    private int index;
+    /**
+     * The decoded color of a standalone shape, and the string it was decoded from.
+     */
+    @XmlTransient
+    private Color paint;
+    @XmlTransient
+    private String paintColor;
+    /**
+     * The geometry derived from the points, worked out when first needed.
+     */
+    @XmlTransient
+    private Geometry geometry;
+    /**
+     * The amount of times the points of a standalone shape have been changed, which tells if its geometry is current.
+     */
+    @XmlTransient
+    private int changes;
 
     /**
      * Instantiates a new Shape.
@@ -312,22 +899,230 @@ abstract class Shape implements Drawable {
     public void draw(Graphics g) {
     }
 
+    /**
+     * Makes this shape a view of a shape in a store.
+     *
+     * @param store the store holding the shape.
+     * @param index the index of the shape in the store.
+     */
+    void bind(ShapeStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Gets the index of the shape in the store it is a view of.
+     *
+     * @return the index
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the store this shape is a view of.
+     *
+     * @return the store, or null for a standalone shape.
+     */
+    ShapeStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the kind of the shape, as used by the ShapeStore.
+     *
+     * @return the kind
+     */
+    abstract byte getKind();
+
     /**
      * Gets color.
      *
      * @return the color
      */
     public String getColor() {
+        if (store != null) {
+            return store.getColor(index);
+        }
         return color;
     }
 
     /**
-     * Sets color.
-     *
-     * @param color the color
+     * Gets the color decoded into a Color. Shapes in a drawing share the Color objects of its palette, a standalone
+     * shape decodes its color once and keeps it until the color is changed.
+     *
+     * @return the Color, or null if the color could not be decoded.
+     */
+    Color getPaint() {
+        if (store != null) {
+            return store.getPaint(index);
+        }
+        if (paintColor != color) {
+            try {
+                paint = Color.decode(color);
+            } catch (NullPointerException | NumberFormatException e) {
+                paint = null;
+            }
+            paintColor = color;
+        }
+        return paint;
+    }
+
+    /**
+     * Sets color.
+     *
+     * @param color the color
+     */
+    public void setColor(String color) {
+        if (store != null) {
+            store.setColor(index, color);
+        } else {
+            this.color = color;
+        }
+    }
+
+    /**
+     * Gets the x-value of the 0-index point.
+     *
+     * @return the x-value of the start point
+     */
+    protected double getStartX() {
+        if (store != null) {
+            return store.getStartX(index);
+        }
+        return points.get(0).getX();
+    }
+
+    /**
+     * Gets the y-value of the 0-index point.
+     *
+     * @return the y-value of the start point
+     */
+    protected double getStartY() {
+        if (store != null) {
+            return store.getStartY(index);
+        }
+        return points.get(0).getY();
+    }
+
+    /**
+     * Gets the x-value of the end point. Only valid if the shape has an end point.
+     *
+     * @return the x-value of the end point
+     */
+    protected double getEndX() {
+        if (store != null) {
+            return store.getEndX(index);
+        }
+        return points.get(1).getX();
+    }
+
+    /**
+     * Gets the y-value of the end point. Only valid if the shape has an end point.
+     *
+     * @return the y-value of the end point
+     */
+    protected double getEndY() {
+        if (store != null) {
+            return store.getEndY(index);
+        }
+        return points.get(1).getY();
+    }
+
+    /**
+     * Checks if the shape has an end point.
+     *
+     * @return true if the shape has an end point
+     */
+    protected boolean hasEndPoint() {
+        if (store != null) {
+            return store.hasEndPoint(index);
+        }
+        return points.size() > 1;
+    }
+
+    /**
+     * Gets the bounding box of the shape.
+     *
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if the shape has no end point.
+     */
+    double[] getBounds() {
+        Geometry geometry = getGeometry();
+        return geometry != null ? geometry.getBounds() : null;
+    }
+
+    /**
+     * Gets the geometry derived from the points of the shape. It is worked out the first time it is needed and kept
+     * until the points are changed. The geometry of a view is also worked out again when the view is bound to another
+     * shape or the store has been changed.
+     *
+     * @return the geometry, or null if the shape has no end point.
+     */
+    Geometry getGeometry() {
+        if (!hasEndPoint()) {
+            return null;
+        }
+        int version = store != null ? store.getModCount() : changes;
+        if (geometry == null) {
+            geometry = new Geometry();
+        }
+        if (!geometry.isFor(store, index, version)) {
+            computeGeometry(geometry);
+            geometry.setSource(store, index, version);
+        }
+        return geometry;
+    }
+
+    /**
+     * Gets the geometry of a shape that must have an end point.
+     *
+     * @return the geometry
+     * @throws NoEndPointException if the shape has no end point.
+     */
+    protected Geometry requireGeometry() throws NoEndPointException {
+        Geometry geometry = getGeometry();
+        if (geometry == null) {
+            throw new NoEndPointException();
+        }
+        return geometry;
+    }
+
+    /**
+     * Works out the geometry of the shape, which has an end point.
+     *
+     * @param geometry the geometry to fill in.
+     */
+    abstract void computeGeometry(Geometry geometry);
+
+    /**
+     * Creates the outline of the shape, which has an end point, for getOutline.
+     *
+     * @param geometry the current geometry of the shape.
+     * @return the outline
+     */
+    abstract java.awt.Shape createOutline(Geometry geometry);
+
+    /**
+     * Gets the outline of the shape, ready to be filled or drawn. It is kept with the geometry.
+     *
+     * @return the outline at the whole pixels the shape is drawn at, or null if the shape has no end point.
+     */
+    java.awt.Shape getOutline() {
+        Geometry geometry = getGeometry();
+        if (geometry == null) {
+            return null;
+        }
+        if (geometry.outline == null) {
+            geometry.outline = createOutline(geometry);
+        }
+        return geometry.outline;
+    }
+
+    /**
+     * Makes the geometry of a standalone shape be worked out again, after its points have been changed.
      */
-    public void setColor(String color) {
-        this.color = color;
+    void pointsChanged() {
+        changes++;
     }
 
     /**
@@ -354,16 +1149,181 @@ abstract class Shape implements Drawable {
      * @param y the y-value of the end point.
      */
     public void addPoint(double x, double y) {
-        points.add(1, new Point(x, y));
+        addPoint(new Point(x, y));
     }
 
     /**
-     * Adds a point to index 1 of points.
+     * Adds a point to index 1 of points. A stored shape only keeps its start and end point, so for a view the end
+     * point is replaced.
      *
      * @param point the end point
      */
     public void addPoint(Point point) {
-        points.add(1, point);
+        if (store != null) {
+            store.setEndPoint(index, point.getX(), point.getY());
+        } else {
+            points.add(1, point);
+            pointsChanged();
+        }
+    }
+
+    /**
+     * Moves the start and end point of a standalone shape, reusing its points. Used for the shape being drawn, which
+     * changes with every movement of the mouse.
+     *
+     * @param startX the x-value of the start point.
+     * @param startY the y-value of the start point.
+     * @param endX   the x-value of the end point.
+     * @param endY   the y-value of the end point.
+     */
+    void setPoints(double startX, double startY, double endX, double endY) {
+        if (store != null) {
+            throw new IllegalStateException("The points of a stored shape can not be moved");
+        }
+        if (points.size() < 2) {
+            points.add(new Point());
+        }
+        points.get(0).setX(startX);
+        points.get(0).setY(startY);
+        points.get(1).setX(endX);
+        points.get(1).setY(endY);
+        pointsChanged();
+    }
+
+    /**
+     * Gets the start point as a string.
+     *
+     * @return the start point formatted as "(x,y)"
+     */
+    protected String startToString() {
+        return "(" + getStartX() + "," + getStartY() + ")";
+    }
+
+    /**
+     * Gets the end point as a string. Only valid if the shape has an end point.
+     *
+     * @return the end point formatted as "(x,y)"
+     */
+    protected String endToString() {
+        return "(" + getEndX() + "," + getEndY() + ")";
+    }
+
+    /**
+     * The geometry derived from the points of a shape, kept by the shape so that painting it, its statistics and the
+     * culling of hidden shapes do not work it out again and again. Views reuse their geometry for every shape they
+     * are bound to.
+     */
+    static final class Geometry {
+        /**
+         * The shape the geometry was worked out for, as the store, index and version of its points.
+         */
+        private ShapeStore store;
+        private int index;
+        private int version;
+        private boolean current;
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+        private double width;
+        private double height;
+        private double radius;
+        private double area;
+        private double circumference;
+        /**
+         * The whole pixels the shape is drawn at, as given to fillRect or fillOval.
+         */
+        private int pixelX;
+        private int pixelY;
+        private int pixelWidth;
+        private int pixelHeight;
+        /**
+         * The outline of the shape, null until asked for.
+         */
+        private java.awt.Shape outline;
+
+        private boolean isFor(ShapeStore store, int index, int version) {
+            return current && this.store == store && this.index == index && this.version == version;
+        }
+
+        private void setSource(ShapeStore store, int index, int version) {
+            this.store = store;
+            this.index = index;
+            this.version = version;
+            current = true;
+        }
+
+        /**
+         * Sets the bounding box and the sizes of the shape.
+         */
+        void setSize(double[] bounds, double width, double height, double radius, double area,
+                     double circumference) {
+            minX = bounds[0];
+            minY = bounds[1];
+            maxX = bounds[2];
+            maxY = bounds[3];
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            this.area = area;
+            this.circumference = circumference;
+            outline = null;
+        }
+
+        /**
+         * Sets the whole pixels the shape is drawn at.
+         */
+        void setPixels(int x, int y, int width, int height) {
+            pixelX = x;
+            pixelY = y;
+            pixelWidth = width;
+            pixelHeight = height;
+        }
+
+        /**
+         * Gets the bounding box.
+         *
+         * @return the bounds as {minX, minY, maxX, maxY}.
+         */
+        double[] getBounds() {
+            return new double[]{minX, minY, maxX, maxY};
+        }
+
+        double getWidth() {
+            return width;
+        }
+
+        double getHeight() {
+            return height;
+        }
+
+        double getRadius() {
+            return radius;
+        }
+
+        double getArea() {
+            return area;
+        }
+
+        double getCircumference() {
+            return circumference;
+        }
+
+        int getPixelX() {
+            return pixelX;
+        }
+
+        int getPixelY() {
+            return pixelY;
+        }
+
+        int getPixelWidth() {
+            return pixelWidth;
+        }
+
+        int getPixelHeight() {
+            return pixelHeight;
+        }
     }
 }
 
@@ -405,19 +1365,51 @@ class Rectangle extends Shape {
 
     ;
 
+    @Override
+    byte getKind() {
+        return ShapeStore.RECTANGLE;
+    }
+
     public void draw() {
         System.out.println(this.toString());
     }
 
     public void draw(Graphics g) {
-        g.setColor(Color.decode(getColor()));
+        Color paint = getPaint();
+        if (paint == null) {
+            return;
+        }
+        g.setColor(paint);
         try {
-            g.fillRect((int) points.get(0).getX(), (int) points.get(0).getY(), (int) getWidth(), (int)getHeight());
+            Geometry geometry = requireGeometry();
+            g.fillRect(geometry.getPixelX(), geometry.getPixelY(), geometry.getPixelWidth(),
+                    geometry.getPixelHeight());
         } catch (NoEndPointException e) {
             System.err.println(e.getMessage());
         }
     }
 
+    @Override
+    void computeGeometry(Geometry geometry) {
+        double startX = getStartX();
+        double startY = getStartY();
+        double endX = getEndX();
+        double endY = getEndY();
+        double width = abs(endX - startX);
+        double height = abs(startY - endY);
+        double[] bounds = {Math.min(startX, endX), Math.min(startY, endY), Math.max(startX, endX),
+                Math.max(startY, endY)};
+        geometry.setSize(bounds, width, height, 0, width * height, 2 * width + 2 * height);
+        // The start point is not always the upper left corner, the end point may be above or left of it
+        geometry.setPixels((int) bounds[0], (int) bounds[1], (int) width, (int) height);
+    }
+
+    @Override
+    java.awt.Shape createOutline(Geometry geometry) {
+        return new Rectangle2D.Double(geometry.getPixelX(), geometry.getPixelY(), geometry.getPixelWidth(),
+                geometry.getPixelHeight());
+    }
+
     /**
      * Gets the width of the rectangle.
      *
@@ -425,11 +1417,7 @@ class Rectangle extends Shape {
      * @throws NoEndPointException if the second element, the end point, of points is a null object.
      */
     public double getWidth() throws NoEndPointException {
-        if (points.size() == 1) {
-            throw new NoEndPointException();
-        }
-        double width = abs(points.get(1).getX() - points.get(0).getX());
-        return width;
+        return requireGeometry().getWidth();
     }
 
     /**
@@ -439,39 +1427,27 @@ class Rectangle extends Shape {
      * @throws NoEndPointException if the second element, the end point, of points is a null object.
      */
     public double getHeight() throws NoEndPointException {
-        if (points.size() == 1) {
-            throw new NoEndPointException();
-        }
-        double height = abs(points.get(0).getY() - points.get(1).getY());
-        return height;
+        return requireGeometry().getHeight();
     }
 
 
     @Override
     public double getCircumference() throws NoEndPointException {
-        try {
-            return 2 * getWidth() + 2 * getHeight();
-        } catch (NoEndPointException e) {
-            throw e;
-        }
+        return requireGeometry().getCircumference();
     }
 
     @Override
     public double getArea() throws NoEndPointException {
-        try {
-            return getWidth() * getHeight();
-        } catch (NoEndPointException e) {
-            throw e;
-        }
+        return requireGeometry().getArea();
     }
 
     public String toString() {
         try {
             double width = getWidth();
             double height = getHeight();
-            return "Rectangle[start=" + points.get(0).toString() + ";end=" + points.get(1).toString() + ";width=" + width + ";height=" + height + ";color=" + getColor() + "]";
+            return "Rectangle[start=" + startToString() + ";end=" + endToString() + ";width=" + width + ";height=" + height + ";color=" + getColor() + "]";
         } catch (NoEndPointException e) {
-            return "Rectangle[start=" + points.get(0).toString() + ";end=N/A;width=N/A;height=N/A;color=" + getColor() + "]";
+            return "Rectangle[start=" + startToString() + ";end=N/A;width=N/A;height=N/A;color=" + getColor() + "]";
         }
     }
 }
@@ -516,20 +1492,31 @@ class Circle extends Shape {
         pi = 3.14;
     }
 
+    @Override
+    byte getKind() {
+        return ShapeStore.CIRCLE;
+    }
+
     public void draw() {
         System.out.println(this.toString());
     }
 
     public void draw(Graphics g) {
+        Color paint = getPaint();
+        if (paint == null) {
+            return;
+        }
         try {
             Graphics2D g2 = (Graphics2D) g;
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                    RenderingHints.VALUE_ANTIALIAS_ON);
-            double radius = getRadius();
-            double startX = points.get(0).getX() - radius;
-            double startY = points.get(0).getY() - radius;
-            g.setColor(Color.decode(getColor()));
-            g2.fillOval((int) startX, (int) startY, (int) getRadius() * 2, (int) getRadius() * 2);
+            // Circles are antialiased, unless the graphics asks for speed
+            if (RenderQuality.antialiasCurves(g2)) {
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                        RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            Geometry geometry = requireGeometry();
+            g.setColor(paint);
+            g2.fillOval(geometry.getPixelX(), geometry.getPixelY(), geometry.getPixelWidth(),
+                    geometry.getPixelHeight());
         } catch (NoEndPointException e) {
             System.err.println(e.getMessage());
         }
@@ -542,38 +1529,374 @@ class Circle extends Shape {
      * @throws NoEndPointException if the second element, the end point, of points is a null object.
      */
     public double getRadius() throws NoEndPointException {
-        if (points.size() == 1) {
-            throw new NoEndPointException();
-        }
-        double radius = hypot(abs(points.get(0).getX() - points.get(1).getX()), abs(points.get(0).getY() - points.get(1).getY()));
-        return radius;
+        return requireGeometry().getRadius();
+    }
+
+    @Override
+    void computeGeometry(Geometry geometry) {
+        double startX = getStartX();
+        double startY = getStartY();
+        double radius = hypot(abs(startX - getEndX()), abs(startY - getEndY()));
+        double[] bounds = {startX - radius, startY - radius, startX + radius, startY + radius};
+        geometry.setSize(bounds, 2 * radius, 2 * radius, radius, radius * radius * pi, 2 * radius * pi);
+        geometry.setPixels((int) bounds[0], (int) bounds[1], (int) radius * 2, (int) radius * 2);
+    }
+
+    @Override
+    java.awt.Shape createOutline(Geometry geometry) {
+        return new Ellipse2D.Double(geometry.getPixelX(), geometry.getPixelY(), geometry.getPixelWidth(),
+                geometry.getPixelHeight());
     }
 
     @Override
     public double getCircumference() throws NoEndPointException {
+        return requireGeometry().getCircumference();
+    }
+
+    @Override
+    public double getArea() throws NoEndPointException {
+        return requireGeometry().getArea();
+    }
+
+    @Override
+    public String toString() {
         try {
-            return 2 * getRadius() * pi;
+            double radius = getRadius();
+            return "Circle[start=" + startToString() + ";end=" + endToString() + ";radius=" + radius + ";color=" + getColor() + "]";
         } catch (NoEndPointException e) {
-            throw e;
+            return "Circle[start=" + startToString() + ";end=N/A;radius=N/A;color=" + getColor() + "]";
+        }
+    }
+}
+
+/**
+ * The type Stroke.
+ * A freehand line through any amount of points, drawn with round ends and corners. The 0-index point is where the
+ * stroke starts and the end point is its last point. Adding a point appends it to the end of the stroke.
+ * <p>
+ * The points of a standalone stroke are kept in a PointBuffer. When saved, the points are simplified to within
+ * SIMPLIFY_TOLERANCE of the line and delta encoded into the path element, which is decoded again the first time the
+ * points of a loaded stroke are read.
+ */
+@XmlRootElement
+class Stroke extends Shape {
+    /**
+     * The width of the line.
+     */
+    static final double WIDTH = 3;
+    /**
+     * The largest distance a point left out when saving may have from the saved line.
+     */
+    static final double SIMPLIFY_TOLERANCE = 0.25;
+    @XmlTransient
+    private static final BasicStroke LINE = new BasicStroke((float) WIDTH, BasicStroke.CAP_ROUND,
+            BasicStroke.JOIN_ROUND);
+
+    /**
+     * The points of a standalone stroke, null for views and for loaded strokes not yet decoded.
+     */
+    @XmlTransient
+    private PointBuffer buffer;
+    /**
+     * The encoded points, as written by PointBuffer.encode.
+     */
+    @XmlElement
+    private String path;
+
+    /**
+     * Instantiates a new Stroke starting in a point.
+     *
+     * @param x     the x-value of the 0-index point.
+     * @param y     the y-value of the 0-index point.
+     * @param color the color of the stroke.
+     */
+    public Stroke(double x, double y, String color) {
+        setColor(color);
+        buffer = new PointBuffer();
+        buffer.add(x, y);
+    }
+
+    /**
+     * Instantiates a new Stroke starting in a point.
+     *
+     * @param point the 0-index point.
+     * @param color the color of the stroke.
+     */
+    public Stroke(Point point, String color) {
+        this(point.getX(), point.getY(), color);
+    }
+
+    /**
+     * Default constructor.
+     */
+    public Stroke() {
+    }
+
+    /**
+     * Instantiates a stroke read from a file, whose points are decoded from the path the first time they are read.
+     *
+     * @param color the color of the stroke.
+     * @param path  the encoded points, as written by PointBuffer.encode.
+     */
+    Stroke(String color, String path) {
+        setColor(color);
+        this.path = path;
+    }
+
+    @Override
+    byte getKind() {
+        return ShapeStore.STROKE;
+    }
+
+    /**
+     * Gets the points of a standalone stroke, decoding them first if the stroke was loaded.
+     */
+    private PointBuffer points() {
+        if (buffer == null) {
+            buffer = path == null ? new PointBuffer() : PointBuffer.decode(path);
+            path = null;
+        }
+        return buffer;
+    }
+
+    /**
+     * Gets the amount of points.
+     *
+     * @return the amount of points
+     */
+    int getPointCount() {
+        if (getStore() != null) {
+            return getStore().getPointCount(getIndex());
+        }
+        return points().size();
+    }
+
+    /**
+     * Gets the x-value of a point.
+     *
+     * @param k the index of the point.
+     * @return the x-value
+     */
+    double getPointX(int k) {
+        if (getStore() != null) {
+            return getStore().getPointX(getIndex(), k);
+        }
+        return points().getX(k);
+    }
+
+    /**
+     * Gets the y-value of a point.
+     *
+     * @param k the index of the point.
+     * @return the y-value
+     */
+    double getPointY(int k) {
+        if (getStore() != null) {
+            return getStore().getPointY(getIndex(), k);
+        }
+        return points().getY(k);
+    }
+
+    @Override
+    protected double getStartX() {
+        return getPointX(0);
+    }
+
+    @Override
+    protected double getStartY() {
+        return getPointY(0);
+    }
+
+    @Override
+    protected double getEndX() {
+        return getPointX(getPointCount() - 1);
+    }
+
+    @Override
+    protected double getEndY() {
+        return getPointY(getPointCount() - 1);
+    }
+
+    @Override
+    protected boolean hasEndPoint() {
+        return getPointCount() > 1;
+    }
+
+    /**
+     * Adds a point to the end of the stroke.
+     *
+     * @param x the x-value of the point.
+     * @param y the y-value of the point.
+     */
+    @Override
+    public void addPoint(double x, double y) {
+        if (getStore() != null) {
+            getStore().setEndPoint(getIndex(), x, y);
+        } else {
+            points().add(x, y);
+            pointsChanged();
+        }
+    }
+
+    /**
+     * Adds a point to the end of the stroke.
+     *
+     * @param point the point to add.
+     */
+    @Override
+    public void addPoint(Point point) {
+        addPoint(point.getX(), point.getY());
+    }
+
+    /**
+     * Replaces the points of a standalone stroke with a straight line from a start point to an end point, so that a
+     * stroke can be moved along with the mouse as the other shapes are. The buffer of the stroke is reused.
+     *
+     * @param startX the x-value of the start point.
+     * @param startY the y-value of the start point.
+     * @param endX   the x-value of the end point.
+     * @param endY   the y-value of the end point.
+     */
+    @Override
+    void setPoints(double startX, double startY, double endX, double endY) {
+        if (getStore() != null) {
+            throw new IllegalStateException("The points of a stored shape can not be moved");
+        }
+        PointBuffer points = points();
+        points.clear();
+        points.add(startX, startY);
+        points.add(endX, endY);
+        pointsChanged();
+    }
+
+    /**
+     * Works out the geometry of the stroke. The bounding box includes the width of the line, and the length of the
+     * line is kept as the circumference.
+     *
+     * @param geometry the geometry to fill in.
+     */
+    @Override
+    void computeGeometry(Geometry geometry) {
+        double[] bounds;
+        double length = 0;
+        if (getStore() != null) {
+            bounds = getStore().getBounds(getIndex());
+            for (int k = 1; k < getPointCount(); k++) {
+                length += hypot(getPointX(k) - getPointX(k - 1), getPointY(k) - getPointY(k - 1));
+            }
+        } else {
+            bounds = points().getBounds(0, points().size(), WIDTH / 2);
+            length = points().getLength(0, points().size());
+        }
+        geometry.setSize(bounds, bounds[2] - bounds[0], bounds[3] - bounds[1], 0, 0, length);
+        int x = (int) Math.floor(bounds[0]);
+        int y = (int) Math.floor(bounds[1]);
+        geometry.setPixels(x, y, (int) Math.ceil(bounds[2]) - x, (int) Math.ceil(bounds[3]) - y);
+    }
+
+    /**
+     * Creates the line through the points. Unlike the outlines of the other shapes it is to be drawn with LINE
+     * rather than filled.
+     *
+     * @param geometry the current geometry of the stroke.
+     * @return the line
+     */
+    @Override
+    java.awt.Shape createOutline(Geometry geometry) {
+        int count = getPointCount();
+        Path2D.Double line = new Path2D.Double(Path2D.WIND_NON_ZERO, count);
+        line.moveTo(getPointX(0), getPointY(0));
+        for (int k = 1; k < count; k++) {
+            line.lineTo(getPointX(k), getPointY(k));
+        }
+        return line;
+    }
+
+    public void draw() {
+        System.out.println(this.toString());
+    }
+
+    public void draw(Graphics g) {
+        Color paint = getPaint();
+        if (paint == null || !hasEndPoint()) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        // Strokes are antialiased like circles, unless the graphics asks for speed
+        if (RenderQuality.antialiasCurves(g2)) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         }
+        java.awt.Stroke old = g2.getStroke();
+        g2.setColor(paint);
+        g2.setStroke(LINE);
+        g2.draw(getOutline());
+        g2.setStroke(old);
+    }
+
+    /**
+     * Gets the length of the stroke, as it is a line.
+     *
+     * @return the length
+     * @throws NoEndPointException if the stroke only has one point.
+     */
+    @Override
+    public double getCircumference() throws NoEndPointException {
+        return requireGeometry().getCircumference();
     }
 
+    /**
+     * Gets the area of the stroke, which is 0 as it is a line.
+     *
+     * @return the area
+     * @throws NoEndPointException if the stroke only has one point.
+     */
     @Override
     public double getArea() throws NoEndPointException {
-        try {
-            return getRadius() * getRadius() * pi;
-        } catch (NoEndPointException e) {
-            throw e;
+        return requireGeometry().getArea();
+    }
+
+    /**
+     * Simplifies and encodes the points into the path element before JAXB writes the stroke. Called by JAXB.
+     *
+     * @param marshaller the marshaller writing the stroke.
+     */
+    void beforeMarshal(Marshaller marshaller) {
+        if (buffer != null) {
+            path = buffer.simplify(SIMPLIFY_TOLERANCE).encode();
+        }
+    }
+
+    /**
+     * Gets the points simplified and encoded as they are saved. A loaded stroke whose points have not been read gives
+     * the path it was loaded with.
+     *
+     * @return the encoded points.
+     */
+    String getPath() {
+        if (getStore() == null && buffer == null && path != null) {
+            return path;
         }
+        PointBuffer points;
+        if (getStore() != null) {
+            points = new PointBuffer(getPointCount());
+            for (int k = 0; k < getPointCount(); k++) {
+                points.add(getPointX(k), getPointY(k));
+            }
+        } else {
+            points = points();
+        }
+        return points.simplify(SIMPLIFY_TOLERANCE).encode();
     }
 
     @Override
     public String toString() {
         try {
-            double radius = getRadius();
-            return "Circle[start=" + points.get(0).toString() + ";end=" + points.get(1).toString() + ";radius=" + radius + ";color=" + getColor() + "]";
+            double length = getCircumference();
+            return "Stroke[start=" + startToString() + ";end=" + endToString() + ";points=" + getPointCount()
+                    + ";length=" + length + ";color=" + getColor() + "]";
         } catch (NoEndPointException e) {
-            return "Circle[start=" + points.get(0).toString() + ";end=N/A;radius=N/A;color=" + getColor() + "]";
+            return "Stroke[start=" + startToString() + ";end=N/A;points=" + getPointCount() + ";length=N/A;color="
+                    + getColor() + "]";
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>DrawingCodec</h1>
+ * This file contains the abstract class DrawingCodec, a file format drawings can be read from and written to.
+ * <p>
+ * A codec reads and writes drawings through streams, so the same format can be used for files, for the network and for
+ * data in memory. Codecs are registered with the FileHandler, which picks the codec for a file by the extension of its
+ * name, or by the first bytes of the file when the name does not tell. A codec may be used by several threads at once,
+ * and keeps timings of all drawings it has read and written, so the cost of parsing and serializing can be told apart
+ * from the rest of the work, eg. when rendering a whole directory of drawings. Codecs with costly setup do it in
+ * warmUp, which is called on a background thread when the application starts.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-29
+ */
+abstract class DrawingCodec {
+    private final String name;
+    private final String extension;
+    private final Timings reads = new Timings();
+    private final Timings writes = new Timings();
+
+    /**
+     * Instantiates a new DrawingCodec.
+     *
+     * @param name      the name of the format, eg. "XML".
+     * @param extension the extension of the files in the format, including the dot, eg. ".xml".
+     */
+    protected DrawingCodec(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    /**
+     * Reads a drawing from a stream. The stream is not closed.
+     *
+     * @param in the stream to read from.
+     * @return the drawing.
+     * @throws IOException if the stream could not be read or does not hold a drawing in the format.
+     */
+    final Drawing read(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        Drawing drawing = decode(in);
+        reads.add(System.nanoTime() - start, drawing.getSize());
+        return drawing;
+    }
+
+    /**
+     * Writes a drawing to a stream. The stream is flushed but not closed.
+     *
+     * @param drawing the drawing to write.
+     * @param out     the stream to write to.
+     * @throws IOException if the stream could not be written.
+     */
+    final void write(Drawing drawing, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        encode(drawing, out);
+        out.flush();
+        writes.add(System.nanoTime() - start, drawing.getSize());
+    }
+
+    /**
+     * Reads a drawing in the format from a stream.
+     *
+     * @param in the stream to read from.
+     * @return the drawing.
+     * @throws IOException if the stream could not be read or does not hold a drawing in the format.
+     */
+    protected abstract Drawing decode(InputStream in) throws IOException;
+
+    /**
+     * Writes a drawing in the format to a stream.
+     *
+     * @param drawing the drawing to write.
+     * @param out     the stream to write to.
+     * @throws IOException if the stream could not be written.
+     */
+    protected abstract void encode(Drawing drawing, OutputStream out) throws IOException;
+
+    /**
+     * Checks if the first bytes of a file are those of the format, so files can be read whatever their name. Returns
+     * false unless overridden, for formats that cannot be told by their first bytes.
+     *
+     * @param header the first bytes of the file.
+     * @param length the amount of bytes in the header, which may be less than its length for short files.
+     * @return true if the file is in the format.
+     */
+    boolean accepts(byte[] header, int length) {
+        return false;
+    }
+
+    /**
+     * Does the setup needed before the first drawing is read or written, so it does not delay the first file. Does
+     * nothing unless overridden.
+     */
+    void warmUp() {
+    }
+
+    /**
+     * Gets the name of the format.
+     *
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the extension of the files in the format.
+     *
+     * @return the extension, including the dot.
+     */
+    String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Gets the timings of the drawings read so far.
+     *
+     * @return the timings
+     */
+    Timings getReadTimings() {
+        return reads;
+    }
+
+    /**
+     * Gets the timings of the drawings written so far.
+     *
+     * @return the timings
+     */
+    Timings getWriteTimings() {
+        return writes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + extension + ")";
+    }
+
+    /**
+     * The total time spent on a number of drawings, added to by several threads.
+     */
+    static class Timings {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong shapes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        void add(long nanos, int shapes) {
+            count.incrementAndGet();
+            this.shapes.addAndGet(shapes);
+            this.nanos.addAndGet(nanos);
+        }
+
+        /**
+         * Gets the amount of drawings.
+         *
+         * @return the count
+         */
+        long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Gets the amount of shapes in all the drawings.
+         *
+         * @return the amount of shapes
+         */
+        long getShapes() {
+            return shapes.get();
+        }
+
+        /**
+         * Gets the total time spent on the drawings, which may be more than the time passed when several threads
+         * worked at once.
+         *
+         * @return the time in milliseconds
+         */
+        double getMillis() {
+            return nanos.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d drawings with %d shapes in %.1f ms", getCount(), getShapes(), getMillis());
+        }
+    }
+}
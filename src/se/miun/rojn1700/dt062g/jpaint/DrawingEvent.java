@@ -0,0 +1,170 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.EventObject;
+
+/**
+ * <h1>DrawingEvent</h1>
+ * This file contains the class DrawingEvent, which describes a batch of changes to the shapes of a Drawing.
+ * <p>
+ * An event tells which kinds of changes were made, how many shapes were added, changed and removed, and the smallest
+ * rectangle of the drawing containing every shape touched by the changes. For a changed shape both its old and its new
+ * bounding box are included, and clearing or replacing the shapes includes the extents of all shapes before and
+ * after. Listeners can use the
+ * rectangle to only redraw the part of the drawing that changed.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-23
+ */
+class DrawingEvent extends EventObject {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shapes were added to the end of the drawing.
+     */
+    static final int ADDED = 1;
+    /**
+     * Points or colors of shapes were changed.
+     */
+    static final int CHANGED = 2;
+    /**
+     * All shapes were removed.
+     */
+    static final int CLEARED = 4;
+    /**
+     * Shapes were removed from the end of the drawing, eg. when adding them was undone.
+     */
+    static final int REMOVED = 8;
+    /**
+     * All shapes were replaced by another set of shapes, eg. when clearing the drawing was undone.
+     */
+    static final int REPLACED = 16;
+
+    private int types;
+    private int count;
+    private int added;
+    private int changed;
+    private int removed;
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    private int modCount;
+
+    /**
+     * Instantiates a new, empty DrawingEvent.
+     *
+     * @param drawing the drawing that changed.
+     */
+    DrawingEvent(Drawing drawing) {
+        super(drawing);
+    }
+
+    /**
+     * Adds a change to the event.
+     *
+     * @param type   the kind of change, ADDED, CHANGED, CLEARED, REMOVED or REPLACED.
+     * @param bounds the region of the drawing touched by the change as {minX, minY, maxX, maxY}, or null if no
+     *               visible part of the drawing was touched.
+     */
+    void include(int type, double[] bounds) {
+        types |= type;
+        count++;
+        if (type == ADDED) {
+            added++;
+        } else if (type == CHANGED) {
+            changed++;
+        } else if (type == REMOVED) {
+            removed++;
+        }
+        if (bounds != null) {
+            minX = Math.min(minX, bounds[0]);
+            minY = Math.min(minY, bounds[1]);
+            maxX = Math.max(maxX, bounds[2]);
+            maxY = Math.max(maxY, bounds[3]);
+        }
+    }
+
+    void setModCount(int modCount) {
+        this.modCount = modCount;
+    }
+
+    /**
+     * Gets the drawing that changed.
+     *
+     * @return the drawing
+     */
+    Drawing getDrawing() {
+        return (Drawing) getSource();
+    }
+
+    /**
+     * Checks if the event holds a kind of change.
+     *
+     * @param type ADDED, CHANGED, CLEARED, REMOVED or REPLACED.
+     * @return true if a change of the kind was made.
+     */
+    boolean hasType(int type) {
+        return (types & type) != 0;
+    }
+
+    /**
+     * Gets the amount of changes in the event, each of which counts as one modification of the drawing.
+     *
+     * @return the amount of changes
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the amount of shapes added.
+     *
+     * @return the amount of added shapes
+     */
+    int getAddedCount() {
+        return added;
+    }
+
+    /**
+     * Gets the amount of changes made to shapes. A shape changed twice is counted twice.
+     *
+     * @return the amount of changes
+     */
+    int getChangedCount() {
+        return changed;
+    }
+
+    /**
+     * Gets the amount of shapes removed.
+     *
+     * @return the amount of removed shapes
+     */
+    int getRemovedCount() {
+        return removed;
+    }
+
+    /**
+     * Gets the region of the drawing touched by the changes.
+     *
+     * @return the region as {minX, minY, maxX, maxY}, or null if no visible part of the drawing was touched.
+     */
+    double[] getBounds() {
+        if (minX > maxX) {
+            return null;
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Gets the modification count of the drawing right after the changes.
+     *
+     * @return the modification count
+     */
+    int getModCount() {
+        return modCount;
+    }
+}
@@ -0,0 +1,454 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <h1>DrawingHistory</h1>
+ * This file contains the class DrawingHistory, a log of the changes made to a Drawing that lets them be undone and
+ * redone.
+ * <p>
+ * Instead of snapshots of the whole drawing, the history records each change as an operation that knows how to undo
+ * and redo itself, so a step takes memory in proportion to the change. Adding shapes is recorded as the range of
+ * indexes they were added at, and is undone by removing them from the end of the drawing, copying them out so they can
+ * be added again on redo. Clearing the drawing puts an empty store in its place and keeps the old store, so undoing a
+ * clear puts it back without copying a single shape. Renaming keeps the old and the new name and author. All changes
+ * made between beginChanges() and endChanges() of the drawing, eg. merging in another drawing, make up one step. An
+ * operation undoes exactly what it did, so undoing never replays earlier steps and takes time in proportion to the
+ * change, no matter how large the drawing is.
+ * <p>
+ * The memory taken up by the steps is estimated and kept within a budget. When a new step makes the history go over
+ * it, the oldest steps are forgotten first. The latest step is always kept, so the last change can be undone even if
+ * it alone is larger than the budget, eg. clearing a drawing of millions of shapes, whose store is kept whole.
+ * <p>
+ * Only the changes made through the drawing are recorded. Changes made to stored shapes through views, eg. setting
+ * the color of a shape returned by getShape or adding a point to it, have no operation and are not steps of their
+ * own. They stay in place when other steps are undone, and shapes copied out by an undo are copied as changed. The
+ * application does not change stored shapes that way.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-28
+ */
+class DrawingHistory {
+    /**
+     * The default amount of memory the history may take up, in bytes.
+     */
+    static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    /**
+     * The estimated memory taken up by an operation itself, and by a standalone copy of a shape and each of its
+     * points.
+     */
+    private static final int OPERATION_BYTES = 48;
+    private static final int SHAPE_BYTES = 128;
+    private static final int POINT_BYTES = 16;
+
+    private final Drawing drawing;
+    /**
+     * The steps that can be undone, the latest last.
+     */
+    private final ArrayDeque<Operation> done = new ArrayDeque<>();
+    /**
+     * The steps that can be redone, the latest undone last.
+     */
+    private final ArrayDeque<Operation> undone = new ArrayDeque<>();
+    private long budget;
+    private long bytes;
+    /**
+     * The operations of the step being recorded between beginStep and endStep, null outside a step.
+     */
+    private List<Operation> step;
+    /**
+     * Set while undoing or redoing, when the changes made to the drawing are not to be recorded.
+     */
+    private boolean applying;
+
+    /**
+     * Instantiates a new DrawingHistory recording the changes to a drawing from now on.
+     *
+     * @param drawing the drawing to record the changes of.
+     * @param budget  the amount of memory the history may take up, in bytes.
+     */
+    DrawingHistory(Drawing drawing, long budget) {
+        this.drawing = drawing;
+        this.budget = budget;
+        drawing.setHistory(this);
+    }
+
+    /**
+     * Undoes the latest step that has not been undone.
+     *
+     * @return true if a step was undone, false if there was none.
+     */
+    boolean undo() {
+        Operation operation = done.pollLast();
+        if (operation == null) {
+            return false;
+        }
+        bytes -= operation.getBytes();
+        apply(operation, true);
+        bytes += operation.getBytes();
+        undone.addLast(operation);
+        trim();
+        return true;
+    }
+
+    /**
+     * Redoes the latest undone step.
+     *
+     * @return true if a step was redone, false if there was none.
+     */
+    boolean redo() {
+        Operation operation = undone.pollLast();
+        if (operation == null) {
+            return false;
+        }
+        bytes -= operation.getBytes();
+        apply(operation, false);
+        bytes += operation.getBytes();
+        done.addLast(operation);
+        trim();
+        return true;
+    }
+
+    private void apply(Operation operation, boolean undo) {
+        applying = true;
+        drawing.beginChanges();
+        try {
+            if (undo) {
+                operation.undo(drawing);
+            } else {
+                operation.redo(drawing);
+            }
+        } finally {
+            drawing.endChanges();
+            applying = false;
+        }
+    }
+
+    boolean canUndo() {
+        return !done.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !undone.isEmpty();
+    }
+
+    /**
+     * Checks if changes made to the drawing right now are recorded, ie. if they are not made by undo or redo.
+     *
+     * @return true if changes are recorded
+     */
+    boolean isRecording() {
+        return !applying;
+    }
+
+    /**
+     * Sets the amount of memory the history may take up, forgetting the oldest steps if it is already over it.
+     *
+     * @param budget the budget in bytes.
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the estimated amount of memory taken up by the steps.
+     *
+     * @return the size in bytes
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Forgets all steps.
+     */
+    void clear() {
+        done.clear();
+        undone.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Starts collecting the changes into one step. Called by the drawing when its outermost batch of changes begins.
+     */
+    void beginStep() {
+        if (!applying) {
+            step = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Ends the step started by beginStep(), recording it if anything changed.
+     */
+    void endStep() {
+        if (applying || step == null) {
+            return;
+        }
+        List<Operation> operations = step;
+        step = null;
+        if (operations.size() == 1) {
+            record(operations.get(0));
+        } else if (operations.size() > 1) {
+            record(new Compound(operations));
+        }
+    }
+
+    /**
+     * Records that a shape has been added to the end of the drawing.
+     *
+     * @param index the index of the added shape.
+     */
+    void added(int index) {
+        if (applying) {
+            return;
+        }
+        // Shapes added one after another within a step are kept as one range
+        if (step != null && !step.isEmpty() && step.get(step.size() - 1) instanceof Added) {
+            Added last = (Added) step.get(step.size() - 1);
+            if (last.from + last.count == index) {
+                last.count++;
+                return;
+            }
+        }
+        add(new Added(index));
+    }
+
+    /**
+     * Records that the drawing has been cleared.
+     *
+     * @param cleared the store holding the shapes the drawing had.
+     * @param name    the name the drawing had.
+     * @param author  the author the drawing had.
+     */
+    void cleared(ShapeStore cleared, String name, String author) {
+        if (!applying) {
+            add(new Cleared(cleared, name, author));
+        }
+    }
+
+    /**
+     * Records that the name or the author of the drawing has been changed. Nothing is recorded if neither changed.
+     *
+     * @param oldName   the name before.
+     * @param newName   the name after.
+     * @param oldAuthor the author before.
+     * @param newAuthor the author after.
+     */
+    void renamed(String oldName, String newName, String oldAuthor, String newAuthor) {
+        if (!applying && (!Objects.equals(oldName, newName) || !Objects.equals(oldAuthor, newAuthor))) {
+            add(new Renamed(oldName, newName, oldAuthor, newAuthor));
+        }
+    }
+
+    private void add(Operation operation) {
+        if (step != null) {
+            step.add(operation);
+        } else {
+            record(operation);
+        }
+    }
+
+    /**
+     * Adds a finished step to the steps that can be undone. Recording a step makes the undone steps impossible to
+     * redo.
+     */
+    private void record(Operation operation) {
+        for (Operation forgotten : undone) {
+            bytes -= forgotten.getBytes();
+        }
+        undone.clear();
+        done.addLast(operation);
+        bytes += operation.getBytes();
+        trim();
+    }
+
+    /**
+     * Forgets the oldest steps until the history is within its budget, or only one step is left. Steps to redo are
+     * forgotten after all but the latest step to undo, starting with the one that would be redone last.
+     */
+    private void trim() {
+        while (bytes > budget && done.size() + undone.size() > 1) {
+            Operation forgotten = done.size() > 1 ? done.pollFirst() : undone.pollFirst();
+            bytes -= forgotten.getBytes();
+        }
+    }
+
+    /**
+     * A change to the drawing that can be undone and redone.
+     */
+    private abstract static class Operation {
+        /**
+         * Undoes the change. The drawing is as right after the change was made.
+         */
+        abstract void undo(Drawing drawing);
+
+        /**
+         * Makes the change again. The drawing is as right after the change was undone.
+         */
+        abstract void redo(Drawing drawing);
+
+        /**
+         * Estimates the memory the operation takes up right now.
+         */
+        abstract long getBytes();
+    }
+
+    /**
+     * Shapes added to the end of the drawing.
+     */
+    private static class Added extends Operation {
+        private final int from;
+        private int count;
+        /**
+         * Copies of the added shapes while they are undone, null while they are in the drawing.
+         */
+        private Shape[] shapes;
+        private long shapeBytes;
+
+        Added(int from) {
+            this.from = from;
+            count = 1;
+        }
+
+        @Override
+        void undo(Drawing drawing) {
+            ShapeStore store = drawing.getStore();
+            shapes = new Shape[count];
+            shapeBytes = 0;
+            for (int k = 0; k < count; k++) {
+                shapes[k] = store.copy(from + k);
+                shapeBytes += SHAPE_BYTES + (long) store.getPointCount(from + k) * POINT_BYTES;
+            }
+            drawing.removeShapes(from);
+        }
+
+        @Override
+        void redo(Drawing drawing) {
+            for (Shape shape : shapes) {
+                drawing.addShape(shape);
+            }
+            shapes = null;
+            shapeBytes = 0;
+        }
+
+        @Override
+        long getBytes() {
+            return OPERATION_BYTES + shapeBytes;
+        }
+    }
+
+    /**
+     * The drawing was cleared. The store holding the shapes it had is kept while the clear is done, and the empty
+     * store that took its place while the clear is undone.
+     */
+    private static class Cleared extends Operation {
+        private ShapeStore other;
+        private final String name;
+        private final String author;
+
+        Cleared(ShapeStore cleared, String name, String author) {
+            other = cleared;
+            this.name = name;
+            this.author = author;
+        }
+
+        @Override
+        void undo(Drawing drawing) {
+            other = drawing.replaceStore(other, DrawingEvent.REPLACED);
+            drawing.restoreNames(name, author);
+        }
+
+        @Override
+        void redo(Drawing drawing) {
+            other = drawing.replaceStore(other, DrawingEvent.CLEARED);
+            drawing.restoreNames("", "");
+        }
+
+        @Override
+        long getBytes() {
+            return OPERATION_BYTES + other.estimateBytes();
+        }
+    }
+
+    /**
+     * The name or the author of the drawing was changed.
+     */
+    private static class Renamed extends Operation {
+        private final String oldName;
+        private final String newName;
+        private final String oldAuthor;
+        private final String newAuthor;
+
+        Renamed(String oldName, String newName, String oldAuthor, String newAuthor) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.oldAuthor = oldAuthor;
+            this.newAuthor = newAuthor;
+        }
+
+        @Override
+        void undo(Drawing drawing) {
+            drawing.restoreNames(oldName, oldAuthor);
+        }
+
+        @Override
+        void redo(Drawing drawing) {
+            drawing.restoreNames(newName, newAuthor);
+        }
+
+        @Override
+        long getBytes() {
+            return OPERATION_BYTES + 2L * (length(oldName) + length(newName) + length(oldAuthor) + length(newAuthor));
+        }
+
+        private static int length(String text) {
+            return text != null ? text.length() : 0;
+        }
+    }
+
+    /**
+     * Several changes made as one step, undone in the reverse order.
+     */
+    private static class Compound extends Operation {
+        private final Operation[] operations;
+
+        Compound(List<Operation> operations) {
+            this.operations = operations.toArray(new Operation[0]);
+        }
+
+        @Override
+        void undo(Drawing drawing) {
+            for (int k = operations.length - 1; k >= 0; k--) {
+                operations[k].undo(drawing);
+            }
+        }
+
+        @Override
+        void redo(Drawing drawing) {
+            for (Operation operation : operations) {
+                operation.redo(drawing);
+            }
+        }
+
+        @Override
+        long getBytes() {
+            long total = OPERATION_BYTES;
+            for (Operation operation : operations) {
+                total += operation.getBytes();
+            }
+            return total;
+        }
+    }
+}
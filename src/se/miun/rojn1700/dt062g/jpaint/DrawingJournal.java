@@ -0,0 +1,739 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>DrawingJournal</h1>
+ * This file contains the class DrawingJournal, an append-only log of the changes made to a drawing since it was last
+ * written to its file in full.
+ * <p>
+ * The drawing file is a snapshot, and the journal next to it, with EXTENSION added to the name, holds every change made
+ * after it: shapes added, shapes removed from the end, the drawing cleared and the name and author changed. The drawing
+ * is thereby the snapshot with the journal replayed on top of it, and opening a drawing replays the journal left by
+ * the last session, so nothing is lost when the program dies. Saving the drawing to the same file only has to make sure
+ * the journal is on disk, which costs a record per change instead of writing the whole drawing again. The save also
+ * asks for the journal to be folded into the snapshot in the background, without waiting for it, so the file soon is
+ * complete for everything reading it without the journal, eg. batch renders, thumbnails and the server.
+ * <p>
+ * Changes are recorded on the thread changing the drawing, which encodes them into records and queues them. A
+ * background thread writes the records and forces them to disk once per batch of all records waiting, so changes made
+ * in quick succession share one disk sync. Every record carries its length and a CRC-32 checksum, so a record cut off
+ * when the program died is told apart from a complete one, and replaying stops before it. If the writer fails, the
+ * records waiting are dropped and the next change switches journaling off, reporting the error, so records do not
+ * pile up for a writer that is gone. The drawing then has to be saved in full to be journaled again.
+ * <p>
+ * When the journal has grown past the snapshot, or past COMPACT_BYTES for small drawings, or a save asked for it, it
+ * is folded into a new snapshot by a compaction thread of its own, so the writer goes on writing records meanwhile. The
+ * compaction reads the snapshot and the records on disk when it started into a drawing of its own, and writes that
+ * drawing to a temporary file. The writer then starts a new journal holding the records written since, and moves the
+ * new snapshot and the new journal over the old ones. The drawing being edited is never read by the background
+ * threads. The journal starts with the length and time of change of the snapshot it belongs to, so a journal left over
+ * from before a compaction or a full save is recognized as such and ignored. Should the program die between the two
+ * moves, the new journal is picked up from its temporary file when the drawing is opened.
+ * <p>
+ * Changes the journal has no record for, ie. changes to stored shapes made through views and a clear being undone, are
+ * recorded as the whole drawing. The application does neither in normal use.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class DrawingJournal {
+    /**
+     * The extension added to the name of the drawing file to get the name of its journal.
+     */
+    static final String EXTENSION = ".journal";
+    /**
+     * The size of journal from which it is folded into the snapshot even if the snapshot is smaller.
+     */
+    static final long COMPACT_BYTES = 4L * 1024 * 1024;
+    private static final byte[] MAGIC = {'J', 'P', 'J', 'L'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 8 + 8;
+
+    /**
+     * The types of records.
+     */
+    private static final byte ADD = 1;
+    private static final byte TRUNCATE = 2;
+    private static final byte CLEAR = 3;
+    private static final byte RESET = 4;
+    private static final byte NAMES = 5;
+
+    /**
+     * Queued after the last record to stop the writer.
+     */
+    private static final byte[] STOP = new byte[0];
+    /**
+     * Queued after the last record to have the writer fold the journal into the snapshot.
+     */
+    private static final byte[] COMPACT = new byte[0];
+    /**
+     * Queued by the compaction thread when it is done.
+     */
+    private static final byte[] FOLDED = new byte[0];
+
+    private final Drawing drawing;
+    private final File snapshot;
+    private final File file;
+    private final DrawingCodec codec;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final Thread shutdownHook;
+    /**
+     * Records the whole drawing when a stored shape has been changed, which has no record of its own.
+     */
+    private final DrawingListener changeListener = new DrawingListener() {
+        @Override
+        public void drawingChanged(DrawingEvent e) {
+            if (e.hasType(DrawingEvent.CHANGED)) {
+                reset();
+            }
+        }
+    };
+    /**
+     * Encodes the records on the thread changing the drawing.
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private final CRC32 crc = new CRC32();
+    /**
+     * The amount of records queued, counted by the thread changing the drawing.
+     */
+    private long queued;
+    /**
+     * The amount of records on disk, and the error that stopped the writer, guarded by this.
+     */
+    private long durable;
+    private IOException failure;
+    /**
+     * The length of the journal file, used by the writer only.
+     */
+    private long length;
+    /**
+     * The length of the journal folded by the running compaction, or -1 if none is running, and if another compaction
+     * is to start once it is done. Used by the writer only.
+     */
+    private long folding = -1;
+    private boolean compactAgain;
+    /**
+     * The new snapshot written by the compaction, or the error that stopped it, set by the compaction thread and taken
+     * by the writer. Guarded by this, as is whether the writer has stopped, after which a new snapshot is deleted.
+     */
+    private File folded;
+    private IOException foldFailure;
+    private boolean writerStopped;
+
+    private DrawingJournal(Drawing drawing, File snapshot, DrawingCodec codec, long length) {
+        this.drawing = drawing;
+        this.snapshot = snapshot;
+        this.codec = codec;
+        this.length = length;
+        file = new File(snapshot.getPath() + EXTENSION);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "Journal of " + snapshot.getName());
+        writer.setDaemon(true);
+        shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stop();
+            }
+        });
+    }
+
+    /**
+     * Starts journaling the changes to a drawing read from a file. A journal of the file left by an earlier session is
+     * replayed onto the drawing first, unless the file has been written since.
+     *
+     * @param drawing  the drawing, as held by the file.
+     * @param fileName the name of the drawing file.
+     * @return the journal, which the drawing records its changes to until it is closed.
+     * @throws IOException if the journal could not be read or created.
+     */
+    static DrawingJournal open(Drawing drawing, String fileName) throws IOException {
+        return open(drawing, fileName, true);
+    }
+
+    /**
+     * Starts journaling the changes to a drawing just written to a file in full, starting an empty journal.
+     *
+     * @param drawing  the drawing.
+     * @param fileName the name of the drawing file.
+     * @return the journal, which the drawing records its changes to until it is closed.
+     * @throws IOException if the journal could not be created.
+     */
+    static DrawingJournal start(Drawing drawing, String fileName) throws IOException {
+        return open(drawing, fileName, false);
+    }
+
+    private static DrawingJournal open(Drawing drawing, String fileName, boolean replay) throws IOException {
+        if (drawing.getJournal() != null) {
+            drawing.getJournal().close();
+        }
+        File snapshot = new File(fileName);
+        File file = new File(fileName + EXTENSION);
+        File newJournal = new File(file.getPath() + ".tmp");
+        if (newJournal.exists()) {
+            // The program died between moving a compacted snapshot and its journal into place
+            if (belongsTo(newJournal, snapshot)) {
+                Files.move(newJournal.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.delete(newJournal.toPath());
+            }
+        }
+        long length = 0;
+        if (replay && file.exists() && belongsTo(file, snapshot)) {
+            length = replay(file, file.length(), drawing);
+            try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+                // Cut off a record left half written
+                journal.setLength(length);
+            }
+        }
+        if (length == 0) {
+            writeHeader(file, snapshot);
+            length = HEADER_LENGTH;
+        }
+        DrawingCodec codec = FileHandler.getCodec(fileName);
+        DrawingJournal journal = new DrawingJournal(drawing, snapshot, codec != null ? codec : FileHandler.XML, length);
+        drawing.setJournal(journal);
+        drawing.addDrawingListener(journal.changeListener);
+        Runtime.getRuntime().addShutdownHook(journal.shutdownHook);
+        journal.writer.start();
+        return journal;
+    }
+
+    /**
+     * Checks if a journal file belongs to the snapshot as it is now.
+     */
+    private static boolean belongsTo(File file, File snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(magic, MAGIC) && in.readUnsignedByte() == VERSION
+                    && in.readLong() == snapshot.length() && in.readLong() == snapshot.lastModified();
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static void writeHeader(File file, File snapshot) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            DataOutputStream header = new DataOutputStream(stream);
+            header.write(MAGIC);
+            header.writeByte(VERSION);
+            header.writeLong(snapshot.length());
+            header.writeLong(snapshot.lastModified());
+            header.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Applies the complete records of a journal up to a length to a drawing, stopping at the first record that is cut
+     * off or damaged.
+     *
+     * @return the length of the journal up to the end of the last complete record.
+     */
+    private static long replay(File file, long end, Drawing drawing) throws IOException {
+        long position = HEADER_LENGTH;
+        PointBuffer points = new PointBuffer();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.skipBytes(HEADER_LENGTH);
+            while (position + 8 <= end) {
+                int size = in.readInt();
+                if (size <= 0 || position + 8 + size > end) {
+                    break;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record, 0, size);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(record)), drawing, points);
+                position += 8 + size;
+            }
+        }
+        return position;
+    }
+
+    private static void apply(DataInputStream in, Drawing drawing, PointBuffer points) throws IOException {
+        ShapeStore store = drawing.getStore();
+        switch (in.readByte()) {
+            case ADD:
+                readShape(in, store, points);
+                break;
+            case TRUNCATE:
+                drawing.removeShapes(in.readInt());
+                break;
+            case RESET:
+                store.clear();
+                for (int count = in.readInt(); count > 0; count--) {
+                    readShape(in, store, points);
+                }
+                break;
+            case CLEAR:
+                store.clear();
+                break;
+            case NAMES:
+                drawing.restoreNames(readString(in), readString(in));
+                break;
+            default:
+                throw new IOException("Damaged journal: unknown record");
+        }
+    }
+
+    private static void readShape(DataInputStream in, ShapeStore store, PointBuffer points) throws IOException {
+        byte kind = in.readByte();
+        int color = store.getPalette().intern(readString(in));
+        if (kind == ShapeStore.STROKE) {
+            points.clear();
+            for (int count = in.readInt(); count > 0; count--) {
+                points.add(in.readDouble(), in.readDouble());
+            }
+            store.addStroke(points, 0, points.size(), color);
+        } else {
+            store.add(kind, in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), color);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[size];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records that a shape has been added to the end of the drawing. Called by the drawing.
+     *
+     * @param index the index of the added shape.
+     */
+    void added(int index) {
+        try {
+            out.writeByte(ADD);
+            writeShape(drawing.getStore(), index);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+        }
+        queue();
+    }
+
+    /**
+     * Records that the shapes from an index to the end of the drawing have been removed. Called by the drawing.
+     *
+     * @param from the index of the first removed shape.
+     */
+    void removed(int from) {
+        try {
+            out.writeByte(TRUNCATE);
+            out.writeInt(from);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+        }
+        queue();
+    }
+
+    /**
+     * Records that all shapes have been removed. Called by the drawing.
+     */
+    void cleared() {
+        buffer.write(CLEAR);
+        queue();
+    }
+
+    /**
+     * Records that the name or the author has been changed. Called by the drawing.
+     *
+     * @param name   the new name.
+     * @param author the new author.
+     */
+    void renamed(String name, String author) {
+        try {
+            out.writeByte(NAMES);
+            writeString(name);
+            writeString(author);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+        }
+        queue();
+    }
+
+    /**
+     * Records all shapes of the drawing, after a change that has no record of its own. Called by the drawing.
+     */
+    void reset() {
+        ShapeStore store = drawing.getStore();
+        try {
+            out.writeByte(RESET);
+            out.writeInt(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                writeShape(store, i);
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail
+        }
+        queue();
+    }
+
+    private void writeShape(ShapeStore store, int i) throws IOException {
+        out.writeByte(store.getKind(i));
+        writeString(store.getColor(i));
+        if (store.getKind(i) == ShapeStore.STROKE) {
+            out.writeInt(store.getPointCount(i));
+            for (int k = 0; k < store.getPointCount(i); k++) {
+                out.writeDouble(store.getPointX(i, k));
+                out.writeDouble(store.getPointY(i, k));
+            }
+        } else {
+            out.writeDouble(store.getStartX(i));
+            out.writeDouble(store.getStartY(i));
+            out.writeDouble(store.getEndX(i));
+            out.writeDouble(store.getEndY(i));
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    /**
+     * Frames the encoded record with its length and checksum and hands it to the writer.
+     */
+    private void queue() {
+        byte[] payload = buffer.toByteArray();
+        buffer.reset();
+        if (hasFailed()) {
+            close();
+            System.err.println("Changes to " + snapshot.getName() + " are no longer journaled: "
+                    + getFailure().getMessage());
+            return;
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        queue.add(record.array());
+        queued++;
+    }
+
+    /**
+     * Checks if the writer has stopped on an error, in which case changes are no longer written to disk.
+     *
+     * @return true if the journal could not be written.
+     */
+    synchronized boolean hasFailed() {
+        return failure != null;
+    }
+
+    private synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until every change recorded so far is on disk, without folding the journal into the snapshot.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    void sync() throws IOException {
+        long target = queued;
+        synchronized (this) {
+            while (durable < target && failure == null && writer.isAlive()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while saving the journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Waits until every change recorded so far is on disk, and asks for the journal to be folded into the snapshot in
+     * the background afterwards, without waiting for that. Called when the drawing is saved to its file.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    void save() throws IOException {
+        queue.add(COMPACT);
+        sync();
+    }
+
+    /**
+     * Writes the changes recorded so far and stops journaling. Later changes to the drawing are not recorded.
+     */
+    void close() {
+        drawing.setJournal(null);
+        drawing.removeDrawingListener(changeListener);
+        stop();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The program is shutting down, and the hook is what closes the journal
+        }
+    }
+
+    private void stop() {
+        if (writer.isAlive()) {
+            queue.add(STOP);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the file of the drawing the journal belongs to.
+     *
+     * @return the file
+     */
+    File getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Writes the queued records in batches, forcing each batch to disk, until stopped. Runs on the writer thread.
+     */
+    private void write() {
+        List<byte[]> batch = new ArrayList<>();
+        FileChannel channel = null;
+        try {
+            channel = openChannel();
+            boolean stopped = false;
+            while (!stopped) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                int written = 0;
+                boolean compactAsked = false;
+                boolean foldDone = false;
+                for (byte[] record : batch) {
+                    if (record == STOP) {
+                        stopped = true;
+                        break;
+                    }
+                    if (record == COMPACT || record == FOLDED) {
+                        compactAsked |= record == COMPACT;
+                        foldDone |= record == FOLDED;
+                        continue;
+                    }
+                    ByteBuffer bytes = ByteBuffer.wrap(record);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    length += record.length;
+                    written++;
+                }
+                batch.clear();
+                channel.force(false);
+                synchronized (this) {
+                    durable += written;
+                    notifyAll();
+                }
+                if (stopped) {
+                    break;
+                }
+                if (foldDone) {
+                    channel.close();
+                    replaceFolded();
+                    channel = openChannel();
+                }
+                if (compactAsked || length > Math.max(COMPACT_BYTES, snapshot.length())) {
+                    if (folding < 0) {
+                        startCompaction();
+                    } else {
+                        // Records written since the running compaction started are folded by the next one
+                        compactAgain |= compactAsked;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("The journal of " + snapshot.getName() + " could not be written: " + e.getMessage());
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+            synchronized (this) {
+                writerStopped = true;
+                deleteFolded();
+            }
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(length);
+        return channel;
+    }
+
+    /**
+     * Starts folding the journal as it is on disk now into a new snapshot on a thread of its own, which queues FOLDED
+     * when done. Runs on the writer thread.
+     */
+    private void startCompaction() {
+        final long end = length;
+        folding = end;
+        compactAgain = false;
+        Thread compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File newSnapshot = null;
+                IOException error = null;
+                try {
+                    newSnapshot = fold(end);
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (DrawingJournal.this) {
+                    folded = newSnapshot;
+                    foldFailure = error;
+                    if (writerStopped) {
+                        deleteFolded();
+                        return;
+                    }
+                }
+                queue.add(FOLDED);
+            }
+        }, "Compaction of " + snapshot.getName());
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    /**
+     * Reads the snapshot and the journal up to a length into a drawing and writes it to a new snapshot in a temporary
+     * file. Runs on the compaction thread.
+     *
+     * @return the new snapshot.
+     */
+    private File fold(long end) throws IOException {
+        Drawing drawing;
+        if (snapshot.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(snapshot))) {
+                drawing = codec.read(in);
+            }
+        } else {
+            drawing = new Drawing();
+        }
+        replay(file, end, drawing);
+
+        File directory = snapshot.getAbsoluteFile().getParentFile();
+        File newSnapshot = File.createTempFile(snapshot.getName(), ".tmp", directory);
+        try (FileOutputStream stream = new FileOutputStream(newSnapshot)) {
+            OutputStream buffered = new BufferedOutputStream(stream);
+            codec.write(drawing, buffered);
+            buffered.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(newSnapshot.toPath());
+            throw e;
+        }
+        return newSnapshot;
+    }
+
+    /**
+     * Replaces the snapshot with the one written by the compaction, and the journal with one holding the records
+     * written since the compaction started. Each file is replaced by moving a complete new file over it, the snapshot
+     * first. Runs on the writer thread, while the journal is not open.
+     */
+    private void replaceFolded() throws IOException {
+        File newSnapshot;
+        synchronized (this) {
+            newSnapshot = folded;
+            folded = null;
+            if (foldFailure != null) {
+                throw foldFailure;
+            }
+        }
+        long from = folding;
+        folding = -1;
+        File newJournal = new File(file.getPath() + ".tmp");
+        writeHeader(newJournal, newSnapshot);
+        try (FileChannel in = new FileInputStream(file).getChannel();
+             FileChannel out = new FileOutputStream(newJournal, true).getChannel()) {
+            long position = from;
+            while (position < length) {
+                position += in.transferTo(position, length - position, out);
+            }
+            out.force(false);
+        }
+        Files.move(newSnapshot.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.move(newJournal.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        length = HEADER_LENGTH + length - from;
+        if (compactAgain) {
+            startCompaction();
+        }
+    }
+
+    /**
+     * Deletes a new snapshot the writer will not take. Called holding the lock.
+     */
+    private void deleteFolded() {
+        if (folded != null) {
+            if (!folded.delete()) {
+                System.err.println("Could not delete " + folded.getPath());
+            }
+            folded = null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.EventListener;
+
+/**
+ * <h1>DrawingListener</h1>
+ * This file contains the interface DrawingListener, for objects that want to know when the shapes of a Drawing
+ * change.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-23
+ */
+interface DrawingListener extends EventListener {
+    /**
+     * Called after shapes of the drawing have been added, changed or cleared. Changes made in a batch are reported
+     * in one event when the batch ends.
+     *
+     * @param e the event describing the changes.
+     */
+    void drawingChanged(DrawingEvent e);
+}
@@ -3,13 +3,41 @@ package se.miun.rojn1700.dt062g.jpaint;
 import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /** TODO:
  * <h1>DrawingPanel</h1>
  * This file contains the class DrawingPanel, and extension of JPanel that allows the user to draw shapes on it. The
  * shapes need to be implemented as Drawables.
  * <p>
+ * The shapes of the drawing are rendered to an off-screen image by a TileRenderer, which only redraws the tiles of the
+ * image affected by changes to the drawing. A shape being drawn by the user is set as an overlay, and is painted
+ * over the image without touching it. The drawing is shown through a Viewport, which can be zoomed and panned.
+ * Repaints are asked for through a RenderScheduler, which joins them into at most one repaint per frame. The panel
+ * listens to changes of its drawing, and only repaints the region of the panel the changed shapes cover.
+ * <p>
+ * The drawing is rendered with a chosen RenderQuality profile. While the user drags or pans, the fast profile is used
+ * instead, and once no interaction has happened for the idle delay the drawing is rendered with the chosen profile
+ * again.
+ * <p>
+ * Rendering a large drawing from scratch, eg. after it has been loaded, can take seconds. When most of the panel has
+ * to be redrawn for a drawing of at least PROGRESSIVE_SIZE shapes, it is instead rendered by a ProgressiveRenderer in
+ * the background, showing the shapes rendered so far, while the panel stays responsive. Until the first part is
+ * rendered, the last shown image is moved and scaled to the current viewport. The background render is cancelled and
+ * started over when shapes of the drawing change, or the size of the panel or the viewport changes. Shapes appended to
+ * the drawing, eg. while it loads or is drawn on, do not cancel it, and are drawn once it is done.
+ * <p>
+ * A drawing too large to load can be streamed from a chunked file instead, in which case a ChunkStreamer reads the
+ * part of the drawing around the viewport as the viewport moves, and the panel shows the shapes read.
+ * <p>
  * Giving proper comments in your program makes it more
  * user friendly and it is assumed as a high quality code.
  *
@@ -18,13 +46,123 @@ import java.awt.event.MouseEvent;
  * @since 2018-01-02
  */
 public class DrawingPanel extends JPanel {
+    /**
+     * The profile a new panel renders with.
+     */
+    static final RenderQuality DEFAULT_QUALITY = RenderQuality.BALANCED;
+    /**
+     * The default time in milliseconds without interaction before the chosen profile is used again.
+     */
+    static final int DEFAULT_IDLE_DELAY = 300;
+    /**
+     * Drawings with at least this many shapes are rendered in the background when most of the panel must be redrawn.
+     */
+    static final int PROGRESSIVE_SIZE = 20000;
+
     private Drawing drawing;
+    /**
+     * Renders the shapes of the drawing to the off-screen image.
+     */
+    private TileRenderer renderer = new TileRenderer();
+    /**
+     * The part of the drawing shown in the panel.
+     */
+    private Viewport viewport = new Viewport();
+    /**
+     * The shape being drawn, painted over the drawing. Null if there is none.
+     */
+    private Shape overlay;
+    /**
+     * The region of the panel covered by the overlay when it was last painted, empty if there was none.
+     */
+    private java.awt.Rectangle overlayBounds = new java.awt.Rectangle();
+    /**
+     * The region of the panel covered by the last segment added to the overlay, reused for every added point.
+     */
+    private java.awt.Rectangle overlaySegment = new java.awt.Rectangle();
+    private RenderScheduler scheduler = new RenderScheduler(this);
+    /**
+     * Repaints the regions of the panel covered by changed shapes.
+     */
+    private DrawingListener drawingListener = new DrawingListener() {
+        @Override
+        public void drawingChanged(DrawingEvent e) {
+            // Appending leaves the background render valid, and starting over would take a snapshot every frame
+            if (e.hasType(~DrawingEvent.ADDED)) {
+                cancelProgressive();
+            }
+            renderer.drawingChanged(e);
+            double[] bounds = e.getBounds();
+            if (bounds != null) {
+                toPanel(bounds[0], bounds[1], bounds[2], bounds[3], changedBounds);
+                scheduler.requestRepaint(changedBounds.x, changedBounds.y, changedBounds.width, changedBounds.height);
+            }
+        }
+    };
+    private java.awt.Rectangle changedBounds = new java.awt.Rectangle();
+    /**
+     * Moves the shapes appended to the drawing by other threads into it on the event dispatch thread.
+     */
+    private Executor appendExecutor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            SwingUtilities.invokeLater(task);
+        }
+    };
+    /**
+     * The background render of the drawing, null if the drawing is rendered by the panel itself.
+     */
+    private ProgressiveRenderer progressive;
+    /**
+     * Shows new frames of the background render, and takes on its renderer once it is done.
+     */
+    private PropertyChangeListener progressListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if (e.getSource() != progressive) {
+                return;
+            }
+            if ("frame".equals(e.getPropertyName())) {
+                scheduler.requestRepaint();
+            } else if (progressive.isDone()) {
+                progressDone();
+            }
+        }
+    };
+    /**
+     * The image last painted on the panel, and the viewport it was rendered through.
+     */
+    private BufferedImage shownImage;
+    private Viewport shownViewport = new Viewport();
+    /**
+     * The drawing and its modification count when the shown image was rendered, null if the image is only a part.
+     */
+    private Drawing shownDrawing;
+    private int shownModCount;
+    /**
+     * The profile chosen by the user.
+     */
+    private RenderQuality quality = DEFAULT_QUALITY;
+    /**
+     * Goes back to the chosen profile when the user has stopped interacting.
+     */
+    private Timer idleTimer = new Timer(DEFAULT_IDLE_DELAY, new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            renderer.setQuality(quality);
+            scheduler.requestRepaint();
+        }
+    });
+    /**
+     * Reads the part of a streamed drawing around the viewport, null if the drawing is not streamed.
+     */
+    private ChunkStreamer streamer;
 
     /**
      * Instantiates a new DrawingPanel with an empty drawing.
      */
     DrawingPanel() {
-        drawing = new Drawing();
+        setDrawing(new Drawing());
     }
 
     /**
@@ -36,13 +174,73 @@ public class DrawingPanel extends JPanel {
     }
 
     /**
-     * Setter for drawing.
+     * Setter for drawing. The changes made to the drawing from now on are recorded, so they can be undone. Shapes
+     * appended to the drawing by other threads are moved into it on the event dispatch thread. The journal of the
+     * drawing shown before, if any, is closed, as is the file of a streamed drawing.
      *
      * @param drawing the Drawing to set.
      */
     public void setDrawing(Drawing drawing) {
+        if (drawing.getHistory() == null) {
+            new DrawingHistory(drawing, DrawingHistory.DEFAULT_BUDGET);
+        }
+        if (this.drawing != null) {
+            this.drawing.removeDrawingListener(drawingListener);
+            this.drawing.setAppendExecutor(null);
+            if (this.drawing != drawing && this.drawing.getJournal() != null) {
+                this.drawing.getJournal().close();
+            }
+        }
+        if (streamer != null) {
+            streamer.close();
+            streamer = null;
+        }
+        cancelProgressive();
+        // Nothing of the previous drawing is to be shown while the new one is rendered
+        shownImage = null;
         this.drawing = drawing;
-        paintComponent(getGraphics());
+        drawing.addDrawingListener(drawingListener);
+        drawing.setAppendExecutor(appendExecutor);
+        scheduler.requestRepaint();
+    }
+
+    /**
+     * Shows a drawing streamed from a chunked file, reading the part of it around the viewport as the viewport moves.
+     * The file is closed when another drawing is set.
+     *
+     * @param file the file holding the drawing.
+     */
+    void stream(ChunkedDrawingFile file) {
+        ChunkStreamer streamer = new ChunkStreamer(file);
+        setDrawing(streamer.getDrawing());
+        this.streamer = streamer;
+    }
+
+    /**
+     * Gets the streamer reading the drawing shown from its file.
+     *
+     * @return the streamer, or null if the drawing is not streamed.
+     */
+    ChunkStreamer getStreamer() {
+        return streamer;
+    }
+
+    /**
+     * Checks if the drawing shown is streamed from a file, and thereby can not be drawn on.
+     *
+     * @return true if the drawing is streamed.
+     */
+    boolean isStreaming() {
+        return streamer != null;
+    }
+
+    /**
+     * Gets the history of the changes made to the drawing.
+     *
+     * @return the history
+     */
+    DrawingHistory getHistory() {
+        return drawing.getHistory();
     }
 
     /**
@@ -52,11 +250,203 @@ public class DrawingPanel extends JPanel {
      * @param drawing the Drawing to add to the current Drawing.
      */
     public void addDrawing(Drawing drawing) {
-        String drawingToString = drawing.toString();
+        // Added as one batch, so the panel is told about the region of all added shapes at once
+        this.drawing.beginChanges();
         for(int i = 0; i < drawing.getSize(); i++) {
             this.drawing.addShape(drawing.getShape(i));
         }
-        paintComponent(getGraphics());
+        this.drawing.endChanges();
+    }
+
+    /**
+     * Sets the shape that is painted over the drawing, ie. the shape the user is drawing. The shape is not part of
+     * the drawing, so changing it does not redraw the drawing.
+     *
+     * @param overlay the shape to paint over the drawing, or null to remove it.
+     */
+    public void setOverlay(Shape overlay) {
+        this.overlay = overlay;
+        overlayChanged();
+    }
+
+    /**
+     * Repaints the overlay after it has been changed in place. Only the regions covered by the overlay before and
+     * after the change are repainted.
+     */
+    void overlayChanged() {
+        int oldX = overlayBounds.x;
+        int oldY = overlayBounds.y;
+        int oldWidth = overlayBounds.width;
+        int oldHeight = overlayBounds.height;
+        overlayBounds.setBounds(0, 0, 0, 0);
+        if (overlay == null || !overlay.hasEndPoint()) {
+            scheduler.requestRepaint(oldX, oldY, oldWidth, oldHeight);
+            return;
+        }
+        double[] bounds = overlay.getBounds();
+        toPanel(bounds[0], bounds[1], bounds[2], bounds[3], overlayBounds);
+        int x = overlayBounds.x;
+        int y = overlayBounds.y;
+        if (oldWidth > 0 && oldHeight > 0) {
+            x = Math.min(x, oldX);
+            y = Math.min(y, oldY);
+            scheduler.requestRepaint(x, y, Math.max(overlayBounds.x + overlayBounds.width, oldX + oldWidth) - x,
+                    Math.max(overlayBounds.y + overlayBounds.height, oldY + oldHeight) - y);
+        } else {
+            scheduler.requestRepaint(overlayBounds.x, overlayBounds.y, overlayBounds.width, overlayBounds.height);
+        }
+    }
+
+    /**
+     * Repaints the overlay after a point has been added to the end of it, when it is a stroke. Only the region of the
+     * last segment is repainted, so drawing a long stroke does not repaint all of it for every point.
+     */
+    void overlayExtended() {
+        if (!(overlay instanceof Stroke) || overlayBounds.isEmpty()) {
+            overlayChanged();
+            return;
+        }
+        Stroke stroke = (Stroke) overlay;
+        int last = stroke.getPointCount() - 1;
+        double margin = Stroke.WIDTH / 2;
+        java.awt.Rectangle segment = overlaySegment;
+        toPanel(Math.min(stroke.getPointX(last - 1), stroke.getPointX(last)) - margin,
+                Math.min(stroke.getPointY(last - 1), stroke.getPointY(last)) - margin,
+                Math.max(stroke.getPointX(last - 1), stroke.getPointX(last)) + margin,
+                Math.max(stroke.getPointY(last - 1), stroke.getPointY(last)) + margin, segment);
+        overlayBounds.add(segment);
+        scheduler.requestRepaint(segment.x, segment.y, segment.width, segment.height);
+    }
+
+    /**
+     * Sets the profile the drawing is rendered with when the user is not interacting with it.
+     *
+     * @param quality the profile to render with.
+     */
+    void setQuality(RenderQuality quality) {
+        this.quality = quality;
+        if (!idleTimer.isRunning()) {
+            renderer.setQuality(quality);
+            scheduler.requestRepaint();
+        }
+    }
+
+    /**
+     * Gets the profile the drawing is rendered with when the user is not interacting with it.
+     *
+     * @return the profile
+     */
+    RenderQuality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Sets the time without interaction before the chosen profile is used again.
+     *
+     * @param delay the time in milliseconds.
+     */
+    void setIdleDelay(int delay) {
+        idleTimer.setInitialDelay(delay);
+    }
+
+    /**
+     * Gets the time without interaction before the chosen profile is used again.
+     *
+     * @return the time in milliseconds
+     */
+    int getIdleDelay() {
+        return idleTimer.getInitialDelay();
+    }
+
+    /**
+     * Tells the panel that the user is dragging or panning. Until the user has stopped for the idle delay, the panel
+     * renders with the fast profile.
+     */
+    void interact() {
+        renderer.setQuality(RenderQuality.FAST);
+        idleTimer.restart();
+    }
+
+    /**
+     * Stops the background render, if there is one. The next paint starts a new one if still needed.
+     */
+    private void cancelProgressive() {
+        if (progressive != null) {
+            progressive.cancel(false);
+            progressive = null;
+        }
+    }
+
+    /**
+     * Takes on the renderer of a finished background render, holding the whole drawing.
+     */
+    private void progressDone() {
+        try {
+            TileRenderer finished = progressive.adopt();
+            if (finished != null) {
+                // The profile may have been changed while rendering
+                finished.setQuality(renderer.getQuality());
+                renderer = finished;
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            System.err.println(ex.getMessage());
+        }
+        progressive = null;
+        scheduler.requestRepaint();
+    }
+
+    /**
+     * Checks if the shown image is the whole drawing as it is now through the current viewport, eg. when it is only
+     * being rendered again at a higher quality. Parts of a background render are then not shown.
+     */
+    private boolean isShowingAll() {
+        return shownDrawing == drawing && shownModCount == drawing.getModCount() && shownViewport.isSame(viewport);
+    }
+
+    /**
+     * Checks if a background render is running.
+     *
+     * @return true if the drawing is being rendered in the background.
+     */
+    boolean isRenderingProgressively() {
+        return progressive != null;
+    }
+
+    /**
+     * Converts a region of the drawing to the region of the panel showing it, with a margin for the rounding and
+     * antialiasing of the shapes drawn there.
+     */
+    private void toPanel(double minX, double minY, double maxX, double maxY, java.awt.Rectangle region) {
+        double margin = Drawing.CLIP_MARGIN * viewport.getScale() + 1;
+        int x = (int) Math.floor(viewport.toPanelX(minX) - margin);
+        int y = (int) Math.floor(viewport.toPanelY(minY) - margin);
+        region.setBounds(x, y, (int) Math.ceil(viewport.toPanelX(maxX) + margin) - x,
+                (int) Math.ceil(viewport.toPanelY(maxY) + margin) - y);
+    }
+
+    /**
+     * Repaints the whole panel at the next frame, eg. after the viewport has been changed.
+     */
+    void requestRepaint() {
+        scheduler.requestRepaint();
+    }
+
+    /**
+     * Gets the scheduler of the repaints of the panel.
+     *
+     * @return the scheduler
+     */
+    RenderScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets the viewport of the panel. After changing the viewport, the panel must be repainted.
+     *
+     * @return the viewport
+     */
+    Viewport getViewport() {
+        return viewport;
     }
 
     /**
@@ -73,8 +463,55 @@ public class DrawingPanel extends JPanel {
      */
     @Override
     protected void paintComponent(Graphics g) {
-        g.setColor(Color.white);
-        g.fillRect(0,0,getWidth(),getHeight());
-        drawing.draw(g);
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        scheduler.frameRendered();
+        int width = getWidth();
+        int height = getHeight();
+        if (streamer != null) {
+            streamer.update(viewport, width, height);
+        }
+        if (progressive != null && !progressive.isFor(drawing, width, height, viewport)) {
+            cancelProgressive();
+        }
+        if (progressive == null && drawing.getSize() >= PROGRESSIVE_SIZE
+                && renderer.update(drawing, width, height, viewport) * 2 > renderer.getTileCount()) {
+            progressive = new ProgressiveRenderer(drawing, width, height, viewport, renderer.getQuality());
+            progressive.addPropertyChangeListener(progressListener);
+            progressive.execute();
+        }
+        if (progressive == null) {
+            shownImage = renderer.render(drawing, width, height, viewport);
+            shownViewport.set(viewport);
+            shownDrawing = drawing;
+            shownModCount = drawing.getModCount();
+        } else if (progressive.getFrame() != null && !isShowingAll()) {
+            shownImage = progressive.getFrame();
+            shownViewport.set(viewport);
+            shownDrawing = null;
+        }
+        if (shownImage == null) {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, width, height);
+        } else if (shownViewport.isSame(viewport)) {
+            g.drawImage(shownImage, 0, 0, null);
+        } else {
+            // Move and scale the image from the viewport it was rendered through to the current one
+            double scale = viewport.getScale() / shownViewport.getScale();
+            AffineTransform transform = new AffineTransform(scale, 0, 0, scale,
+                    (shownViewport.getX() - viewport.getX()) * viewport.getScale(),
+                    (shownViewport.getY() - viewport.getY()) * viewport.getScale());
+            g.setColor(Color.white);
+            g.fillRect(0, 0, width, height);
+            ((Graphics2D) g).drawImage(shownImage, transform, null);
+        }
+        if (overlay != null) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            renderer.getQuality().apply(g2);
+            g2.transform(viewport.getTransform());
+            overlay.draw(g2);
+            g2.dispose();
+        }
     }
 }
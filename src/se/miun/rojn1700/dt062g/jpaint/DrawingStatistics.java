@@ -0,0 +1,380 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <h1>DrawingStatistics</h1>
+ * This file contains the class DrawingStatistics, which keeps running totals for the shapes of a ShapeStore.
+ * <p>
+ * The totals are updated by the store whenever a shape is added, changed or the store is cleared, so reading them
+ * never has to look at the shapes. Totals are kept for the whole drawing, per shape type and per color. Shapes
+ * without an end point are counted as incomplete instead of contributing to the area and circumference.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-12
+ */
+class DrawingStatistics {
+    /**
+     * Stores with more shapes than this are recomputed on the fork/join pool.
+     */
+    static final int PARALLEL_THRESHOLD = 50000;
+
+    private Totals total = new Totals();
+    private Totals[] types = new Totals[ShapeStore.KINDS];
+    /**
+     * The totals per color, indexed by the index of the color in the palette of the store.
+     */
+    private Totals[] colors = new Totals[0];
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    /**
+     * Set when a shape touching the extents has been removed, the extents are then recomputed on the next read.
+     */
+    private boolean extentsStale;
+    private ShapeStore store;
+
+    /**
+     * Instantiates new, empty statistics for a store.
+     *
+     * @param store the store the statistics describe.
+     */
+    DrawingStatistics(ShapeStore store) {
+        this.store = store;
+        for (int kind = 0; kind < ShapeStore.KINDS; kind++) {
+            types[kind] = new Totals();
+        }
+    }
+
+    /**
+     * Adds the contribution of a stored shape.
+     *
+     * @param shape a view bound to the shape.
+     */
+    void add(Shape shape) {
+        double area = 0;
+        double circumference = 0;
+        Shape.Geometry geometry = shape.getGeometry();
+        boolean complete = geometry != null;
+        if (complete) {
+            area = geometry.getArea();
+            circumference = geometry.getCircumference();
+            includeInExtents(geometry.getBounds());
+        }
+        total.add(complete, area, circumference);
+        types[shape.getKind()].add(complete, area, circumference);
+        colorTotals(shape).add(complete, area, circumference);
+    }
+
+    /**
+     * Removes the contribution of a stored shape, as it was when it was added.
+     *
+     * @param shape a view bound to the shape.
+     */
+    void remove(Shape shape) {
+        double area = 0;
+        double circumference = 0;
+        Shape.Geometry geometry = shape.getGeometry();
+        boolean complete = geometry != null;
+        if (complete) {
+            area = geometry.getArea();
+            circumference = geometry.getCircumference();
+            double[] bounds = geometry.getBounds();
+            if (bounds[0] <= minX || bounds[1] <= minY || bounds[2] >= maxX || bounds[3] >= maxY) {
+                extentsStale = true;
+            }
+        }
+        total.remove(complete, area, circumference);
+        types[shape.getKind()].remove(complete, area, circumference);
+        colors[store.getColorIndex(shape.getIndex())].remove(complete, area, circumference);
+    }
+
+    /**
+     * Adds a segment to the end of a stored stroke that already has an end point, without going through all of its
+     * points again.
+     *
+     * @param shape  a view bound to the stroke.
+     * @param length the length of the added segment.
+     * @param bounds the bounding box of the stroke with the segment added.
+     */
+    void extend(Shape shape, double length, double[] bounds) {
+        total.extend(length);
+        types[shape.getKind()].extend(length);
+        colorTotals(shape).extend(length);
+        includeInExtents(bounds);
+    }
+
+    /**
+     * Resets all totals, as for an empty store.
+     */
+    void clear() {
+        total = new Totals();
+        for (int kind = 0; kind < ShapeStore.KINDS; kind++) {
+            types[kind] = new Totals();
+        }
+        colors = new Totals[0];
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+        extentsStale = false;
+    }
+
+    /**
+     * Recomputes all totals from the shapes of the store. Large stores are split up and computed on the common
+     * fork/join pool.
+     */
+    void recompute() {
+        DrawingStatistics result = ForkJoinPool.commonPool().invoke(new RecomputeTask(store, 0, store.size()));
+        total = result.total;
+        types = result.types;
+        colors = result.colors;
+        minX = result.minX;
+        minY = result.minY;
+        maxX = result.maxX;
+        maxY = result.maxY;
+        extentsStale = false;
+    }
+
+    /**
+     * Gets the totals of all shapes.
+     *
+     * @return the totals
+     */
+    public Totals getTotals() {
+        return total;
+    }
+
+    /**
+     * Gets the totals of all rectangles.
+     *
+     * @return the totals
+     */
+    public Totals getRectangleTotals() {
+        return types[ShapeStore.RECTANGLE];
+    }
+
+    /**
+     * Gets the totals of all circles.
+     *
+     * @return the totals
+     */
+    public Totals getCircleTotals() {
+        return types[ShapeStore.CIRCLE];
+    }
+
+    /**
+     * Gets the totals of all strokes.
+     *
+     * @return the totals
+     */
+    public Totals getStrokeTotals() {
+        return types[ShapeStore.STROKE];
+    }
+
+    /**
+     * Gets the totals per color, for the colors used by at least one shape. Shapes without a color are grouped under
+     * null.
+     *
+     * @return a map from colors, as they were given to the drawing, to totals.
+     */
+    public Map<String, Totals> getColorTotals() {
+        ColorPalette palette = store.getPalette();
+        Map<String, Totals> result = new LinkedHashMap<>();
+        for (int i = 0; i < colors.length; i++) {
+            if (colors[i] != null && colors[i].count > 0) {
+                result.put(palette.getName(i), colors[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the smallest rectangle containing all complete shapes.
+     *
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if there are no complete shapes.
+     */
+    public double[] getBounds() {
+        if (extentsStale) {
+            recompute();
+        }
+        if (minX > maxX) {
+            return null;
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    private Totals colorTotals(Shape shape) {
+        int index = store.getColorIndex(shape.getIndex());
+        if (index >= colors.length) {
+            colors = Arrays.copyOf(colors, Math.max(index + 1, store.getPalette().size()));
+        }
+        if (colors[index] == null) {
+            colors[index] = new Totals();
+        }
+        return colors[index];
+    }
+
+    /**
+     * Creates a copy of the statistics for a copy of the store.
+     *
+     * @param store the copy of the store.
+     * @return the copy
+     */
+    DrawingStatistics copy(ShapeStore store) {
+        DrawingStatistics copy = new DrawingStatistics(store);
+        copy.merge(this);
+        copy.extentsStale = extentsStale;
+        return copy;
+    }
+
+    private void includeInExtents(double[] bounds) {
+        minX = Math.min(minX, bounds[0]);
+        minY = Math.min(minY, bounds[1]);
+        maxX = Math.max(maxX, bounds[2]);
+        maxY = Math.max(maxY, bounds[3]);
+    }
+
+    private void merge(DrawingStatistics other) {
+        total.merge(other.total);
+        for (int kind = 0; kind < ShapeStore.KINDS; kind++) {
+            types[kind].merge(other.types[kind]);
+        }
+        if (other.colors.length > colors.length) {
+            colors = Arrays.copyOf(colors, other.colors.length);
+        }
+        for (int i = 0; i < other.colors.length; i++) {
+            if (other.colors[i] == null) {
+                continue;
+            }
+            if (colors[i] == null) {
+                colors[i] = new Totals();
+            }
+            colors[i].merge(other.colors[i]);
+        }
+        minX = Math.min(minX, other.minX);
+        minY = Math.min(minY, other.minY);
+        maxX = Math.max(maxX, other.maxX);
+        maxY = Math.max(maxY, other.maxY);
+    }
+
+    /**
+     * Computes the statistics of a range of shapes, splitting the range in two while it is too large.
+     */
+    private static class RecomputeTask extends RecursiveTask<DrawingStatistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final ShapeStore store;
+        private final int from;
+        private final int to;
+
+        RecomputeTask(ShapeStore store, int from, int to) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DrawingStatistics compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                DrawingStatistics statistics = new DrawingStatistics(store);
+                Shape[] flyweights = store.createFlyweights();
+                for (int i = from; i < to; i++) {
+                    statistics.add(store.bind(flyweights, i));
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            RecomputeTask left = new RecomputeTask(store, from, middle);
+            left.fork();
+            DrawingStatistics right = new RecomputeTask(store, middle, to).compute();
+            DrawingStatistics result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+
+    /**
+     * Running totals for a group of shapes.
+     */
+    static class Totals {
+        private int count;
+        private int incomplete;
+        private double area;
+        private double circumference;
+
+        void add(boolean complete, double area, double circumference) {
+            count++;
+            if (!complete) {
+                incomplete++;
+            }
+            this.area += area;
+            this.circumference += circumference;
+        }
+
+        void remove(boolean complete, double area, double circumference) {
+            count--;
+            if (!complete) {
+                incomplete--;
+            }
+            this.area -= area;
+            this.circumference -= circumference;
+        }
+
+        void extend(double circumference) {
+            this.circumference += circumference;
+        }
+
+        void merge(Totals other) {
+            count += other.count;
+            incomplete += other.incomplete;
+            area += other.area;
+            circumference += other.circumference;
+        }
+
+        /**
+         * Gets the amount of shapes.
+         *
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the amount of shapes without an end point.
+         *
+         * @return the amount of incomplete shapes
+         */
+        public int getIncomplete() {
+            return incomplete;
+        }
+
+        /**
+         * Gets the total area of the complete shapes.
+         *
+         * @return the area
+         */
+        public double getArea() {
+            return area;
+        }
+
+        /**
+         * Gets the total circumference of the complete shapes.
+         *
+         * @return the circumference
+         */
+        public double getCircumference() {
+            return circumference;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>DrawingStressTest</h1>
+ * This class tests appending shapes to a Drawing from many threads at once. Producer threads append shapes as fast as
+ * they can, while an owner thread, standing in for the event dispatch thread, moves them into the drawing through its
+ * append executor and repeatedly paints and checks the drawing. A reader thread meanwhile has the owner thread take
+ * snapshots of the drawing and checks them, as a background render does. The store is only safe to read on the owner
+ * thread, so the reader never touches the drawing itself.
+ * <p>
+ * Every shape tells which producer made it and in which order through its color, and its points follow from that, so
+ * a shape seen half written is caught. At the end every shape must be in the drawing exactly once, and the shapes of
+ * each producer must be in the order it appended them.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-29
+ */
+public class DrawingStressTest {
+    private static final int PRODUCERS = 8;
+    private static final int SHAPES_PER_PRODUCER = 10000;
+    private static final int SIZE = 10000;
+
+    private static final AtomicInteger failures = new AtomicInteger();
+    private static volatile boolean producing = true;
+
+    public static void main(String[] args) throws Exception {
+        final Drawing drawing = new Drawing();
+        final ExecutorService owner = Executors.newSingleThreadExecutor();
+        drawing.setAppendExecutor(owner);
+
+        System.out.println(PRODUCERS + " producers appending " + SHAPES_PER_PRODUCER + " shapes each...");
+        long start = System.nanoTime();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < SHAPES_PER_PRODUCER; n++) {
+                        drawing.append(createShape(producer, n));
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        final Callable<Drawing> snapshot = new Callable<Drawing>() {
+            @Override
+            public Drawing call() {
+                return drawing.snapshot();
+            }
+        };
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int reads = 0;
+                try {
+                    while (producing) {
+                        Drawing copy = owner.submit(snapshot).get();
+                        int size = copy.getSize();
+                        for (int i = Math.max(0, size - 1000); i < size; i++) {
+                            checkShape("reader", copy.getShape(i));
+                        }
+                        reads++;
+                        Thread.yield();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    failures.incrementAndGet();
+                    System.err.println("FAILED reader: " + e);
+                }
+                System.out.println("Reader checked " + reads + " snapshots of the drawing");
+            }
+        });
+        reader.start();
+
+        // Paint the drawing on the owner thread while the shapes come in, as the panel would
+        final BufferedImage image = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+        final AtomicInteger paints = new AtomicInteger();
+        Runnable paint = new Runnable() {
+            @Override
+            public void run() {
+                Graphics2D g = image.createGraphics();
+                g.scale(500.0 / SIZE, 500.0 / SIZE);
+                drawing.draw(g);
+                g.dispose();
+                checkDrawing(drawing, false);
+                paints.incrementAndGet();
+            }
+        };
+        int total = PRODUCERS * SHAPES_PER_PRODUCER;
+        while (drawing.getSize() < total) {
+            owner.submit(paint).get();
+            Thread.sleep(20);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        producing = false;
+        reader.join();
+        owner.submit(new Runnable() {
+            @Override
+            public void run() {
+                checkDrawing(drawing, true);
+            }
+        }).get();
+        owner.shutdown();
+        owner.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println(drawing.getSize() + " shapes appended and " + paints.get() + " paints made in "
+                + Math.round(elapsed) + " ms");
+
+        if (failures.get() > 0) {
+            System.err.println("\n" + failures.get() + " check(s) failed!");
+            System.exit(-1);
+        }
+        System.out.println("\nAll checks passed");
+    }
+
+    /**
+     * Creates the shape a producer appends as its n:th shape. The color holds the producer and n, and every point
+     * follows from them.
+     */
+    private static Shape createShape(int producer, int n) {
+        double x = (n * 7919L + producer * 104729L) % SIZE;
+        double y = (n * 6151L + producer * 3571L) % SIZE;
+        String color = String.format("#%02x%04x", producer, n);
+        Shape shape;
+        if (n % 3 == 0) {
+            shape = new Rectangle(x, y, color);
+        } else if (n % 3 == 1) {
+            shape = new Circle(x, y, color);
+        } else {
+            Stroke stroke = new Stroke(x, y, color);
+            for (int k = 1; k < 2 + n % 5; k++) {
+                stroke.addPoint(x + k, y + 2 * k);
+            }
+            shape = stroke;
+        }
+        if (shape.getKind() != ShapeStore.STROKE) {
+            shape.addPoint(x + 1 + n % 13, y + 1 + producer);
+        }
+        return shape;
+    }
+
+    /**
+     * Checks that a shape is exactly as its producer created it.
+     *
+     * @return the producer and n of the shape, as producer * 65536 + n, or -1 if it is not.
+     */
+    private static int checkShape(String name, Shape shape) {
+        int id = Integer.parseInt(shape.getColor().substring(1), 16);
+        Shape expected = createShape(id >> 16, id & 0xffff);
+        boolean same = shape.getKind() == expected.getKind() && shape.getStartX() == expected.getStartX()
+                && shape.getStartY() == expected.getStartY() && shape.getEndX() == expected.getEndX()
+                && shape.getEndY() == expected.getEndY();
+        if (same && shape.getKind() == ShapeStore.STROKE) {
+            Stroke stroke = (Stroke) shape;
+            Stroke expectedStroke = (Stroke) expected;
+            same = stroke.getPointCount() == expectedStroke.getPointCount();
+            for (int k = 0; same && k < stroke.getPointCount(); k++) {
+                same = stroke.getPointX(k) == expectedStroke.getPointX(k)
+                        && stroke.getPointY(k) == expectedStroke.getPointY(k);
+            }
+        }
+        if (!same) {
+            failures.incrementAndGet();
+            System.err.println("FAILED " + name + ": torn shape " + shape);
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Checks every shape of the drawing, and that the shapes of each producer are in order without gaps.
+     *
+     * @param complete true if all shapes must be in the drawing.
+     */
+    private static void checkDrawing(Drawing drawing, boolean complete) {
+        int[] next = new int[PRODUCERS];
+        for (int i = 0; i < drawing.getSize(); i++) {
+            int id = checkShape("drawing", drawing.getShape(i));
+            if (id < 0) {
+                continue;
+            }
+            int producer = id >> 16;
+            if ((id & 0xffff) != next[producer]) {
+                failures.incrementAndGet();
+                System.err.println("FAILED drawing: shape " + (id & 0xffff) + " of producer " + producer
+                        + " where " + next[producer] + " was expected");
+            }
+            next[producer] = (id & 0xffff) + 1;
+        }
+        if (!complete) {
+            return;
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            if (next[p] != SHAPES_PER_PRODUCER) {
+                failures.incrementAndGet();
+                System.err.println("FAILED drawing: " + (SHAPES_PER_PRODUCER - next[p]) + " shapes of producer " + p
+                        + " lost");
+            }
+        }
+        if (drawing.getStatistics().getTotals().getCount() != PRODUCERS * SHAPES_PER_PRODUCER) {
+            failures.incrementAndGet();
+            System.err.println("FAILED statistics: " + drawing.getStatistics().getTotals().getCount() + " shapes");
+        }
+        System.out.println("OK drawing: " + drawing.getSize() + " shapes");
+    }
+}
@@ -1,20 +1,39 @@
 package se.miun.rojn1700.dt062g.jpaint;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * <h1>FileHandler</h1>
- * This file contains the class FileHandler, which handles IO of XML-files using JAXB
+ * This file contains the class FileHandler, which handles IO of drawing files through the registered DrawingCodecs
+ * <p>
+ * The codec of a file is picked by the extension of its name. A file without the extension of any registered codec is
+ * read by the codec that recognizes its first bytes, and otherwise taken as XML and gets the ".xml" extension added.
+ * XML, the compact binary format and the chunked format are registered from the start, and other formats are added by
+ * registering their codecs. The codecs are shared by all threads, so reading or writing many files pays for
+ * setting up a codec only once.
+ * <p>
+ * XML files can also be streamed: their shapes are handed to a ShapeSink one at a time as they are read, which lets a
+ * drawing be shown while it loads and files larger than the heap be converted, as the XML is written as it is read.
  * <p>
  * Giving proper comments in your program makes it more
  * user friendly and it is assumed as a high quality code.
  *
  *
  * @author  Robin Jönsson(rojn1700)
- * @version 1.0
+ * @version 1.1
  * @since   2018-12-07
  */
 
@@ -22,6 +41,102 @@ import java.io.File;
  * The class FileHandler
  */
 public class FileHandler {
+    /**
+     * The codec of the XML format, used for files without a known extension.
+     */
+    static final XmlDrawingCodec XML = new XmlDrawingCodec();
+    /**
+     * The codec of the compact binary format.
+     */
+    static final BinaryDrawingCodec BINARY = new BinaryDrawingCodec();
+    /**
+     * The codec of the chunked format, whose files can be read a part at a time by a ChunkedDrawingFile.
+     */
+    static final ChunkedDrawingCodec CHUNKED = new ChunkedDrawingCodec();
+    /**
+     * The amount of bytes at the start of a file looked at to tell its format.
+     */
+    private static final int HEADER_LENGTH = 16;
+    private static final List<DrawingCodec> codecs = new CopyOnWriteArrayList<>();
+
+    static {
+        register(XML);
+        register(BINARY);
+        register(CHUNKED);
+    }
+
+    /**
+     * Registers a codec, replacing any codec registered before for the same extension.
+     *
+     * @param codec the codec to register.
+     */
+    static void register(DrawingCodec codec) {
+        for (DrawingCodec registered : codecs) {
+            if (registered.getExtension().equalsIgnoreCase(codec.getExtension())) {
+                codecs.remove(registered);
+            }
+        }
+        codecs.add(codec);
+    }
+
+    /**
+     * Gets the registered codecs.
+     *
+     * @return the codecs, in the order they were registered.
+     */
+    static List<DrawingCodec> getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Gets the codec of a file by the extension of its name.
+     *
+     * @param fileName the name of the file.
+     * @return the codec, or null if no registered codec has the extension of the file.
+     */
+    static DrawingCodec getCodec(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        for (DrawingCodec codec : codecs) {
+            if (lowerCase.endsWith(codec.getExtension().toLowerCase())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the codec of a file by its first bytes.
+     *
+     * @param header the first bytes of the file.
+     * @param length the amount of bytes in the header.
+     * @return the codec, or null if no registered codec recognizes the bytes.
+     */
+    static DrawingCodec getCodec(byte[] header, int length) {
+        for (DrawingCodec codec : codecs) {
+            if (codec.accepts(header, length)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets up all registered codecs on a background thread, so that the first file read or written does not have to
+     * wait for it. Called when the application starts.
+     */
+    static void warmUp() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (DrawingCodec codec : codecs) {
+                    codec.warmUp();
+                }
+            }
+        }, "Codec warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Saves a drawing to an xml-file. Automatically ends file extension if filename does not already have it.
      *
@@ -32,14 +147,7 @@ public class FileHandler {
         if(!fileName.endsWith(".xml")) {
             fileName += ".xml";
         }
-        try {
-            JAXBContext context = JAXBContext.newInstance(Drawing.class);
-            Marshaller marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT,true);
-            marshaller.marshal(drawing,new File(fileName));
-        } catch (javax.xml.bind.JAXBException e){
-            System.out.print(e.getMessage());
-        };
+        save(drawing, fileName, XML);
     }
 
     /**
@@ -53,6 +161,56 @@ public class FileHandler {
 
     }
 
+    /**
+     * Saves a drawing to a file in the format of its extension, or as XML if the extension is not known.
+     *
+     * @param drawing the drawing to be saved.
+     * @param fileName the file name.
+     */
+    static void save(Drawing drawing, String fileName) {
+        DrawingCodec codec = getCodec(fileName);
+        if (codec == null) {
+            saveToXML(drawing, fileName);
+        } else {
+            save(drawing, fileName, codec);
+        }
+    }
+
+    /**
+     * Saves a drawing to a file in the format of its extension, or as XML if the extension is not known. Unlike the
+     * other ways of saving, a failure is thrown instead of reported, so the caller can tell the file was not written.
+     *
+     * @param drawing the drawing to be saved.
+     * @param file the file, whose name is used as it is.
+     * @throws IOException if the file could not be written.
+     */
+    static void save(Drawing drawing, File file) throws IOException {
+        DrawingCodec codec = getCodec(file.getPath());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            save(drawing, out, codec != null ? codec : XML);
+        }
+    }
+
+    private static void save(Drawing drawing, String fileName, DrawingCodec codec) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+            codec.write(drawing, out);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a drawing to a stream in the format of a codec. The stream is not closed.
+     *
+     * @param drawing the drawing to write.
+     * @param out the stream to write to.
+     * @param codec the codec of the format.
+     * @throws IOException if the stream could not be written.
+     */
+    static void save(Drawing drawing, OutputStream out, DrawingCodec codec) throws IOException {
+        codec.write(drawing, out);
+    }
+
     /**
      * Loads a drawing from an xml file.
      *
@@ -63,17 +221,215 @@ public class FileHandler {
         if(!fileName.endsWith(".xml")) {
             fileName += ".xml";
         }
-        try {
-            JAXBContext context = JAXBContext.newInstance(Drawing.class);
-            Unmarshaller unmarshaller = context.createUnmarshaller();
-            Drawing d = (Drawing) unmarshaller.unmarshal(new File(fileName));
-            return d;
-        } catch (javax.xml.bind.JAXBException e) {
-            System.out.print(e.getMessage());
-            return new Drawing();
-        } catch (java.lang.IllegalArgumentException e) {
+        return load(fileName, XML);
+    }
+
+    /**
+     * Loads a drawing from a file in the format of its extension. If the extension is not known, the file is read in
+     * the format its first bytes are recognized as, and otherwise from an xml file.
+     *
+     * @param fileName the file name.
+     * @return the drawing represented in the file, or an empty drawing if it could not be read.
+     */
+    static Drawing load(String fileName) {
+        DrawingCodec codec = getLoadCodec(fileName);
+        return codec == null ? loadFromXML(fileName) : load(fileName, codec);
+    }
+
+    /**
+     * Gets the name of the file save writes a drawing to, which has the ".xml" extension added unless it has the
+     * extension of a registered codec.
+     *
+     * @param fileName the file name given to save.
+     * @return the name of the file written.
+     */
+    static String getSaveFileName(String fileName) {
+        return getCodec(fileName) != null || fileName.endsWith(".xml") ? fileName : fileName + ".xml";
+    }
+
+    /**
+     * Gets the name of the file load reads a drawing from, which has the ".xml" extension added unless it has the
+     * extension of a registered codec or its first bytes are recognized by one.
+     *
+     * @param fileName the file name given to load.
+     * @return the name of the file read.
+     */
+    static String getLoadFileName(String fileName) {
+        return getCodec(fileName) != null || detectCodec(fileName) != null ? fileName : getSaveFileName(fileName);
+    }
+
+    /**
+     * Gets the codec load reads a file with, by the extension of its name or else by its first bytes.
+     *
+     * @param fileName the file name.
+     * @return the codec, or null if the file is read as XML without having the extension of the XML codec.
+     */
+    static DrawingCodec getLoadCodec(String fileName) {
+        DrawingCodec codec = getCodec(fileName);
+        return codec != null ? codec : detectCodec(fileName);
+    }
+
+    /**
+     * Gets the codec recognizing the first bytes of a file.
+     *
+     * @return the codec, or null if the file does not exist or no codec recognizes it.
+     */
+    private static DrawingCodec detectCodec(String fileName) {
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] header = new byte[HEADER_LENGTH];
+            return getCodec(header, readHeader(in, header));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int readHeader(InputStream in, byte[] header) throws IOException {
+        int length = 0;
+        int read;
+        while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Loads a drawing from a file in the format picked as by load(String). Unlike the other ways of loading, a failure
+     * is thrown instead of reported with an empty drawing, so the caller can tell the file was not read.
+     *
+     * @param file the file, whose name is used as it is.
+     * @return the drawing represented in the file.
+     * @throws IOException if the file could not be read or does not hold a drawing.
+     */
+    static Drawing load(File file) throws IOException {
+        DrawingCodec codec = getLoadCodec(file.getPath());
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return (codec != null ? codec : XML).read(in);
+        }
+    }
+
+    private static Drawing load(String fileName, DrawingCodec codec) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+            return codec.read(in);
+        } catch (FileNotFoundException e) {
             System.err.println("File not found.");
             return new Drawing();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return new Drawing();
+        }
+    }
+
+    /**
+     * Reads a drawing from a stream in the format of a codec. The stream is not closed.
+     *
+     * @param in the stream to read from.
+     * @param codec the codec of the format.
+     * @return the drawing.
+     * @throws IOException if the stream could not be read or does not hold a drawing in the format.
+     */
+    static Drawing load(InputStream in, DrawingCodec codec) throws IOException {
+        return codec.read(in);
+    }
+
+    /**
+     * Reads a drawing from a file shape by shape, handing each shape to a sink as soon as it has been read. The file is
+     * picked as by load. An XML file is read one shape at a time, a file in another format is read whole and then
+     * handed to the sink.
+     *
+     * @param fileName the file name.
+     * @param sink     the sink taking in the drawing.
+     * @throws IOException if the file could not be read or the sink stopped the reading.
+     */
+    static void stream(String fileName, ShapeSink sink) throws IOException {
+        fileName = getLoadFileName(fileName);
+        DrawingCodec codec = getLoadCodec(fileName);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+            if (codec == null || codec == XML) {
+                XmlDrawingReader.read(in, sink);
+            } else {
+                stream(codec.read(in), sink);
+            }
+        }
+    }
+
+    /**
+     * Hands a drawing to a sink, as copies of its shapes.
+     *
+     * @param drawing the drawing.
+     * @param sink    the sink taking in the drawing.
+     * @throws IOException if the sink stopped.
+     */
+    static void stream(Drawing drawing, ShapeSink sink) throws IOException {
+        ShapeStore store = drawing.getStore();
+        sink.begin(drawing.getName(), drawing.getAuthor());
+        for (int i = 0; i < store.size(); i++) {
+            sink.shape(store.copy(i));
+        }
+        sink.end();
+    }
+
+    /**
+     * Converts a drawing file to the format of the extension of another file, or to XML if the extension is not known.
+     * Converting from XML to XML streams the drawing through, so it never has to fit in memory, and a file already in
+     * another format is copied as it is. Other formats need the whole drawing before writing its header, and have it
+     * collected into a Drawing first.
+     *
+     * @param from the file name of the drawing.
+     * @param to   the file name to write it to.
+     * @throws IOException if the drawing could not be read or written.
+     */
+    static void convert(String from, String to) throws IOException {
+        DrawingCodec codec = getCodec(to);
+        if (codec == null && !to.endsWith(".xml")) {
+            to += ".xml";
+        }
+        from = getLoadFileName(from);
+        if (codec != null && codec != XML && codec == getLoadCodec(from)) {
+            Files.copy(Paths.get(from), Paths.get(to), StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(to))) {
+            if (codec == null || codec == XML) {
+                stream(from, new XmlDrawingWriter(out));
+                return;
+            }
+            final Drawing drawing = new Drawing();
+            stream(from, new ShapeSink() {
+                @Override
+                public void begin(String name, String author) {
+                    drawing.restoreNames(name, author);
+                }
+
+                @Override
+                public void shape(Shape shape) {
+                    drawing.addShape(shape);
+                }
+
+                @Override
+                public void end() {
+                }
+            });
+            codec.write(drawing, out);
+        }
+    }
+
+    /**
+     * Reads a drawing from a stream in the format its first bytes are recognized as, or as XML if no codec recognizes
+     * them. The stream is not closed, but a stream not supporting mark is wrapped and may be read past the drawing.
+     *
+     * @param in the stream to read from.
+     * @return the drawing.
+     * @throws IOException if the stream could not be read or does not hold a drawing.
+     */
+    static Drawing load(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
         }
+        byte[] header = new byte[HEADER_LENGTH];
+        in.mark(HEADER_LENGTH);
+        int length = readHeader(in, header);
+        in.reset();
+        DrawingCodec codec = getCodec(header, length);
+        return (codec != null ? codec : XML).read(in);
     }
 }
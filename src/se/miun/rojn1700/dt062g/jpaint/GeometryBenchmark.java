@@ -0,0 +1,85 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * <h1>GeometryBenchmark</h1>
+ * This class measures the cost of repainting shapes, which depends on how often the geometry of a shape, eg. the
+ * radius of a circle, is worked out while painting it. Standalone shapes, like the shape being drawn, are repainted
+ * without being changed, and the shapes of a drawing are repainted through the views of its store. Each case is run a
+ * few times first so the JIT has compiled it, and the best of the timed runs is printed.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-27
+ */
+public class GeometryBenchmark {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 1000;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(1);
+        Shape[] shapes = new Shape[count];
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * WIDTH;
+            double y = random.nextDouble() * HEIGHT;
+            String color = String.format("#%06x", random.nextInt(0x1000000));
+            shapes[i] = random.nextBoolean() ? new Rectangle(x, y, color) : new Circle(x, y, color);
+            // Small shapes, so the time goes to the shapes rather than to filling pixels
+            shapes[i].addPoint(x + random.nextDouble() * 4 - 2, y + random.nextDouble() * 4 - 2);
+            drawing.addShape(shapes[i]);
+        }
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        RenderQuality.BALANCED.apply(g);
+
+        System.out.println("Repainting " + count + " shapes, best of " + RUNS + " runs");
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS * 2; run++) {
+            long start = System.nanoTime();
+            for (Shape shape : shapes) {
+                shape.draw(g);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            if (run >= RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.println(String.format("Standalone shapes: %.1f ms", best));
+
+        best = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS * 2; run++) {
+            long start = System.nanoTime();
+            drawing.draw(g);
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            if (run >= RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.println(String.format("Shapes of a drawing: %.1f ms", best));
+
+        best = Double.MAX_VALUE;
+        double sum = 0;
+        for (int run = 0; run < RUNS * 2; run++) {
+            long start = System.nanoTime();
+            for (Shape shape : shapes) {
+                try {
+                    sum += shape.getArea() + shape.getCircumference();
+                } catch (NoEndPointException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            if (run >= RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.println(String.format("Area and circumference of standalone shapes: %.1f ms (sum %.0f)", best, sum));
+        g.dispose();
+    }
+}
@@ -6,9 +6,17 @@ import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 
 /**
@@ -24,6 +32,14 @@ import java.nio.file.Paths;
  * @since 2019-01-02
  */
 public class JPaintFrame extends JFrame {
+    /**
+     * The height of the previews in the list of drawings on the server.
+     */
+    private static final int PREVIEW_SIZE = 96;
+    /**
+     * The factor the drawing is zoomed with per notch of the mouse wheel.
+     */
+    private static final double ZOOM_STEP = 1.1;
 
     private Client c;
     private JFrame frame;
@@ -32,7 +48,37 @@ public class JPaintFrame extends JFrame {
     private JLabel mousePosLabel;
     private JLabel colorLabel;
     private JComboBox shapeList;
-    private java.awt.Point drawEventStart;
+    /**
+     * The point in the drawing where the user started drawing a shape, null when not drawing.
+     */
+    private Point2D drawEventStart;
+    /**
+     * True while the user is moving the drawing, and the point in the panel it was last moved to.
+     */
+    private boolean panning;
+    private int panX;
+    private int panY;
+    /**
+     * The point of the drawing under the mouse, and the point last shown in the statusbar.
+     */
+    private int mouseX;
+    private int mouseY;
+    private int shownMouseX = Integer.MIN_VALUE;
+    private int shownMouseY = Integer.MIN_VALUE;
+    /**
+     * The shapes shown while drawing, moved along with the mouse instead of being created for every movement.
+     */
+    private Rectangle previewRectangle = new Rectangle(0, 0, null);
+    private Circle previewCircle = new Circle(0, 0, null);
+    /**
+     * The stroke being drawn, which gets a point for every movement of the mouse, or null.
+     */
+    private Stroke stroke;
+    /**
+     * The worker reading the drawing being loaded, or null. Set until the journal of the loaded file has been opened,
+     * and the drawing can not be changed or saved meanwhile, as the changes would not be journaled.
+     */
+    private SwingWorker<Void, Void> loader;
 
     /**
      * Instantiates a new JPaintFrame.
@@ -68,6 +114,144 @@ public class JPaintFrame extends JFrame {
         frame.setVisible(true);
     }
 
+    /**
+     * Saves the drawing to a file. If the changes to the drawing are already recorded to the journal of the file, and
+     * the journal has not failed, the journal only has to be on disk and is folded into the file in the background,
+     * otherwise the drawing is written in full and its changes are recorded to the journal of the file from then on.
+     * A streamed drawing is only held in part, and is converted from its file.
+     *
+     * @param fileName the file name.
+     */
+    private void save(String fileName) {
+        if (isLoading()) {
+            return;
+        }
+        Drawing drawing = drawingArea.getDrawing();
+        String path = FileHandler.getSaveFileName(fileName);
+        DrawingJournal journal = drawing.getJournal();
+        try {
+            if (drawingArea.isStreaming()) {
+                FileHandler.convert(drawingArea.getStreamer().getFile().getPath(), path);
+            } else if (journal != null && journal.getSnapshot().equals(new File(path)) && !journal.hasFailed()) {
+                journal.save();
+            } else {
+                FileHandler.save(drawing, new File(path));
+                // Only a drawing written in full may have its changes journaled against the file
+                DrawingJournal.start(drawing, path);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a drawing from a file, showing its shapes as they are read. The shapes are appended to the shown drawing
+     * by a background thread, so the drawing can be looked at while a large file loads. The history of the drawing
+     * starts when it has been loaded, so loading can not be undone shape by shape. Loading another drawing stops the
+     * loading of the previous one. Once loaded, the changes left in the journal of the file are replayed and the
+     * changes made from then on are recorded to it. Until then the drawing can only be looked at, as changes made to it
+     * would be neither journaled nor in the order of the file. A chunked file of at least ChunkStreamer.STREAM_SIZE
+     * shapes is not loaded but streamed, reading only the part of the drawing around the viewport.
+     *
+     * @param fileName the file name of the drawing.
+     */
+    private void load(final String fileName) {
+        stopLoading();
+        String path = FileHandler.getLoadFileName(fileName);
+        if (FileHandler.getLoadCodec(path) == FileHandler.CHUNKED) {
+            try {
+                ChunkedDrawingFile file = ChunkedDrawingFile.open(path);
+                if (file.getSize() >= ChunkStreamer.STREAM_SIZE) {
+                    drawingArea.stream(file);
+                    updateWindowTitle();
+                    return;
+                }
+                file.close();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+        final Drawing drawing = new Drawing();
+        drawingArea.setDrawing(drawing);
+        updateWindowTitle();
+        loader = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                final SwingWorker<Void, Void> worker = this;
+                FileHandler.stream(fileName, new ShapeSink() {
+                    @Override
+                    public void begin(final String name, final String author) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                drawing.restoreNames(name, author);
+                                updateWindowTitle();
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void shape(Shape shape) throws IOException {
+                        if (worker.isCancelled()) {
+                            throw new IOException("Loading of " + fileName + " stopped");
+                        }
+                        drawing.append(shape);
+                    }
+
+                    @Override
+                    public void end() {
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (loader != this) {
+                    return;
+                }
+                drawing.drainAppended(Integer.MAX_VALUE);
+                try {
+                    get();
+                    // Changes made since the file was last written in full are replayed from its journal
+                    DrawingJournal.open(drawing, FileHandler.getLoadFileName(fileName));
+                    updateWindowTitle();
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    System.err.println(cause instanceof FileNotFoundException ? "File not found." : cause.getMessage());
+                } catch (IOException ex) {
+                    System.err.println(ex.getMessage());
+                }
+                drawing.getHistory().clear();
+                loader = null;
+            }
+        };
+        loader.execute();
+    }
+
+    /**
+     * Stops loading a drawing, if one is being loaded.
+     */
+    private void stopLoading() {
+        if (loader != null) {
+            loader.cancel(false);
+            loader = null;
+        }
+    }
+
+    /**
+     * Checks if a drawing is being loaded, telling the user that it can not be changed yet if so.
+     *
+     * @return true if a drawing is being loaded.
+     */
+    private boolean isLoading() {
+        if (loader != null) {
+            System.err.println("The drawing can not be changed until it has been loaded.");
+        }
+        return loader != null;
+    }
+
     /**
      * Update window title.
      * The window title will be updates to show the name of the drawing and the author, if names have been set.
@@ -120,6 +304,7 @@ public class JPaintFrame extends JFrame {
         JMenuItem menuItem = new JMenuItem("New...");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                stopLoading();
                 Drawing drawing = new Drawing();
                 String name = JOptionPane.showInputDialog(frame, "Enter name of the drawing:", "Specify name", JOptionPane.PLAIN_MESSAGE);
                 drawing.setName(name);
@@ -135,7 +320,22 @@ public class JPaintFrame extends JFrame {
             public void actionPerformed(ActionEvent e) {
                 String fileName = getDrawingFileName();
                 fileName = JOptionPane.showInputDialog(frame, "Enter author of the drawing:", "Specify author", JOptionPane.PLAIN_MESSAGE, null, null, fileName).toString();
-                FileHandler.saveToXML(drawingArea.getDrawing(),fileName);
+                save(fileName);
+            }
+        });
+        menu.add(menuItem);
+        menuItem = new JMenuItem("Export visible shapes...");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                Object fileName = JOptionPane.showInputDialog(frame, "Enter the filename to export to:", "Specify filename", JOptionPane.PLAIN_MESSAGE, null, null, getDrawingFileName());
+                if (fileName == null) {
+                    return;
+                }
+                Drawing drawing = drawingArea.getDrawing();
+                Drawing visible = drawing.getVisibleCopy();
+                FileHandler.save(visible, fileName.toString());
+                int removed = drawing.getSize() - visible.getSize();
+                JOptionPane.showMessageDialog(frame, "Exported " + visible.getSize() + " shapes, left out " + removed + " shapes that never show.", "Export", JOptionPane.PLAIN_MESSAGE);
             }
         });
         menu.add(menuItem);
@@ -143,8 +343,9 @@ public class JPaintFrame extends JFrame {
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 String fileName = JOptionPane.showInputDialog(frame, "Load drawing from:", "Specify file name", JOptionPane.PLAIN_MESSAGE);
-                Drawing drawing = FileHandler.loadFromXML(fileName);
-                drawingArea.setDrawing(drawing);
+                if (fileName != null) {
+                    load(fileName);
+                }
             }
         });
         menu.add(menuItem);
@@ -154,10 +355,17 @@ public class JPaintFrame extends JFrame {
                 Drawing drawing = drawingArea.getDrawing();
                 String message = getDrawingFileName();
                 message.replace(".xml","");
-                String numberOfShapes = "Number of shapes: " + Integer.toString(drawing.getSize());
-                String totalArea = "Total area: " + Double.toString(drawing.getTotalArea());
-                String totalCircumference = "Total circumference: " + Double.toString(drawing.getTotalCircumference());
+                DrawingStatistics.Totals totals = drawing.getStatistics().getTotals();
+                String numberOfShapes = "Number of shapes: " + Integer.toString(totals.getCount());
+                String totalArea = "Total area: " + Double.toString(totals.getArea());
+                String totalCircumference = "Total circumference: " + Double.toString(totals.getCircumference());
                 message += "\n" + numberOfShapes + "\n" + totalArea + "\n" + totalCircumference;
+                if (totals.getIncomplete() > 0) {
+                    message += "\nShapes without end point: " + Integer.toString(totals.getIncomplete());
+                }
+                if (drawing.getHiddenCount() > 0) {
+                    message += "\nShapes hidden by later shapes: " + Integer.toString(drawing.getHiddenCount());
+                }
                 JOptionPane.showMessageDialog(frame, message, "Drawing information", JOptionPane.PLAIN_MESSAGE);
             }
         });
@@ -178,10 +386,31 @@ public class JPaintFrame extends JFrame {
         menu.setMnemonic(KeyEvent.VK_E);
         menuBar.add(menu);
         menuItem = new JMenuItem("Undo");
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (!isLoading() && drawingArea.getHistory().undo()) {
+                    updateWindowTitle();
+                }
+            }
+        });
+        menu.add(menuItem);
+        menuItem = new JMenuItem("Redo");
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (!isLoading() && drawingArea.getHistory().redo()) {
+                    updateWindowTitle();
+                }
+            }
+        });
         menu.add(menuItem);
         menuItem = new JMenuItem("Name...");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                if (isLoading()) {
+                    return;
+                }
                 String name = JOptionPane.showInputDialog(frame, "Enter name of the drawing:", "Specify name", JOptionPane.PLAIN_MESSAGE);
                 Drawing drawing = drawingArea.getDrawing();
                 drawing.setName(name);
@@ -193,6 +422,9 @@ public class JPaintFrame extends JFrame {
         menuItem = new JMenuItem("Author...");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                if (isLoading()) {
+                    return;
+                }
                 String name = JOptionPane.showInputDialog(frame, "Enter author of the drawing:", "Specify author", JOptionPane.PLAIN_MESSAGE);
                 Drawing drawing = drawingArea.getDrawing();
                 drawing.setName(name);
@@ -202,24 +434,69 @@ public class JPaintFrame extends JFrame {
         });
         menu.add(menuItem);
 
+        // Add the View menu
+        menu = new JMenu("View");
+
+        // Shortcut Alt + V
+        menu.setMnemonic(KeyEvent.VK_V);
+        menuBar.add(menu);
+        menuItem = new JMenuItem("Zoom to fit");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                double[] bounds = drawingArea.getDrawing().getStatistics().getBounds();
+                if (bounds != null) {
+                    drawingArea.getViewport().fit(bounds, drawingArea.getWidth(), drawingArea.getHeight());
+                    drawingArea.requestRepaint();
+                }
+            }
+        });
+        menu.add(menuItem);
+        menuItem = new JMenuItem("Actual size");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                drawingArea.getViewport().reset();
+                drawingArea.requestRepaint();
+            }
+        });
+        menu.add(menuItem);
+        menu.addSeparator();
+        // The quality the drawing is rendered with when the user is not dragging
+        ButtonGroup qualities = new ButtonGroup();
+        String[] qualityNames = {"Fast", "Balanced", "Quality"};
+        for (final RenderQuality quality : RenderQuality.values()) {
+            JRadioButtonMenuItem qualityItem = new JRadioButtonMenuItem(qualityNames[quality.ordinal()] + " rendering");
+            qualityItem.setSelected(quality == DrawingPanel.DEFAULT_QUALITY);
+            qualityItem.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    drawingArea.setQuality(quality);
+                }
+            });
+            qualities.add(qualityItem);
+            menu.add(qualityItem);
+        }
+
         // Add Server menu
         menu = new JMenu("Server");
         menuBar.add(menu);
         menuItem = new JMenuItem("Load...");
         menuItem.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                SwingWorker<Boolean,Integer> sw = new SwingWorker<Boolean, Integer>() {
+                SwingWorker<String[],Void> sw = new SwingWorker<String[], Void>() {
                     @Override
-                    protected Boolean doInBackground() throws Exception {
-                        Object[] filesOnServer = c.getFilenamesFromServer();
-                        String msg = "The server has " + filesOnServer.length + " drawing(s). Choose one.";
-                        String filename = (String) JOptionPane.showInputDialog(frame, msg, "Select a drawing", JOptionPane.PLAIN_MESSAGE, null, filesOnServer, "File");
-                        if (filename != null) {
-                            String path = c.getFileFromServer(filename);
-                            Drawing drawing = FileHandler.loadFromXML(path);
-                            drawingArea.setDrawing(drawing);
+                    protected String[] doInBackground() throws Exception {
+                        return c.getFilenamesFromServer();
+                    }
+
+                    @Override
+                    protected void done() {
+                        try {
+                            String[] filesOnServer = get();
+                            if (filesOnServer != null) {
+                                chooseDrawingOnServer(filesOnServer);
+                            }
+                        } catch (InterruptedException | ExecutionException ex) {
+                            System.err.println(ex.getMessage());
                         }
-                        return true;
                     }
                 };
                 sw.execute();
@@ -317,7 +594,7 @@ public class JPaintFrame extends JFrame {
         colorBar.add(button);
 
         // The shape picker
-        String[] shapeStrings = {"Rectangle", "Circle"};
+        String[] shapeStrings = {"Rectangle", "Circle", "Stroke"};
         shapeList = new JComboBox(shapeStrings);
         shapeList.setMaximumSize(shapeList.getPreferredSize());
 
@@ -328,6 +605,82 @@ public class JPaintFrame extends JFrame {
         frame.getContentPane().add(toolBar, BorderLayout.PAGE_START);
     }
 
+    /**
+     * Lets the user choose one of the drawings on the server and loads it. A thumbnail of each drawing is fetched
+     * from the server in the background, and shown in the list as soon as it arrives.
+     *
+     * @param filesOnServer the names of the drawings on the server.
+     */
+    private void chooseDrawingOnServer(final String[] filesOnServer) {
+        final Map<String, ImageIcon> previews = new HashMap<>();
+        final JList<String> list = new JList<>(filesOnServer);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFixedCellHeight(PREVIEW_SIZE + 4);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                          boolean cellHasFocus) {
+                JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected,
+                        cellHasFocus);
+                label.setIcon(previews.get(value));
+                return label;
+            }
+        });
+        SwingWorker<Void, Object[]> previewLoader = new SwingWorker<Void, Object[]>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                for (String filename : filesOnServer) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    BufferedImage thumbnail = c.getThumbnailFromServer(filename);
+                    if (thumbnail != null) {
+                        publish(new Object[]{filename, new ImageIcon(thumbnail)});
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<Object[]> chunks) {
+                for (Object[] preview : chunks) {
+                    previews.put((String) preview[0], (ImageIcon) preview[1]);
+                }
+                list.repaint();
+            }
+        };
+        previewLoader.execute();
+
+        String msg = "The server has " + filesOnServer.length + " drawing(s). Choose one.";
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setPreferredSize(new Dimension(400, 300));
+        int option = JOptionPane.showConfirmDialog(frame, new Object[]{msg, scrollPane}, "Select a drawing",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        previewLoader.cancel(false);
+        final String filename = list.getSelectedValue();
+        if (option != JOptionPane.OK_OPTION || filename == null) {
+            return;
+        }
+        SwingWorker<Drawing,Void> sw = new SwingWorker<Drawing, Void>() {
+            @Override
+            protected Drawing doInBackground() throws Exception {
+                String path = c.getFileFromServer(filename);
+                return FileHandler.load(path);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    stopLoading();
+                    drawingArea.setDrawing(get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }
+        };
+        sw.execute();
+    }
+
     /**
      * Create the drawing area and adds it to the frame.
      */
@@ -335,86 +688,124 @@ public class JPaintFrame extends JFrame {
         drawingArea = new DrawingPanel();
         drawingArea.setPreferredSize(new Dimension(500,500));
         drawingArea.setBackground(Color.white);
+        // The coordinates in the statusbar are updated at most once per frame
+        drawingArea.getScheduler().addFrameListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (mouseX != shownMouseX || mouseY != shownMouseY) {
+                    mousePosLabel.setText("Coordinates: " + mouseX + "," + mouseY);
+                    shownMouseX = mouseX;
+                    shownMouseY = mouseY;
+                }
+            }
+        });
         MouseInputAdapter m = new MouseInputAdapter() {
             public void mouseMoved(MouseEvent e) {
-                String text = "Coordinates: ";
-                text += e.getX() + "," + e.getY();
-                mousePosLabel.setText(text);
+                Viewport viewport = drawingArea.getViewport();
+                mouseX = (int) viewport.toDrawingX(e.getX());
+                mouseY = (int) viewport.toDrawingY(e.getY());
+                drawingArea.getScheduler().requestFrame();
             }
 
             public void mousePressed(MouseEvent e) {
-                drawEventStart = e.getPoint();
+                // A streamed drawing, or one still being loaded, can not be drawn on, so it is panned with any button
+                if (SwingUtilities.isLeftMouseButton(e) && !drawingArea.isStreaming() && loader == null) {
+                    drawEventStart = drawingArea.getViewport().toDrawing(e.getPoint());
+                    if (shapeList.getSelectedIndex() == 2) {
+                        stroke = new Stroke(drawEventStart.getX(), drawEventStart.getY(), colorChoice);
+                        drawingArea.setOverlay(stroke);
+                    }
+                } else {
+                    panning = true;
+                    panX = e.getX();
+                    panY = e.getY();
+                }
             }
 
             public void mouseReleased(MouseEvent e) {
+                if (panning) {
+                    panning = false;
+                    return;
+                }
+                if (drawEventStart == null) {
+                    return;
+                }
+                Point2D p = drawingArea.getViewport().toDrawing(e.getPoint());
                 Shape s;
-                if(shapeList.getSelectedIndex() == 0) {
+                if (stroke != null) {
+                    // A click without moving the mouse gives a dot
+                    s = stroke;
+                    s.addPoint(p.getX(), p.getY());
+                    stroke = null;
+                } else if(shapeList.getSelectedIndex() == 0) {
                     Point topLeft = new Point();
                     Point botRight = new Point();
-                    if(drawEventStart.getX() < e.getX()) {
+                    if(drawEventStart.getX() < p.getX()) {
                         topLeft.setX(drawEventStart.getX());
-                        botRight.setX(e.getX());
+                        botRight.setX(p.getX());
                     } else {
-                        topLeft.setX(e.getX());
+                        topLeft.setX(p.getX());
                         botRight.setX(drawEventStart.getX());
                     }
 
-                    if(drawEventStart.getY() < e.getY()) {
+                    if(drawEventStart.getY() < p.getY()) {
                         topLeft.setY(drawEventStart.getY());
-                        botRight.setY(e.getY());
+                        botRight.setY(p.getY());
                     } else {
-                        topLeft.setY(e.getY());
+                        topLeft.setY(p.getY());
                         botRight.setY(drawEventStart.getY());
                     }
                     s = new Rectangle(topLeft,colorChoice);
                     s.addPoint(botRight);
-                    s.draw(drawingArea.getGraphics());
                 } else {
                     s = new Circle(drawEventStart.getX(),drawEventStart.getY(),colorChoice);
-                    s.addPoint(e.getX(),e.getY());
+                    s.addPoint(p.getX(),p.getY());
                 }
                 Drawing drawing = drawingArea.getDrawing();
                 drawing.addShape(s);
-                drawingArea.setDrawing(drawing);
+                drawEventStart = null;
+                drawingArea.setOverlay(null);
 
             }
 
             public void mouseDragged(MouseEvent e) {
-                String text = "Coordinates: ";
-                text += e.getX() + "," + e.getY();
-                mousePosLabel.setText(text);
-                if(shapeList.getSelectedIndex() == 0) {
-                    Point topLeft = new Point();
-                    Point botRight = new Point();
-                    if(drawEventStart.getX() < e.getX()) {
-                        topLeft.setX(drawEventStart.getX());
-                        botRight.setX(e.getX());
-                    } else {
-                        topLeft.setX(e.getX());
-                        botRight.setX(drawEventStart.getX());
-                    }
-
-                    if(drawEventStart.getY() < e.getY()) {
-                        topLeft.setY(drawEventStart.getY());
-                        botRight.setY(e.getY());
-                    } else {
-                        topLeft.setY(e.getY());
-                        botRight.setY(drawEventStart.getY());
-                    }
-                    drawingArea.paintComponent(drawingArea.getGraphics());
-                    Rectangle r = new Rectangle(topLeft,colorChoice);
-                    r.addPoint(botRight);
-                    r.draw(drawingArea.getGraphics());
-                } else {
-                    drawingArea.paintComponent(drawingArea.getGraphics());
-                    Circle c = new Circle(drawEventStart.getX(),drawEventStart.getY(),colorChoice);
-                    c.addPoint(e.getX(),e.getY());
-                    c.draw(drawingArea.getGraphics());
+                drawingArea.interact();
+                if (panning) {
+                    drawingArea.getViewport().pan(e.getX() - panX, e.getY() - panY);
+                    panX = e.getX();
+                    panY = e.getY();
+                    drawingArea.requestRepaint();
+                    return;
                 }
+                Viewport viewport = drawingArea.getViewport();
+                mouseX = (int) viewport.toDrawingX(e.getX());
+                mouseY = (int) viewport.toDrawingY(e.getY());
+                if (drawEventStart == null) {
+                    drawingArea.getScheduler().requestFrame();
+                    return;
+                }
+                if (stroke != null) {
+                    stroke.addPoint(viewport.toDrawingX(e.getX()), viewport.toDrawingY(e.getY()));
+                    drawingArea.overlayExtended();
+                    return;
+                }
+                Shape preview = shapeList.getSelectedIndex() == 0 ? previewRectangle : previewCircle;
+                preview.setColor(colorChoice);
+                preview.setPoints(drawEventStart.getX(), drawEventStart.getY(), viewport.toDrawingX(e.getX()),
+                        viewport.toDrawingY(e.getY()));
+                drawingArea.setOverlay(preview);
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                // Zoom around the mouse pointer
+                drawingArea.interact();
+                double factor = Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+                drawingArea.getViewport().zoom(factor, e.getX(), e.getY());
+                drawingArea.requestRepaint();
             }
         };
         drawingArea.addMouseMotionListener(m);
         drawingArea.addMouseListener(m);
+        drawingArea.addMouseWheelListener(m);
 
         // Add panel to frame
         frame.getContentPane().add(drawingArea, BorderLayout.CENTER);
@@ -0,0 +1,284 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.BitSet;
+
+/**
+ * <h1>OcclusionCuller</h1>
+ * This file contains the class OcclusionCuller, which keeps track of the shapes of a ShapeStore that are completely
+ * hidden by later shapes, so they can be left out when painting.
+ * <p>
+ * All shapes are painted with opaque colors, so a shape whose pixels all lie in the fully covered part of a single
+ * later shape never shows. The covered part of a rectangle is the rectangle itself, as rectangles are drawn on whole
+ * pixels. The covered part of a circle is taken as its inscribed square, shrunk by a pixel for the antialiased edge.
+ * Strokes are too thin to hide anything, but may be hidden. A shape covered only by several later shapes together is
+ * not detected. When a shape is added, the earlier shapes it hides are marked right away. Changing a shape only
+ * rechecks the shape itself, the earlier shapes it covered before the change and the ones it covers after. Removing
+ * the last shape only rechecks the shapes it covers.
+ * <p>
+ * The marks are only changed by the thread owning the store, and are read and written holding the lock of the
+ * culler, so a thread painting the store always sees them whole.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-21
+ */
+class OcclusionCuller {
+    private static final double HALF_SQRT_2 = Math.sqrt(2) / 2;
+
+    private ShapeStore store;
+    /**
+     * The views the geometry of the shapes is read through, only used while holding the lock.
+     */
+    private final Shape[] flyweights;
+    private BitSet hidden = new BitSet();
+    private int hiddenCount;
+
+    /**
+     * Instantiates a new OcclusionCuller for a store.
+     *
+     * @param store the store whose shapes are culled.
+     */
+    OcclusionCuller(ShapeStore store) {
+        this.store = store;
+        flyweights = store.createFlyweights();
+    }
+
+    /**
+     * Creates a copy of the marks for a copy of the store.
+     *
+     * @param store the copy of the store.
+     * @return the copy
+     */
+    synchronized OcclusionCuller copy(ShapeStore store) {
+        OcclusionCuller copy = new OcclusionCuller(store);
+        copy.hidden = (BitSet) hidden.clone();
+        copy.hiddenCount = hiddenCount;
+        return copy;
+    }
+
+    /**
+     * Marks the earlier shapes hidden by a shape that was just added to the end of the store.
+     *
+     * @param i the index of the added shape.
+     */
+    synchronized void add(int i) {
+        hideCoveredBy(i);
+    }
+
+    /**
+     * Brings the marks up to date after a shape has been changed. The shapes the shape covered before the change are
+     * found by one query a pixel around its old bounding box, as in removeLast, and are unmarked unless a later shape
+     * still covers them. The shape itself is rechecked, and the shapes it covers now are marked. Strokes never cover
+     * anything, so changing a stroke only rechecks the stroke.
+     *
+     * @param i      the index of the changed shape.
+     * @param before the bounding box of the shape before the change, or null if it had no end point.
+     */
+    synchronized void changed(int i, double[] before) {
+        if (before != null && store.getKind(i) != ShapeStore.STROKE) {
+            for (int j : store.query(before[0] - 1, before[1] - 1, before[2] + 1, before[3] + 1)) {
+                if (j >= i) {
+                    break;
+                }
+                if (hidden.get(j) && !isCoveredByLater(j)) {
+                    hidden.clear(j);
+                    hiddenCount--;
+                }
+            }
+        }
+        boolean covered = isCoveredByLater(i);
+        if (covered != hidden.get(i)) {
+            hidden.set(i, covered);
+            hiddenCount += covered ? 1 : -1;
+        }
+        hideCoveredBy(i);
+    }
+
+    /**
+     * Forgets all hidden shapes, after the store has been cleared.
+     */
+    synchronized void clear() {
+        hidden.clear();
+        hiddenCount = 0;
+    }
+
+    /**
+     * Checks if a shape is completely hidden by a later shape.
+     *
+     * @param i the index of the shape.
+     * @return true if the shape does not need to be painted.
+     */
+    synchronized boolean isHidden(int i) {
+        return hidden.get(i);
+    }
+
+    /**
+     * Gets the amount of shapes completely hidden by later shapes.
+     *
+     * @return the amount of hidden shapes
+     */
+    synchronized int getHiddenCount() {
+        return hiddenCount;
+    }
+
+    /**
+     * Gets a copy of the marks of the hidden shapes, for painting many shapes on other threads without taking the lock
+     * for every shape.
+     *
+     * @return the indexes of the hidden shapes
+     */
+    synchronized BitSet getHidden() {
+        return (BitSet) hidden.clone();
+    }
+
+    /**
+     * Marks the shapes before a shape that lie in its fully covered part.
+     */
+    private void hideCoveredBy(int occluder) {
+        double[] covered = coveredPart(occluder);
+        if (covered == null) {
+            return;
+        }
+        for (int i : store.query(covered[0], covered[1], covered[2], covered[3])) {
+            if (i >= occluder) {
+                break;
+            }
+            if (hidden.get(i)) {
+                continue;
+            }
+            if (isInside(paintedPart(i), covered)) {
+                hidden.set(i);
+                hiddenCount++;
+            }
+        }
+    }
+
+    /**
+     * Unmarks the shapes that are only hidden by the last shape of the store, before it is removed. A shape it covers
+     * stays hidden if another later shape covers it too. The whole pixels a shape covers may reach up to a pixel
+     * outside its bounding box, so every shape that may cover part of what the removed shape covers is found by one
+     * query a pixel around it.
+     *
+     * @param removed the index of the last shape.
+     */
+    synchronized void removeLast(int removed) {
+        if (hidden.get(removed)) {
+            hidden.clear(removed);
+            hiddenCount--;
+        }
+        double[] covered = coveredPart(removed);
+        if (covered == null) {
+            return;
+        }
+        int[] near = store.query(covered[0] - 1, covered[1] - 1, covered[2] + 1, covered[3] + 1);
+        double[][] parts = new double[near.length][];
+        for (int k = 0; k < near.length && near[k] < removed; k++) {
+            int i = near[k];
+            if (!hidden.get(i)) {
+                continue;
+            }
+            double[] painted = paintedPart(i);
+            if (isInside(painted, covered) && !isCoveredByOther(near, parts, k, painted, store.getBounds(i), removed)) {
+                hidden.clear(i);
+                hiddenCount--;
+            }
+        }
+    }
+
+    /**
+     * Checks if the shape at a position of the found shapes is covered by a later one other than the one being
+     * removed. An occluder must also be one that would have found the shape through the index, as when the marks are
+     * recomputed. The covered parts are worked out once, as they are needed.
+     */
+    private boolean isCoveredByOther(int[] near, double[][] parts, int k, double[] painted, double[] bounds,
+                                     int removed) {
+        for (int l = k + 1; l < near.length && near[l] < removed; l++) {
+            if (parts[l] == null) {
+                double[] part = coveredPart(near[l]);
+                parts[l] = part != null ? part : new double[0];
+            }
+            double[] covered = parts[l];
+            if (covered.length > 0 && isInside(painted, covered) && bounds[0] <= covered[2]
+                    && bounds[2] >= covered[0] && bounds[1] <= covered[3] && bounds[3] >= covered[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a shape is covered by a later one, found as an occluder would find it through the index. The covered
+     * part of a shape lies within a pixel of its bounding box, so every later shape that may cover it is found by one
+     * query a pixel around the painted part of the shape.
+     */
+    private boolean isCoveredByLater(int i) {
+        if (!store.hasEndPoint(i)) {
+            return false;
+        }
+        double[] painted = paintedPart(i);
+        double[] bounds = store.getBounds(i);
+        for (int k : store.query(painted[0] - 1, painted[1] - 1, painted[2] + 1, painted[3] + 1)) {
+            if (k <= i) {
+                continue;
+            }
+            double[] covered = coveredPart(k);
+            if (covered != null && isInside(painted, covered) && bounds[0] <= covered[2]
+                    && bounds[2] >= covered[0] && bounds[1] <= covered[3] && bounds[3] >= covered[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInside(double[] painted, double[] covered) {
+        return painted[0] >= covered[0] && painted[1] >= covered[1]
+                && painted[2] <= covered[2] && painted[3] <= covered[3];
+    }
+
+    /**
+     * Gets the rectangle a shape paints completely, or null if it is too small or has no valid color.
+     */
+    private double[] coveredPart(int i) {
+        if (!store.hasEndPoint(i) || store.getPaint(i) == null || store.getKind(i) == ShapeStore.STROKE) {
+            return null;
+        }
+        // The whole pixels the shape is drawn at
+        Shape.Geometry geometry = store.bind(flyweights, i).getGeometry();
+        double x = geometry.getPixelX();
+        double y = geometry.getPixelY();
+        double width = geometry.getPixelWidth();
+        double height = geometry.getPixelHeight();
+        if (store.getKind(i) == ShapeStore.CIRCLE) {
+            double half = width / 2 * HALF_SQRT_2 - 1;
+            if (half <= 0) {
+                return null;
+            }
+            return new double[]{x + width / 2 - half, y + height / 2 - half, x + width / 2 + half,
+                    y + height / 2 + half};
+        }
+        return new double[]{x, y, x + width, y + height};
+    }
+
+    /**
+     * Gets a rectangle containing every pixel a shape may paint, including the antialiased edge of a circle or
+     * stroke.
+     */
+    private double[] paintedPart(int i) {
+        Shape.Geometry geometry = store.bind(flyweights, i).getGeometry();
+        if (store.getKind(i) == ShapeStore.STROKE) {
+            double[] bounds = geometry.getBounds();
+            return new double[]{bounds[0] - 1, bounds[1] - 1, bounds[2] + 1, bounds[3] + 1};
+        }
+        double x = geometry.getPixelX();
+        double y = geometry.getPixelY();
+        double width = geometry.getPixelWidth();
+        double height = geometry.getPixelHeight();
+        if (store.getKind(i) == ShapeStore.CIRCLE) {
+            return new double[]{x - 1, y - 1, x + width + 1, y + height + 1};
+        }
+        return new double[]{x, y, x + width, y + height};
+    }
+}
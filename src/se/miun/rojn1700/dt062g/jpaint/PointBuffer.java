@@ -0,0 +1,287 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.Arrays;
+
+/**
+ * <h1>PointBuffer</h1>
+ * This file contains the class PointBuffer, a growable, append-only list of points stored as pairs of primitive
+ * doubles, used for the points of strokes.
+ * <p>
+ * Points are only ever added to the end, which never moves the points already there, so building a stroke of n points
+ * takes O(n) time in total. A buffer can be simplified with the Ramer-Douglas-Peucker algorithm, which keeps the
+ * points needed to stay within a distance of the original line, and written as text with delta encoding, where every
+ * point after the first is stored as its offset from the one before in hundredths. The offsets between consecutive
+ * samples of a stroke are small numbers, so the text stays short.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-26
+ */
+class PointBuffer {
+    /**
+     * The amount of steps per unit of the coordinates written by encode.
+     */
+    static final int PRECISION = 100;
+
+    /**
+     * The coordinates of the points, as x0, y0, x1, y1 and so on.
+     */
+    private double[] coordinates;
+    private int size;
+
+    /**
+     * Instantiates a new, empty PointBuffer.
+     */
+    PointBuffer() {
+        this(16);
+    }
+
+    /**
+     * Instantiates a new, empty PointBuffer with room for an amount of points.
+     *
+     * @param capacity the amount of points to make room for.
+     */
+    PointBuffer(int capacity) {
+        coordinates = new double[Math.max(2, capacity * 2)];
+    }
+
+    /**
+     * Adds a point to the end of the buffer.
+     *
+     * @param x the x-value of the point.
+     * @param y the y-value of the point.
+     */
+    void add(double x, double y) {
+        if (size * 2 == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+        }
+        coordinates[size * 2] = x;
+        coordinates[size * 2 + 1] = y;
+        size++;
+    }
+
+    /**
+     * Adds a range of the points of a buffer to the end of this buffer. The buffer may be this buffer.
+     *
+     * @param from  the buffer to copy from.
+     * @param start the index of the first point to copy.
+     * @param count the amount of points to copy.
+     */
+    void addAll(PointBuffer from, int start, int count) {
+        if ((size + count) * 2 > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, Math.max((size + count) * 2, coordinates.length * 2));
+        }
+        System.arraycopy(from.coordinates, start * 2, coordinates, size * 2, count * 2);
+        size += count;
+    }
+
+    /**
+     * Gets the amount of points.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    double getX(int k) {
+        return coordinates[k * 2];
+    }
+
+    double getY(int k) {
+        return coordinates[k * 2 + 1];
+    }
+
+    /**
+     * Removes the points from an index to the end.
+     *
+     * @param size the amount of points to keep.
+     */
+    void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    /**
+     * Removes all points.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets the bounding box of a range of points, grown by a margin on every side.
+     *
+     * @param start  the index of the first point.
+     * @param count  the amount of points, at least one.
+     * @param margin the margin to add.
+     * @return the bounds as {minX, minY, maxX, maxY}.
+     */
+    double[] getBounds(int start, int count, double margin) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int k = start * 2; k < (start + count) * 2; k += 2) {
+            minX = Math.min(minX, coordinates[k]);
+            minY = Math.min(minY, coordinates[k + 1]);
+            maxX = Math.max(maxX, coordinates[k]);
+            maxY = Math.max(maxY, coordinates[k + 1]);
+        }
+        return new double[]{minX - margin, minY - margin, maxX + margin, maxY + margin};
+    }
+
+    /**
+     * Gets the length of the line through a range of points.
+     *
+     * @param start the index of the first point.
+     * @param count the amount of points.
+     * @return the length
+     */
+    double getLength(int start, int count) {
+        double length = 0;
+        for (int k = start + 1; k < start + count; k++) {
+            length += Math.hypot(getX(k) - getX(k - 1), getY(k) - getY(k - 1));
+        }
+        return length;
+    }
+
+    /**
+     * Checks if a point lies within a distance of the line through a range of points.
+     *
+     * @param start    the index of the first point.
+     * @param count    the amount of points.
+     * @param x        the x-value of the point.
+     * @param y        the y-value of the point.
+     * @param distance the largest distance.
+     * @return true if the point is within the distance of a segment of the line.
+     */
+    boolean isNear(int start, int count, double x, double y, double distance) {
+        if (count == 1) {
+            return Math.hypot(x - getX(start), y - getY(start)) <= distance;
+        }
+        for (int k = start + 1; k < start + count; k++) {
+            if (segmentDistance(x, y, getX(k - 1), getY(k - 1), getX(k), getY(k)) <= distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Simplifies the line through the points with the Ramer-Douglas-Peucker algorithm. The first and last point are
+     * always kept, and no removed point lies further than the tolerance from the simplified line.
+     *
+     * @param tolerance the largest distance a removed point may have from the simplified line.
+     * @return a new buffer with the kept points, in order.
+     */
+    PointBuffer simplify(double tolerance) {
+        if (size <= 2) {
+            PointBuffer copy = new PointBuffer(size);
+            copy.addAll(this, 0, size);
+            return copy;
+        }
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        // The ranges left to simplify, as pairs of first and last index, instead of recursing
+        int[] ranges = new int[64];
+        int pending = 0;
+        ranges[pending++] = 0;
+        ranges[pending++] = size - 1;
+        while (pending > 0) {
+            int last = ranges[--pending];
+            int first = ranges[--pending];
+            double farthest = -1;
+            int split = -1;
+            for (int k = first + 1; k < last; k++) {
+                double distance = segmentDistance(getX(k), getY(k), getX(first), getY(first), getX(last),
+                        getY(last));
+                if (distance > farthest) {
+                    farthest = distance;
+                    split = k;
+                }
+            }
+            if (farthest > tolerance) {
+                keep[split] = true;
+                if (pending + 4 > ranges.length) {
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                }
+                ranges[pending++] = first;
+                ranges[pending++] = split;
+                ranges[pending++] = split;
+                ranges[pending++] = last;
+            }
+        }
+        PointBuffer simplified = new PointBuffer();
+        for (int k = 0; k < size; k++) {
+            if (keep[k]) {
+                simplified.add(getX(k), getY(k));
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Writes the points as text. The first point is written as is and every following point as its offset from the
+     * one before, all in steps of 1 / PRECISION, separated by spaces.
+     *
+     * @return the encoded points, eg. "1050 2000 25 -3 30 -1".
+     */
+    String encode() {
+        StringBuilder text = new StringBuilder(size * 8);
+        long lastX = 0;
+        long lastY = 0;
+        for (int k = 0; k < size; k++) {
+            long x = Math.round(getX(k) * PRECISION);
+            long y = Math.round(getY(k) * PRECISION);
+            if (k > 0) {
+                text.append(' ');
+            }
+            text.append(x - lastX).append(' ').append(y - lastY);
+            lastX = x;
+            lastY = y;
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads points written by encode.
+     *
+     * @param text the encoded points.
+     * @return a new buffer with the points.
+     * @throws NumberFormatException if the text is not made up of pairs of whole numbers.
+     */
+    static PointBuffer decode(String text) {
+        if (text.trim().isEmpty()) {
+            return new PointBuffer();
+        }
+        String[] values = text.trim().split("\\s+");
+        if (values.length % 2 != 0) {
+            throw new NumberFormatException("An x-value without a y-value in \"" + text + "\"");
+        }
+        PointBuffer points = new PointBuffer(values.length / 2);
+        long x = 0;
+        long y = 0;
+        for (int k = 0; k < values.length; k += 2) {
+            x += Long.parseLong(values[k]);
+            y += Long.parseLong(values[k + 1]);
+            points.add((double) x / PRECISION, (double) y / PRECISION);
+        }
+        return points;
+    }
+
+    /**
+     * Gets the distance from a point to the segment between two other points.
+     */
+    private static double segmentDistance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+}
@@ -0,0 +1,157 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * <h1>ProgressiveRenderer</h1>
+ * This file contains the class ProgressiveRenderer, a SwingWorker rendering a large drawing in the background, a part
+ * of the shapes at a time, and showing what has been rendered so far.
+ * <p>
+ * The shapes are rendered in the order of the drawing by a TileRenderer of its own, each part drawn over the previous
+ * ones. The first part is small so that a first frame is shown quickly, and later parts are sized to take about
+ * PART_TIME milliseconds each. A copy of the image is published after each part, and a property change named "frame"
+ * is fired on the event dispatch thread when a new frame can be shown. The result is the TileRenderer, holding the
+ * finished image and ready to go on rendering changes to the drawing. The render stops after the current part when
+ * cancelled, eg. when shapes of the drawing change.
+ * <p>
+ * The drawing goes on changing on the event dispatch thread while it is rendered, so the shapes are rendered from a
+ * snapshot of the drawing taken when the renderer is created. The background thread only reads the snapshot, and a
+ * part still being rendered after a cancel does not see the change that caused it. Shapes appended to the drawing
+ * meanwhile do not need a cancel, as they are drawn over the rendered ones: the adopted renderer redraws their tiles
+ * on its next render. Once done, the renderer has to be adopted on the event dispatch thread before rendering the
+ * drawing itself.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-25
+ */
+class ProgressiveRenderer extends SwingWorker<TileRenderer, BufferedImage> {
+    /**
+     * The amount of shapes in the first part.
+     */
+    static final int FIRST_PART = 1024;
+    /**
+     * The time in milliseconds each later part aims to take.
+     */
+    static final int PART_TIME = 40;
+
+    private final Drawing drawing;
+    /**
+     * The copy of the drawing the background thread renders.
+     */
+    private final Drawing snapshot;
+    private final int width;
+    private final int height;
+    private final Viewport viewport;
+    private final TileRenderer renderer = new TileRenderer();
+    /**
+     * The latest published frame, null until the first part has been rendered.
+     */
+    private BufferedImage frame;
+
+    /**
+     * Instantiates a new ProgressiveRenderer, taking a snapshot of the drawing. Call execute() to start rendering.
+     * Must be called on the event dispatch thread.
+     *
+     * @param drawing  the drawing to render.
+     * @param width    the width of the image.
+     * @param height   the height of the image.
+     * @param viewport the part of the drawing to show.
+     * @param quality  the profile to render with.
+     */
+    ProgressiveRenderer(Drawing drawing, int width, int height, Viewport viewport, RenderQuality quality) {
+        this.drawing = drawing;
+        snapshot = drawing.snapshot();
+        this.width = width;
+        this.height = height;
+        this.viewport = new Viewport(viewport);
+        renderer.setQuality(quality);
+    }
+
+    @Override
+    protected TileRenderer doInBackground() {
+        int size = snapshot.getSize();
+        int part = FIRST_PART;
+        int from = 0;
+        do {
+            if (isCancelled()) {
+                return null;
+            }
+            int to = (int) Math.min(size, (long) from + part);
+            long start = System.nanoTime();
+            BufferedImage image = renderer.renderPart(snapshot, width, height, viewport, from, to);
+            double elapsed = Math.max(1, (System.nanoTime() - start) / 1000000.0);
+            from = to;
+            if (from < size) {
+                publish(new BufferedImage(image.getColorModel(), image.copyData(null), false, null));
+                setProgress((int) (100L * from / size));
+            }
+            // Grow by at most four times, so a part that happened to be fast does not make the next one too long
+            part = (int) Math.max(FIRST_PART, Math.min(part * 4L, part * PART_TIME / elapsed));
+        } while (from < size);
+        setProgress(100);
+        return renderer;
+    }
+
+    @Override
+    protected void process(List<BufferedImage> frames) {
+        // Frames published since the last call are all older than the last one
+        frame = frames.get(frames.size() - 1);
+        firePropertyChange("frame", null, frame);
+    }
+
+    /**
+     * Gets the latest frame. Must be called on the event dispatch thread.
+     *
+     * @return the image of the shapes rendered so far, or null if no part has been rendered yet.
+     */
+    BufferedImage getFrame() {
+        return frame;
+    }
+
+    /**
+     * Gets the finished renderer, ready to go on rendering changes to the drawing. Must be called on the event dispatch
+     * thread once done, and only if shapes have at most been appended to the drawing since this was created.
+     *
+     * @return the renderer, or null if the render was cancelled.
+     * @throws InterruptedException if interrupted while waiting for the result.
+     * @throws ExecutionException   if the render failed.
+     */
+    TileRenderer adopt() throws InterruptedException, ExecutionException {
+        if (isCancelled()) {
+            return null;
+        }
+        TileRenderer finished = get();
+        finished.adopt(snapshot, drawing);
+        return finished;
+    }
+
+    /**
+     * Gets the viewport the drawing is rendered through.
+     *
+     * @return the viewport
+     */
+    Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Checks if this renders a drawing at a size through a viewport.
+     *
+     * @param drawing  the drawing.
+     * @param width    the width of the image.
+     * @param height   the height of the image.
+     * @param viewport the part of the drawing to show.
+     * @return true if the result is the image asked for.
+     */
+    boolean isFor(Drawing drawing, int width, int height, Viewport viewport) {
+        return drawing == this.drawing && width == this.width && height == this.height
+                && viewport.isSame(this.viewport);
+    }
+}
@@ -0,0 +1,64 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.*;
+
+/**
+ * <h1>RenderQuality</h1>
+ * This file contains the enum RenderQuality, the profiles the drawing area can render with, from fast to high
+ * quality.
+ * <p>
+ * A profile is a set of rendering hints applied to a Graphics2D. The fast profile turns antialiasing off and asks for
+ * speed, which the shapes and ShapeBatch respect by leaving circles and strokes unantialiased. The balanced profile is
+ * how drawings have always been rendered, and gives the same pixels as drawing without a profile. The quality profile
+ * additionally asks for quality and draws shapes at their exact coordinates.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-24
+ */
+enum RenderQuality {
+    FAST(RenderingHints.VALUE_ANTIALIAS_OFF, RenderingHints.VALUE_RENDER_SPEED,
+            RenderingHints.VALUE_STROKE_PURE, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+    BALANCED(RenderingHints.VALUE_ANTIALIAS_ON, RenderingHints.VALUE_RENDER_DEFAULT,
+            RenderingHints.VALUE_STROKE_DEFAULT, RenderingHints.VALUE_INTERPOLATION_BILINEAR),
+    QUALITY(RenderingHints.VALUE_ANTIALIAS_ON, RenderingHints.VALUE_RENDER_QUALITY,
+            RenderingHints.VALUE_STROKE_PURE, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+    private final Object antialiasing;
+    private final Object rendering;
+    private final Object strokeControl;
+    private final Object interpolation;
+
+    RenderQuality(Object antialiasing, Object rendering, Object strokeControl, Object interpolation) {
+        this.antialiasing = antialiasing;
+        this.rendering = rendering;
+        this.strokeControl = strokeControl;
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Sets the rendering hints of the profile on a graphics.
+     *
+     * @param g the graphics to render with.
+     */
+    void apply(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, rendering);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+    }
+
+    /**
+     * Checks if a graphics asks for curved shapes, ie. circles and strokes, to be antialiased. They are, unless the
+     * graphics asks for speed.
+     *
+     * @param g the graphics to render with.
+     * @return true if circles and strokes should be antialiased.
+     */
+    static boolean antialiasCurves(Graphics2D g) {
+        return g.getRenderingHint(RenderingHints.KEY_RENDERING) != RenderingHints.VALUE_RENDER_SPEED;
+    }
+}
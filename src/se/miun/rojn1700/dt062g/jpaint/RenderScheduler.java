@@ -0,0 +1,198 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>RenderScheduler</h1>
+ * This file contains the class RenderScheduler, which collects requests to repaint a component and hands them on to
+ * the RepaintManager at most once per refresh of the screen.
+ * <p>
+ * Input events often arrive much faster than the screen can show them. Instead of repainting for every event, the
+ * regions asked to be repainted are joined into one, and a timer repaints the joined region when the next frame is
+ * due. Requests arriving while a frame is already pending are counted as dropped frames, as they would have been a
+ * frame of their own. Work that only needs to be done once per frame, such as updating a status bar, can be done by a
+ * frame listener, which is called right before each repaint. All methods must be called on the event dispatch thread.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-22
+ */
+class RenderScheduler {
+    /**
+     * The refresh rate used when the screen does not tell its own.
+     */
+    static final int DEFAULT_REFRESH_RATE = 60;
+
+    private JComponent component;
+    private Timer timer;
+    private int frameInterval;
+    private long lastFrame;
+    private List<ActionListener> frameListeners = new ArrayList<>();
+    private ActionEvent frameEvent;
+    /**
+     * The region to repaint in the next frame, empty if only the frame listeners are to be called.
+     */
+    private java.awt.Rectangle dirty = new java.awt.Rectangle();
+    private boolean pending;
+    private int requests;
+    private int dropped;
+    private int scheduled;
+    private int rendered;
+
+    /**
+     * Instantiates a new RenderScheduler for a component, at the refresh rate of the screen.
+     *
+     * @param component the component to repaint.
+     */
+    RenderScheduler(JComponent component) {
+        this(component, refreshRate());
+    }
+
+    /**
+     * Instantiates a new RenderScheduler for a component.
+     *
+     * @param component   the component to repaint.
+     * @param refreshRate the largest amount of frames per second.
+     */
+    RenderScheduler(JComponent component, int refreshRate) {
+        this.component = component;
+        frameInterval = Math.max(1, 1000 / refreshRate);
+        timer = new Timer(frameInterval, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                frame();
+            }
+        });
+        timer.setRepeats(false);
+        frameEvent = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "frame");
+    }
+
+    /**
+     * Gets the refresh rate of the default screen.
+     */
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode()
+                .getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : rate;
+    }
+
+    /**
+     * Adds a listener called once per frame, right before the component is repainted.
+     *
+     * @param listener the listener to add.
+     */
+    void addFrameListener(ActionListener listener) {
+        frameListeners.add(listener);
+    }
+
+    /**
+     * Asks for a frame without repainting anything, so that the frame listeners are called.
+     */
+    void requestFrame() {
+        requests++;
+        if (pending) {
+            dropped++;
+            return;
+        }
+        pending = true;
+        scheduled++;
+        // Wait out the rest of the frame interval since the last frame, without delaying a frame after a pause
+        long sinceLastFrame = (System.nanoTime() - lastFrame) / 1000000;
+        timer.setInitialDelay((int) Math.max(0, Math.min(frameInterval, frameInterval - sinceLastFrame)));
+        timer.restart();
+    }
+
+    /**
+     * Asks for a region of the component to be repainted in the next frame.
+     *
+     * @param x      the x-value of the region.
+     * @param y      the y-value of the region.
+     * @param width  the width of the region.
+     * @param height the height of the region.
+     */
+    void requestRepaint(int x, int y, int width, int height) {
+        if (width > 0 && height > 0) {
+            if (dirty.isEmpty()) {
+                dirty.setBounds(x, y, width, height);
+            } else {
+                dirty.add(x, y);
+                dirty.add(x + width, y + height);
+            }
+        }
+        requestFrame();
+    }
+
+    /**
+     * Asks for the whole component to be repainted in the next frame.
+     */
+    void requestRepaint() {
+        requestRepaint(0, 0, component.getWidth(), component.getHeight());
+    }
+
+    /**
+     * Counts a paint of the component. Called by the component when it paints.
+     */
+    void frameRendered() {
+        rendered++;
+    }
+
+    private void frame() {
+        pending = false;
+        lastFrame = System.nanoTime();
+        for (ActionListener listener : frameListeners) {
+            listener.actionPerformed(frameEvent);
+        }
+        if (!dirty.isEmpty()) {
+            component.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+            dirty.setBounds(0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Gets the amount of requests made.
+     *
+     * @return the amount of requests
+     */
+    int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the amount of requests joined into a frame that was already pending.
+     *
+     * @return the amount of dropped frames
+     */
+    int getDroppedFrames() {
+        return dropped;
+    }
+
+    /**
+     * Gets the amount of frames scheduled.
+     *
+     * @return the amount of scheduled frames
+     */
+    int getScheduledFrames() {
+        return scheduled;
+    }
+
+    /**
+     * Gets the amount of times the component has been painted. Paints asked for by the system, such as when the window
+     * is uncovered, are counted as well.
+     *
+     * @return the amount of rendered frames
+     */
+    int getRenderedFrames() {
+        return rendered;
+    }
+}
@@ -0,0 +1,229 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>ShapeBatch</h1>
+ * This file contains the class ShapeBatch, which draws shapes by collecting runs of shapes with the same color into
+ * one path and filling the whole run at once.
+ * <p>
+ * Shapes must be added in the order of the drawing. Since a run only holds shapes of a single color, filling it at
+ * once gives the same picture as filling the shapes one by one, except for the antialiased pixels where the edges of
+ * two shapes of the run overlap. The color and rendering hints are set once per run instead of once per shape. The
+ * draw methods of the shapes remain the reference for how a shape looks.
+ * <p>
+ * The order within a run does not matter as all its shapes have the same color. Rectangles lie on whole pixels, so
+ * the rectangles of a run are filled first without antialiasing, which is much cheaper. The circles are filled with
+ * antialiasing unless the graphics asks for speed, and as the rasterizer works through the whole bounding box of a
+ * path, the circles of a run spread over the drawing are split by a grid of cells, with one path per cell. Strokes
+ * are lines rather than filled areas, and are drawn one by one as they are added.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-20
+ */
+class ShapeBatch {
+    /**
+     * The largest amount of shapes filled at once. Very large paths make the rasterizer keep many edges per
+     * scanline, so crowded cells are filled in parts.
+     */
+    static final int MAX_SHAPES = 256;
+    /**
+     * The side of a cell of the grid, in pixels.
+     */
+    static final int CELL_SIZE = 64;
+
+    private final Graphics2D g;
+    private final Ellipse2D.Float ellipse = new Ellipse2D.Float();
+    /**
+     * The side of a cell of the grid, in coordinates of the drawing.
+     */
+    private final double cellSize;
+    /**
+     * The cells by their column and row, kept between runs so their paths are reused.
+     */
+    private final Map<Long, Cell> cells = new HashMap<>();
+    /**
+     * The cells holding shapes of the current run.
+     */
+    private final List<Cell> used = new ArrayList<>();
+    /**
+     * The rectangles of the current run, as x, y, width and height.
+     */
+    private int[] rectangles = new int[64];
+    private int rectangleCount;
+    private boolean antialiasing;
+    /**
+     * False if the graphics asks for speed, in which case circles and strokes are not antialiased either.
+     */
+    private final boolean antialiasCurves;
+    /**
+     * The color of the current run, null before the first shape.
+     */
+    private Color color;
+    /**
+     * The color last set on the graphics.
+     */
+    private Color graphicsColor;
+    private int fills;
+
+    /**
+     * Instantiates a new ShapeBatch drawing on a graphics.
+     *
+     * @param g the graphics to draw on.
+     */
+    ShapeBatch(Graphics2D g) {
+        this.g = g;
+        double scale = Math.max(Math.hypot(g.getTransform().getScaleX(), g.getTransform().getShearY()),
+                Math.hypot(g.getTransform().getShearX(), g.getTransform().getScaleY()));
+        cellSize = CELL_SIZE / (scale > 0 ? scale : 1);
+        antialiasCurves = RenderQuality.antialiasCurves(g);
+    }
+
+    /**
+     * Adds a shape to the current run, first filling the run if the shape has another color. Shapes without an end
+     * point or a color are skipped.
+     *
+     * @param shape the shape to add.
+     */
+    void add(Shape shape) {
+        Color paint = shape.getPaint();
+        if (paint == null || !shape.hasEndPoint()) {
+            return;
+        }
+        setColor(paint);
+        if (shape.getKind() == ShapeStore.STROKE) {
+            // The shapes of the run before it have the same color, so the stroke may be drawn before them
+            setPaint();
+            setAntialiasing(antialiasCurves);
+            shape.draw(g);
+            fills++;
+            return;
+        }
+        // The same whole pixels as the draw methods of the shapes
+        Shape.Geometry geometry = shape.getGeometry();
+        if (shape.getKind() != ShapeStore.CIRCLE) {
+            if (rectangleCount * 4 == rectangles.length) {
+                rectangles = Arrays.copyOf(rectangles, rectangles.length * 2);
+            }
+            rectangles[rectangleCount * 4] = geometry.getPixelX();
+            rectangles[rectangleCount * 4 + 1] = geometry.getPixelY();
+            rectangles[rectangleCount * 4 + 2] = geometry.getPixelWidth();
+            rectangles[rectangleCount * 4 + 3] = geometry.getPixelHeight();
+            rectangleCount++;
+            return;
+        }
+        Cell cell = cellAt(shape.getStartX(), shape.getStartY());
+        if (cell.shapes == MAX_SHAPES) {
+            fill(cell);
+        }
+        if (cell.shapes == 0) {
+            used.add(cell);
+        }
+        ellipse.setFrame(geometry.getPixelX(), geometry.getPixelY(), geometry.getPixelWidth(),
+                geometry.getPixelHeight());
+        cell.path.append(ellipse, false);
+        cell.shapes++;
+    }
+
+    private Cell cellAt(double x, double y) {
+        long column = (long) Math.floor(x / cellSize);
+        long row = (long) Math.floor(y / cellSize);
+        Long key = (column << 32) ^ (row & 0xffffffffL);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Starts a new run if a color differs from the color of the current run. Used before painting something of that
+     * color in another way, so it ends up in the right order.
+     *
+     * @param paint the color to paint with next.
+     */
+    void setColor(Color paint) {
+        if (!paint.equals(color)) {
+            flush();
+            color = paint;
+        }
+    }
+
+    /**
+     * Fills the shapes of the current run.
+     */
+    void flush() {
+        if (rectangleCount > 0) {
+            setPaint();
+            setAntialiasing(false);
+            for (int k = 0; k < rectangleCount * 4; k += 4) {
+                g.fillRect(rectangles[k], rectangles[k + 1], rectangles[k + 2], rectangles[k + 3]);
+            }
+            rectangleCount = 0;
+            fills++;
+        }
+        for (Cell cell : used) {
+            fill(cell);
+        }
+        used.clear();
+    }
+
+    private void fill(Cell cell) {
+        if (cell.shapes == 0) {
+            return;
+        }
+        setPaint();
+        setAntialiasing(antialiasCurves);
+        g.fill(cell.path);
+        cell.path.reset();
+        cell.shapes = 0;
+        fills++;
+    }
+
+    private void setPaint() {
+        if (!color.equals(graphicsColor)) {
+            g.setColor(color);
+            graphicsColor = color;
+        }
+    }
+
+    /**
+     * Turns antialiasing on or off, unless it already is.
+     */
+    private void setAntialiasing(boolean on) {
+        if (on != antialiasing) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    on ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            antialiasing = on;
+        }
+    }
+
+    /**
+     * Gets the amount of fills made so far.
+     *
+     * @return the amount of fills
+     */
+    int getFills() {
+        return fills;
+    }
+
+    /**
+     * The shapes of the current run within a cell of the grid.
+     */
+    private static class Cell {
+        private final Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, 64);
+        private int shapes;
+    }
+}
@@ -0,0 +1,133 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h1>ShapeQueue</h1>
+ * This file contains the class ShapeQueue, an append-only log of shapes that any amount of threads may add to without
+ * locking, read by a single thread in the order the shapes were added.
+ * <p>
+ * The log is a linked list of chunks of CHUNK_SIZE slots. Adding a shape reserves the next slot with a single atomic
+ * increment, creating the chunk holding it if no one has yet, and then writes the shape into the slot. Writing the slot
+ * publishes the shape, so the reader sees all of it once it sees the slot filled. The published length is the amount
+ * of filled slots before the first empty one, and the reader never reads past it: a thread that has reserved a slot but
+ * not yet written it holds back the shapes added after it, which keeps the order of the shapes added by each thread.
+ * Chunks the reader is done with are left to the garbage collector.
+ * <p>
+ * A shape must not be changed after it has been added, as the reader may see it at any time.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-29
+ */
+class ShapeQueue {
+    /**
+     * The amount of slots per chunk.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The amount of slots reserved so far.
+     */
+    private final AtomicInteger reserved = new AtomicInteger();
+    /**
+     * A chunk no later than the chunk of the next slot to reserve, where adding threads start looking for their chunk.
+     */
+    private final AtomicReference<Chunk> tail;
+    /**
+     * The chunk of the next slot to read, and that slot. Only used by the reading thread.
+     */
+    private Chunk head;
+    private int taken;
+
+    /**
+     * Instantiates a new, empty ShapeQueue.
+     */
+    ShapeQueue() {
+        head = new Chunk(0);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Adds a shape to the end of the log. May be called by any thread.
+     *
+     * @param shape the shape to add.
+     */
+    void add(Shape shape) {
+        // Read before reserving, so the chunk is not after the chunk of the reserved slot
+        Chunk chunk = tail.get();
+        int slot = reserved.getAndIncrement();
+        while (slot >= chunk.base + CHUNK_SIZE) {
+            Chunk next = chunk.next.get();
+            if (next == null) {
+                Chunk created = new Chunk(chunk.base + CHUNK_SIZE);
+                next = chunk.next.compareAndSet(null, created) ? created : chunk.next.get();
+            }
+            chunk = next;
+        }
+        Chunk last = tail.get();
+        while (last.base < chunk.base && !tail.compareAndSet(last, chunk)) {
+            last = tail.get();
+        }
+        chunk.slots.set(slot - chunk.base, shape);
+    }
+
+    /**
+     * Takes the next published shape. Must only be called by the reading thread.
+     *
+     * @return the shape, or null if no more shapes have been published.
+     */
+    Shape poll() {
+        if (taken == head.base + CHUNK_SIZE) {
+            Chunk next = head.next.get();
+            if (next == null) {
+                return null;
+            }
+            head = next;
+        }
+        int k = taken - head.base;
+        Shape shape = head.slots.get(k);
+        if (shape != null) {
+            // Let go of the shape, the slot is never read again
+            head.slots.lazySet(k, null);
+            taken++;
+        }
+        return shape;
+    }
+
+    /**
+     * Gets the amount of shapes added so far, including those whose slots are reserved but not yet written.
+     *
+     * @return the amount of added shapes
+     */
+    int getAdded() {
+        return reserved.get();
+    }
+
+    /**
+     * Gets the amount of shapes taken by the reading thread so far.
+     *
+     * @return the amount of taken shapes
+     */
+    int getTaken() {
+        return taken;
+    }
+
+    /**
+     * A run of CHUNK_SIZE slots, starting at a slot of the log.
+     */
+    private static class Chunk {
+        private final int base;
+        private final AtomicReferenceArray<Shape> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final AtomicReference<Chunk> next = new AtomicReference<>();
+
+        Chunk(int base) {
+            this.base = base;
+        }
+    }
+}
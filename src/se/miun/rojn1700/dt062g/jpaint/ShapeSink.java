@@ -0,0 +1,44 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.IOException;
+
+/**
+ * <h1>ShapeSink</h1>
+ * This file contains the interface ShapeSink, for objects that take in a drawing one shape at a time as it is read,
+ * eg. a drawing shown while it loads or a writer converting it to another file.
+ * <p>
+ * A sink is first told the name and the author of the drawing, then handed every shape in order, and then told that
+ * the drawing has ended. The shapes are standalone and the sink may keep them.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+interface ShapeSink {
+    /**
+     * Called before the first shape of a drawing.
+     *
+     * @param name   the name of the drawing.
+     * @param author the author of the drawing.
+     * @throws IOException if the sink can not take in the drawing, which stops the reading.
+     */
+    void begin(String name, String author) throws IOException;
+
+    /**
+     * Called for every shape of the drawing, in order.
+     *
+     * @param shape the shape.
+     * @throws IOException if the sink can not take in the shape, which stops the reading.
+     */
+    void shape(Shape shape) throws IOException;
+
+    /**
+     * Called after the last shape of the drawing.
+     *
+     * @throws IOException if the sink can not finish the drawing.
+     */
+    void end() throws IOException;
+}
@@ -0,0 +1,714 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * <h1>ShapeStore</h1>
+ * This file contains the class ShapeStore, which stores the shapes of a Drawing as columns of primitive arrays
+ * instead of as one object per shape.
+ * <p>
+ * A stored shape is made up of its kind, its start point, its end point and the index of its color in the
+ * ColorPalette of the store. A stroke also has a range of points in a PointBuffer shared by all strokes of the store,
+ * its start and end point being its first and last point. Shapes are read and written through views, which are
+ * ordinary Shape objects bound to an index in the store. A view can be rebound to another index, which lets a single
+ * view object per kind be reused when iterating over all shapes.
+ * <p>
+ * The bounding boxes of all shapes with an end point are kept in a SpatialIndex, so shapes in a region can be found
+ * without looking at every shape. Running totals of the shapes are kept in a DrawingStatistics, and the shapes hidden
+ * by later shapes are tracked by an OcclusionCuller.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-10
+ */
+class ShapeStore {
+    /**
+     * The kind of a rectangle.
+     */
+    static final byte RECTANGLE = 0;
+    /**
+     * The kind of a circle.
+     */
+    static final byte CIRCLE = 1;
+    /**
+     * The kind of a freehand stroke.
+     */
+    static final byte STROKE = 2;
+    /**
+     * The amount of kinds.
+     */
+    static final int KINDS = 3;
+
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The approximate memory taken up per shape by the columns, the spatial index and the culler.
+     */
+    private static final int BYTES_PER_SHAPE = 96;
+
+    private byte[] kinds;
+    private double[] startX;
+    private double[] startY;
+    /**
+     * The x-values of the end points. NaN if the shape has no end point.
+     */
+    private double[] endX;
+    private double[] endY;
+    /**
+     * The indexes of the colors in the palette.
+     */
+    private int[] colors;
+    /**
+     * The index of the first point of each stroke in the shared buffer, and its amount of points. The amount is 0 for
+     * other kinds.
+     */
+    private int[] pointStarts;
+    private int[] pointCounts;
+    /**
+     * The points of all strokes. Points are only appended, a stroke getting a point while it is not the last stroke
+     * in the buffer is first moved to the end.
+     */
+    private PointBuffer points = new PointBuffer();
+    private int size;
+    /**
+     * Counts the changes made to the store, so that cached renderings of it can tell when they are out of date.
+     */
+    private int modCount;
+    private ColorPalette palette = new ColorPalette();
+    private SpatialIndex index = new SpatialIndex();
+    private DrawingStatistics statistics = new DrawingStatistics(this);
+    private OcclusionCuller culler = new OcclusionCuller(this);
+    /**
+     * Told about every change to the shapes, null if no one listens.
+     */
+    private ChangeListener listener;
+    /**
+     * Views used internally when updating the statistics.
+     */
+    private Shape[] flyweights = createFlyweights();
+
+    /**
+     * Instantiates a new, empty ShapeStore.
+     */
+    ShapeStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Instantiates a copy of a store, sharing nothing with it. Nobody listens to the changes of the copy.
+     */
+    private ShapeStore(ShapeStore source) {
+        int capacity = Math.max(INITIAL_CAPACITY, source.size);
+        kinds = Arrays.copyOf(source.kinds, capacity);
+        startX = Arrays.copyOf(source.startX, capacity);
+        startY = Arrays.copyOf(source.startY, capacity);
+        endX = Arrays.copyOf(source.endX, capacity);
+        endY = Arrays.copyOf(source.endY, capacity);
+        colors = Arrays.copyOf(source.colors, capacity);
+        pointStarts = Arrays.copyOf(source.pointStarts, capacity);
+        pointCounts = Arrays.copyOf(source.pointCounts, capacity);
+        points = new PointBuffer(source.points.size());
+        points.addAll(source.points, 0, source.points.size());
+        size = source.size;
+        modCount = source.modCount;
+        palette = source.palette.copy();
+        index = source.index.copy();
+        statistics = source.statistics.copy(this);
+        culler = source.culler.copy(this);
+    }
+
+    /**
+     * Creates a copy of the store holding its shapes as they are now, with the same modification count. The copy can
+     * be handed to another thread, eg. one rendering in the background, and read there while this store goes on
+     * changing. Must be called on the thread owning the store.
+     *
+     * @return the copy
+     */
+    ShapeStore snapshot() {
+        return new ShapeStore(this);
+    }
+
+    /**
+     * Gets the amount of stored shapes.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all shapes from the store.
+     */
+    void clear() {
+        double[] extents = statistics.getBounds();
+        size = 0;
+        modCount++;
+        index.clear();
+        statistics.clear();
+        culler.clear();
+        points = new PointBuffer();
+        if (kinds.length > INITIAL_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        }
+        if (listener != null) {
+            listener.shapesChanged(DrawingEvent.CLEARED, extents);
+        }
+    }
+
+    /**
+     * Removes the last shape of the store, eg. when adding it is undone. The shapes it was hiding are shown again.
+     */
+    void removeLast() {
+        int i = size - 1;
+        double[] bounds = getBounds(i);
+        culler.removeLast(i);
+        statistics.remove(bind(flyweights, i));
+        if (hasEndPoint(i)) {
+            index.remove(i);
+        }
+        if (kinds[i] == STROKE && pointStarts[i] + pointCounts[i] == points.size()) {
+            points.truncate(pointStarts[i]);
+        }
+        size--;
+        modCount++;
+        if (listener != null) {
+            listener.shapesChanged(DrawingEvent.REMOVED, bounds);
+        }
+    }
+
+    /**
+     * Makes the modification count follow on from that of another store, when this store takes its place in a
+     * drawing. Renderings of the drawing then see the swap as a single change.
+     *
+     * @param previous the store this store replaces.
+     */
+    void continueModCount(ShapeStore previous) {
+        modCount = previous.modCount + 1;
+    }
+
+    /**
+     * Estimates the amount of memory the store takes up, counting its columns, its points and its spatial index.
+     *
+     * @return the estimated size in bytes
+     */
+    long estimateBytes() {
+        return (long) kinds.length * BYTES_PER_SHAPE + (long) points.size() * 16;
+    }
+
+    /**
+     * Sets the listener told about every change to the shapes.
+     *
+     * @param listener the listener, or null to remove it.
+     */
+    void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a shape to the end of the store. The shape may be standalone or a view of any store.
+     *
+     * @param shape the shape to add.
+     * @return the index of the added shape.
+     */
+    int add(Shape shape) {
+        int color = palette.intern(shape.getColor());
+        double endX = shape.hasEndPoint() ? shape.getEndX() : Double.NaN;
+        double endY = shape.hasEndPoint() ? shape.getEndY() : Double.NaN;
+        if (shape.getKind() != STROKE) {
+            return add(shape.getKind(), shape.getStartX(), shape.getStartY(), endX, endY, color);
+        }
+        Stroke stroke = (Stroke) shape;
+        int start = points.size();
+        int count = stroke.getPointCount();
+        for (int k = 0; k < count; k++) {
+            points.add(stroke.getPointX(k), stroke.getPointY(k));
+        }
+        return insert(STROKE, shape.getStartX(), shape.getStartY(), endX, endY, color, start, count);
+    }
+
+    /**
+     * Adds a rectangle or a circle given by its values, eg. when reading a file, without going through a Shape.
+     *
+     * @param kind   RECTANGLE or CIRCLE.
+     * @param startX the x-value of the start point.
+     * @param startY the y-value of the start point.
+     * @param endX   the x-value of the end point, NaN if the shape has no end point.
+     * @param endY   the y-value of the end point, NaN if the shape has no end point.
+     * @param color  the index of the color in the palette of the store.
+     * @return the index of the added shape.
+     */
+    int add(byte kind, double startX, double startY, double endX, double endY, int color) {
+        return insert(kind, startX, startY, endX, endY, color, 0, 0);
+    }
+
+    /**
+     * Adds a stroke through a range of the points of a buffer, eg. when reading a file, without going through a Shape.
+     * The first point is the start point, and the last point the end point if there are at least two.
+     *
+     * @param source the buffer holding the points.
+     * @param from   the index of the first point in the buffer.
+     * @param count  the amount of points.
+     * @param color  the index of the color in the palette of the store.
+     * @return the index of the added stroke.
+     */
+    int addStroke(PointBuffer source, int from, int count, int color) {
+        int start = points.size();
+        points.addAll(source, from, count);
+        double startX = count > 0 ? points.getX(start) : 0;
+        double startY = count > 0 ? points.getY(start) : 0;
+        double endX = count > 1 ? points.getX(start + count - 1) : Double.NaN;
+        double endY = count > 1 ? points.getY(start + count - 1) : Double.NaN;
+        return insert(STROKE, startX, startY, endX, endY, color, start, count);
+    }
+
+    /**
+     * Adds a copy of a shape of another store whose palette holds the same colors at the same indexes, eg. when
+     * putting together shapes read into separate stores, without going through a Shape.
+     *
+     * @param source the store holding the shape.
+     * @param i      the index of the shape in the other store.
+     * @return the index of the added shape.
+     */
+    int add(ShapeStore source, int i) {
+        int start = 0;
+        int count = source.pointCounts[i];
+        if (count > 0) {
+            start = points.size();
+            points.addAll(source.points, source.pointStarts[i], count);
+        }
+        return insert(source.kinds[i], source.startX[i], source.startY[i], source.endX[i], source.endY[i],
+                source.colors[i], start, count);
+    }
+
+    /**
+     * Writes the columns of a new shape whose points, if any, are already in the buffer.
+     */
+    private int insert(byte kind, double startX, double startY, double endX, double endY, int color, int pointStart,
+                       int pointCount) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int i = size;
+        kinds[i] = kind;
+        this.startX[i] = startX;
+        this.startY[i] = startY;
+        this.endX[i] = endX;
+        this.endY[i] = endY;
+        colors[i] = color;
+        pointStarts[i] = pointStart;
+        pointCounts[i] = pointCount;
+        size++;
+        modCount++;
+        if (hasEndPoint(i)) {
+            insertIntoIndex(i);
+        }
+        statistics.add(bind(flyweights, i));
+        culler.add(i);
+        if (listener != null) {
+            listener.shapesChanged(DrawingEvent.ADDED, getBounds(i));
+        }
+        return i;
+    }
+
+    /**
+     * Gets the amount of changes made to the store. Adding a shape counts as exactly one change.
+     *
+     * @return the modification count
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Gets the kind of a shape.
+     *
+     * @param i the index of the shape.
+     * @return the kind, RECTANGLE, CIRCLE or STROKE.
+     */
+    byte getKind(int i) {
+        return kinds[i];
+    }
+
+    double getStartX(int i) {
+        return startX[i];
+    }
+
+    double getStartY(int i) {
+        return startY[i];
+    }
+
+    double getEndX(int i) {
+        return endX[i];
+    }
+
+    double getEndY(int i) {
+        return endY[i];
+    }
+
+    boolean hasEndPoint(int i) {
+        return !Double.isNaN(endX[i]);
+    }
+
+    /**
+     * Gets the amount of points of a stroke.
+     *
+     * @param i the index of the stroke.
+     * @return the amount of points, 0 if the shape is not a stroke.
+     */
+    int getPointCount(int i) {
+        return pointCounts[i];
+    }
+
+    double getPointX(int i, int k) {
+        return points.getX(pointStarts[i] + k);
+    }
+
+    double getPointY(int i, int k) {
+        return points.getY(pointStarts[i] + k);
+    }
+
+    /**
+     * Sets the end point of a shape. A stroke instead gets the point added after its other points, which makes it
+     * its new end point.
+     *
+     * @param i the index of the shape.
+     * @param x the x-value of the end point.
+     * @param y the y-value of the end point.
+     */
+    void setEndPoint(int i, double x, double y) {
+        if (kinds[i] == STROKE && hasEndPoint(i)) {
+            extendStroke(i, x, y);
+            return;
+        }
+        double[] before = getBounds(i);
+        statistics.remove(bind(flyweights, i));
+        if (hasEndPoint(i)) {
+            index.remove(i);
+        }
+        if (kinds[i] == STROKE) {
+            appendPoint(i, x, y);
+        }
+        endX[i] = x;
+        endY[i] = y;
+        modCount++;
+        insertIntoIndex(i);
+        statistics.add(bind(flyweights, i));
+        culler.changed(i, before);
+        if (listener != null) {
+            double[] after = getBounds(i);
+            if (before != null) {
+                after[0] = Math.min(after[0], before[0]);
+                after[1] = Math.min(after[1], before[1]);
+                after[2] = Math.max(after[2], before[2]);
+                after[3] = Math.max(after[3], before[3]);
+            }
+            listener.shapesChanged(DrawingEvent.CHANGED, after);
+        }
+    }
+
+    /**
+     * Adds a point after the other points of a stroke with an end point. The new bounding box and length follow from
+     * the old ones and the added segment, so this takes constant time however long the stroke is.
+     */
+    private void extendStroke(int i, double x, double y) {
+        double[] bounds = index.getBounds(i);
+        double margin = Stroke.WIDTH / 2;
+        bounds[0] = Math.min(bounds[0], x - margin);
+        bounds[1] = Math.min(bounds[1], y - margin);
+        bounds[2] = Math.max(bounds[2], x + margin);
+        bounds[3] = Math.max(bounds[3], y + margin);
+        double length = Math.hypot(x - endX[i], y - endY[i]);
+        appendPoint(i, x, y);
+        endX[i] = x;
+        endY[i] = y;
+        modCount++;
+        index.remove(i);
+        index.insert(i, bounds[0], bounds[1], bounds[2], bounds[3]);
+        statistics.extend(bind(flyweights, i), length, bounds);
+        culler.changed(i, bounds);
+        if (listener != null) {
+            // The new bounding box holds the old one
+            listener.shapesChanged(DrawingEvent.CHANGED, bounds);
+        }
+    }
+
+    /**
+     * Adds a point after the other points of a stroke, first moving the points of the stroke to the end of the buffer
+     * unless they already are.
+     */
+    private void appendPoint(int i, double x, double y) {
+        if (pointStarts[i] + pointCounts[i] != points.size()) {
+            int start = points.size();
+            points.addAll(points, pointStarts[i], pointCounts[i]);
+            pointStarts[i] = start;
+        }
+        points.add(x, y);
+        pointCounts[i]++;
+    }
+
+    /**
+     * Gets the running statistics of the stored shapes.
+     *
+     * @return the statistics
+     */
+    DrawingStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets the tracker of the shapes hidden by later shapes.
+     *
+     * @return the culler
+     */
+    OcclusionCuller getCuller() {
+        return culler;
+    }
+
+    /**
+     * Finds the shapes whose bounding boxes intersect a rectangle. Shapes without an end point are never found.
+     *
+     * @param minX the smallest x-value of the rectangle.
+     * @param minY the smallest y-value of the rectangle.
+     * @param maxX the largest x-value of the rectangle.
+     * @param maxY the largest y-value of the rectangle.
+     * @return the indexes of the shapes, in ascending order.
+     */
+    int[] query(double minX, double minY, double maxX, double maxY) {
+        return index.query(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Checks if a point lies inside a shape. A shape without an end point contains no points.
+     *
+     * @param i the index of the shape.
+     * @param x the x-value of the point.
+     * @param y the y-value of the point.
+     * @return true if the point is inside the shape or on its edge.
+     */
+    boolean contains(int i, double x, double y) {
+        if (!hasEndPoint(i)) {
+            return false;
+        }
+        if (getKind(i) == CIRCLE) {
+            double radius = Math.hypot(startX[i] - endX[i], startY[i] - endY[i]);
+            return Math.hypot(x - startX[i], y - startY[i]) <= radius;
+        }
+        if (getKind(i) == STROKE) {
+            return points.isNear(pointStarts[i], pointCounts[i], x, y, Stroke.WIDTH / 2);
+        }
+        return x >= Math.min(startX[i], endX[i]) && x <= Math.max(startX[i], endX[i])
+                && y >= Math.min(startY[i], endY[i]) && y <= Math.max(startY[i], endY[i]);
+    }
+
+    /**
+     * Gets the color of a shape as it was given to the store.
+     *
+     * @param i the index of the shape.
+     * @return the color, ie. "#rrggbb".
+     */
+    String getColor(int i) {
+        return palette.getName(colors[i]);
+    }
+
+    /**
+     * Gets the decoded color of a shape.
+     *
+     * @param i the index of the shape.
+     * @return the color, or null if the shape has no valid color.
+     */
+    Color getPaint(int i) {
+        return palette.getColor(colors[i]);
+    }
+
+    /**
+     * Gets the color of a shape as an ARGB value.
+     *
+     * @param i the index of the shape.
+     * @return the ARGB value, 0 if the shape has no valid color.
+     */
+    int getARGB(int i) {
+        return palette.getARGB(colors[i]);
+    }
+
+    /**
+     * Gets the index of the color of a shape in the palette.
+     *
+     * @param i the index of the shape.
+     * @return the index of the color.
+     */
+    int getColorIndex(int i) {
+        return colors[i];
+    }
+
+    /**
+     * Gets the palette holding the colors of the stored shapes.
+     *
+     * @return the palette
+     */
+    ColorPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Sets the color of a shape.
+     *
+     * @param i     the index of the shape.
+     * @param color the color as a string accepted by Color.decode.
+     */
+    void setColor(int i, String color) {
+        statistics.remove(bind(flyweights, i));
+        colors[i] = palette.intern(color);
+        modCount++;
+        statistics.add(bind(flyweights, i));
+        double[] bounds = getBounds(i);
+        culler.changed(i, bounds);
+        if (listener != null) {
+            listener.shapesChanged(DrawingEvent.CHANGED, bounds);
+        }
+    }
+
+    /**
+     * Creates a new view of a stored shape.
+     *
+     * @param i the index of the shape.
+     * @return a shape reading and writing through to the store.
+     */
+    Shape view(int i) {
+        Shape shape = createShape(getKind(i));
+        shape.bind(this, i);
+        return shape;
+    }
+
+    /**
+     * Creates one unbound view per kind, to be used with bind(Shape[], int).
+     *
+     * @return an array of views indexed by kind.
+     */
+    Shape[] createFlyweights() {
+        Shape[] flyweights = new Shape[KINDS];
+        for (byte kind = 0; kind < KINDS; kind++) {
+            flyweights[kind] = createShape(kind);
+        }
+        return flyweights;
+    }
+
+    /**
+     * Binds the view of the right kind to a stored shape.
+     *
+     * @param flyweights the views created by createFlyweights().
+     * @param i          the index of the shape.
+     * @return the bound view.
+     */
+    Shape bind(Shape[] flyweights, int i) {
+        Shape shape = flyweights[getKind(i)];
+        shape.bind(this, i);
+        return shape;
+    }
+
+    /**
+     * Creates a standalone copy of a stored shape, not connected to the store.
+     *
+     * @param i the index of the shape.
+     * @return the copy.
+     */
+    Shape copy(int i) {
+        Shape shape;
+        if (getKind(i) == STROKE) {
+            Stroke stroke = new Stroke(startX[i], startY[i], getColor(i));
+            for (int k = 1; k < pointCounts[i]; k++) {
+                stroke.addPoint(getPointX(i, k), getPointY(i, k));
+            }
+            return stroke;
+        } else if (getKind(i) == CIRCLE) {
+            shape = new Circle(startX[i], startY[i], getColor(i));
+        } else {
+            shape = new Rectangle(startX[i], startY[i], getColor(i));
+        }
+        if (hasEndPoint(i)) {
+            shape.addPoint(endX[i], endY[i]);
+        }
+        return shape;
+    }
+
+    /**
+     * Gets the bounding box of a shape. The bounding box of a stroke includes the width of its line.
+     *
+     * @param i the index of the shape.
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if the shape has no end point.
+     */
+    double[] getBounds(int i) {
+        if (!hasEndPoint(i)) {
+            return null;
+        }
+        if (getKind(i) == CIRCLE) {
+            double radius = Math.hypot(startX[i] - endX[i], startY[i] - endY[i]);
+            return new double[]{startX[i] - radius, startY[i] - radius, startX[i] + radius, startY[i] + radius};
+        }
+        if (getKind(i) == STROKE) {
+            // The spatial index keeps the bounding box of a stroke, which otherwise takes going through its points
+            double[] bounds = index.getBounds(i);
+            return bounds != null ? bounds : points.getBounds(pointStarts[i], pointCounts[i], Stroke.WIDTH / 2);
+        }
+        return new double[]{Math.min(startX[i], endX[i]), Math.min(startY[i], endY[i]),
+                Math.max(startX[i], endX[i]), Math.max(startY[i], endY[i])};
+    }
+
+    /**
+     * Adds the bounding box of a shape with an end point to the spatial index.
+     */
+    private void insertIntoIndex(int i) {
+        double[] bounds = getBounds(i);
+        index.insert(i, bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    private static Shape createShape(byte kind) {
+        if (kind == STROKE) {
+            return new Stroke();
+        }
+        if (kind == CIRCLE) {
+            return new Circle();
+        }
+        return new Rectangle();
+    }
+
+    private void grow() {
+        int capacity = kinds.length + (kinds.length >> 1);
+        kinds = Arrays.copyOf(kinds, capacity);
+        startX = Arrays.copyOf(startX, capacity);
+        startY = Arrays.copyOf(startY, capacity);
+        endX = Arrays.copyOf(endX, capacity);
+        endY = Arrays.copyOf(endY, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        pointStarts = Arrays.copyOf(pointStarts, capacity);
+        pointCounts = Arrays.copyOf(pointCounts, capacity);
+    }
+
+    private void allocate(int capacity) {
+        kinds = new byte[capacity];
+        startX = new double[capacity];
+        startY = new double[capacity];
+        endX = new double[capacity];
+        endY = new double[capacity];
+        colors = new int[capacity];
+        pointStarts = new int[capacity];
+        pointCounts = new int[capacity];
+    }
+
+    /**
+     * Listens to the changes made to the shapes of a store.
+     */
+    interface ChangeListener {
+        /**
+         * Called after a shape has been added or changed, or the store has been cleared. For a change to the points
+         * of a shape, the region holds the bounding box both before and after the change.
+         *
+         * @param type   DrawingEvent.ADDED, CHANGED or CLEARED.
+         * @param bounds the region touched by the change as {minX, minY, maxX, maxY}, or null if none.
+         */
+        void shapesChanged(int type, double[] bounds);
+    }
+}
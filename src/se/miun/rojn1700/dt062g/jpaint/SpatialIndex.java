@@ -0,0 +1,453 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.util.Arrays;
+
+/**
+ * <h1>SpatialIndex</h1>
+ * This file contains the class SpatialIndex, a quadtree over the bounding boxes of the shapes in a ShapeStore.
+ * <p>
+ * Every shape is kept in the smallest node whose square fully contains its bounding box. Leaves are split when they
+ * hold too many shapes, and the root grows outwards when a shape is added outside of it, so the index needs no
+ * fixed extent. Shapes are identified by their index in the store.
+ * <p>
+ * The squares are half-open, including their top and left edges but not their bottom and right ones, so a shape on
+ * the line between two quadrants belongs to the one below or to the right of it. Adding, removing and growing the
+ * root all follow the same rule, so a shape is looked for in the node it was put in.
+ * <p>
+ * A shape whose bounding box is not finite can not be placed in any node, so it is kept in a list of unbounded shapes
+ * instead, and every query finds it.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-11
+ */
+class SpatialIndex {
+    /**
+     * The amount of shapes a leaf holds before it is split.
+     */
+    private static final int LEAF_CAPACITY = 16;
+    /**
+     * Nodes with a smaller half side than this are never split.
+     */
+    private static final double MIN_HALF_SIZE = 1;
+    private static final double INITIAL_HALF_SIZE = 256;
+    /**
+     * Queries covering at least this part of the extents of all shapes scan the bounding boxes in order instead of
+     * walking the tree, as most shapes are found anyway.
+     */
+    private static final double SCAN_FRACTION = 0.25;
+
+    private Node root;
+    /**
+     * Set in a copy whose tree has not been built yet. The tree is built from the bounding boxes when first needed, as
+     * a copy is mostly only read for the bounding boxes.
+     */
+    private boolean unbuilt;
+    /**
+     * The shapes whose bounding boxes are not finite, which are not in the tree.
+     */
+    private IntList unbounded = new IntList();
+    /**
+     * The smallest rectangle containing every shape inserted since the index was cleared.
+     */
+    private double extentMinX = Double.POSITIVE_INFINITY;
+    private double extentMinY = Double.POSITIVE_INFINITY;
+    private double extentMaxX = Double.NEGATIVE_INFINITY;
+    private double extentMaxY = Double.NEGATIVE_INFINITY;
+    /**
+     * The bounding boxes of the shapes, by index. The smallest x-value is NaN for shapes not in the index.
+     */
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+
+    /**
+     * Adds a shape to the index.
+     *
+     * @param i    the index of the shape in the store.
+     * @param minX the smallest x-value of the bounding box.
+     * @param minY the smallest y-value of the bounding box.
+     * @param maxX the largest x-value of the bounding box.
+     * @param maxY the largest y-value of the bounding box.
+     */
+    void insert(int i, double minX, double minY, double maxX, double maxY) {
+        build();
+        ensureCapacity(i + 1);
+        this.minX[i] = minX;
+        this.minY[i] = minY;
+        this.maxX[i] = maxX;
+        this.maxY[i] = maxY;
+        if (!isFinite(minX, minY, maxX, maxY)) {
+            unbounded.add(i);
+            return;
+        }
+        place(i);
+    }
+
+    /**
+     * Puts an inserted shape with a finite bounding box into the tree.
+     */
+    private void place(int i) {
+        double minX = this.minX[i];
+        double minY = this.minY[i];
+        double maxX = this.maxX[i];
+        double maxY = this.maxY[i];
+        extentMinX = Math.min(extentMinX, minX);
+        extentMinY = Math.min(extentMinY, minY);
+        extentMaxX = Math.max(extentMaxX, maxX);
+        extentMaxY = Math.max(extentMaxY, maxY);
+        if (root == null) {
+            double half = Math.max(INITIAL_HALF_SIZE, Math.max(maxX - minX, maxY - minY));
+            root = new Node((minX + maxX) / 2, (minY + maxY) / 2, half);
+        }
+        while (!root.contains(minX, minY, maxX, maxY)) {
+            growTowards((minX + maxX) / 2, (minY + maxY) / 2);
+        }
+        Node node = root;
+        while (node.children != null) {
+            Node child = node.childContaining(minX, minY, maxX, maxY);
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        node.items.add(i);
+        if (node.children == null && node.items.size > LEAF_CAPACITY && node.half >= MIN_HALF_SIZE) {
+            split(node);
+        }
+    }
+
+    /**
+     * Removes a shape from the index. The shape must have been inserted.
+     *
+     * @param i the index of the shape in the store.
+     */
+    void remove(int i) {
+        build();
+        if (!isFinite(minX[i], minY[i], maxX[i], maxY[i])) {
+            unbounded.remove(i);
+            minX[i] = Double.NaN;
+            return;
+        }
+        Node node = root;
+        while (node.children != null) {
+            Node child = node.childContaining(minX[i], minY[i], maxX[i], maxY[i]);
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        node.items.remove(i);
+        minX[i] = Double.NaN;
+    }
+
+    /**
+     * Gets the bounding box a shape was inserted with.
+     *
+     * @param i the index of the shape in the store.
+     * @return the bounds as {minX, minY, maxX, maxY}, or null if the shape is not in the index.
+     */
+    double[] getBounds(int i) {
+        if (i >= minX.length || Double.isNaN(minX[i]) && !unbounded.contains(i)) {
+            return null;
+        }
+        return new double[]{minX[i], minY[i], maxX[i], maxY[i]};
+    }
+
+    /**
+     * Creates a copy of the index, sharing nothing with it. Only the bounding boxes are copied, the tree of the copy is
+     * built by the thread using it once it is queried or changed.
+     *
+     * @return the copy
+     */
+    SpatialIndex copy() {
+        SpatialIndex copy = new SpatialIndex();
+        copy.unbuilt = root != null;
+        copy.unbounded = unbounded.copy();
+        copy.minX = minX.clone();
+        copy.minY = minY.clone();
+        copy.maxX = maxX.clone();
+        copy.maxY = maxY.clone();
+        return copy;
+    }
+
+    /**
+     * Removes all shapes from the index.
+     */
+    void clear() {
+        root = null;
+        unbounded = new IntList();
+        minX = new double[0];
+        minY = new double[0];
+        maxX = new double[0];
+        maxY = new double[0];
+        extentMinX = Double.POSITIVE_INFINITY;
+        extentMinY = Double.POSITIVE_INFINITY;
+        extentMaxX = Double.NEGATIVE_INFINITY;
+        extentMaxY = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Finds the shapes whose bounding boxes intersect a rectangle. Edges touching counts as intersecting. Shapes whose
+     * bounding boxes are not finite are always found.
+     *
+     * @param minX the smallest x-value of the rectangle.
+     * @param minY the smallest y-value of the rectangle.
+     * @param maxX the largest x-value of the rectangle.
+     * @param maxY the largest y-value of the rectangle.
+     * @return the indexes of the shapes, in ascending order.
+     */
+    int[] query(double minX, double minY, double maxX, double maxY) {
+        build();
+        if (root == null) {
+            int[] indexes = unbounded.toArray();
+            Arrays.sort(indexes);
+            return indexes;
+        }
+        double extentArea = (extentMaxX - extentMinX) * (extentMaxY - extentMinY);
+        double overlapArea = Math.max(0, Math.min(maxX, extentMaxX) - Math.max(minX, extentMinX))
+                * Math.max(0, Math.min(maxY, extentMaxY) - Math.max(minY, extentMinY));
+        if (overlapArea >= SCAN_FRACTION * extentArea) {
+            return scan(minX, minY, maxX, maxY);
+        }
+        IntList result = new IntList();
+        query(root, minX, minY, maxX, maxY, result);
+        for (int k = 0; k < unbounded.size; k++) {
+            result.add(unbounded.values[k]);
+        }
+        return sorted(result);
+    }
+
+    /**
+     * Finds the shapes whose bounding boxes intersect a rectangle by testing every bounding box in order.
+     */
+    private int[] scan(double qMinX, double qMinY, double qMaxX, double qMaxY) {
+        IntList result = new IntList();
+        for (int i = 0; i < minX.length; i++) {
+            // Shapes not in the index have NaN as their smallest x-value, which fails the test
+            if (minX[i] <= qMaxX && maxX[i] >= qMinX && minY[i] <= qMaxY && maxY[i] >= qMinY
+                    && isFinite(minX[i], minY[i], maxX[i], maxY[i])) {
+                result.add(i);
+            }
+        }
+        if (unbounded.size > 0) {
+            for (int k = 0; k < unbounded.size; k++) {
+                result.add(unbounded.values[k]);
+            }
+            Arrays.sort(result.values, 0, result.size);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Sorts the found indexes. When they make up a large part of all indexes, they are marked in a bit set and read
+     * back in order, which is faster than sorting them.
+     */
+    private int[] sorted(IntList result) {
+        int[] indexes;
+        if (result.size > minX.length >> 4) {
+            long[] found = new long[(minX.length >> 6) + 1];
+            for (int k = 0; k < result.size; k++) {
+                int i = result.values[k];
+                found[i >> 6] |= 1L << i;
+            }
+            indexes = new int[result.size];
+            int k = 0;
+            for (int word = 0; word < found.length; word++) {
+                long bits = found[word];
+                while (bits != 0) {
+                    indexes[k++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+        } else {
+            indexes = result.toArray();
+            Arrays.sort(indexes);
+        }
+        return indexes;
+    }
+
+    private void query(Node node, double qMinX, double qMinY, double qMaxX, double qMaxY, IntList result) {
+        if (!node.intersects(qMinX, qMinY, qMaxX, qMaxY)) {
+            return;
+        }
+        for (int k = 0; k < node.items.size; k++) {
+            int i = node.items.values[k];
+            if (minX[i] <= qMaxX && maxX[i] >= qMinX && minY[i] <= qMaxY && maxY[i] >= qMinY) {
+                result.add(i);
+            }
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                query(child, qMinX, qMinY, qMaxX, qMaxY, result);
+            }
+        }
+    }
+
+    /**
+     * Splits a leaf into four children and moves down the shapes that fit into one of them.
+     */
+    private void split(Node node) {
+        double h = node.half / 2;
+        node.children = new Node[]{
+                new Node(node.cx - h, node.cy - h, h),
+                new Node(node.cx + h, node.cy - h, h),
+                new Node(node.cx - h, node.cy + h, h),
+                new Node(node.cx + h, node.cy + h, h)
+        };
+        IntList items = node.items;
+        node.items = new IntList();
+        for (int k = 0; k < items.size; k++) {
+            int i = items.values[k];
+            Node child = node.childContaining(minX[i], minY[i], maxX[i], maxY[i]);
+            if (child == null) {
+                node.items.add(i);
+            } else {
+                child.items.add(i);
+            }
+        }
+    }
+
+    /**
+     * Replaces the root with one twice its size, with the old root as the quadrant facing away from a point.
+     */
+    private void growTowards(double x, double y) {
+        Node old = root;
+        double h = old.half;
+        double cx = x < old.cx ? old.cx - h : old.cx + h;
+        double cy = y < old.cy ? old.cy - h : old.cy + h;
+        root = new Node(cx, cy, h * 2);
+        root.children = new Node[]{
+                new Node(cx - h, cy - h, h),
+                new Node(cx + h, cy - h, h),
+                new Node(cx - h, cy + h, h),
+                new Node(cx + h, cy + h, h)
+        };
+        root.children[(old.cx < cx ? 0 : 1) + (old.cy < cy ? 0 : 2)] = old;
+    }
+
+    /**
+     * Builds the tree of a copy from the bounding boxes, unless already built.
+     */
+    private void build() {
+        if (!unbuilt) {
+            return;
+        }
+        unbuilt = false;
+        for (int i = 0; i < minX.length; i++) {
+            if (isFinite(minX[i], minY[i], maxX[i], maxY[i])) {
+                place(i);
+            }
+        }
+    }
+
+    private static boolean isFinite(double minX, double minY, double maxX, double maxY) {
+        return Double.isFinite(minX) && Double.isFinite(minY) && Double.isFinite(maxX) && Double.isFinite(maxY);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > minX.length) {
+            int length = Math.max(capacity, minX.length + (minX.length >> 1));
+            int oldLength = minX.length;
+            minX = Arrays.copyOf(minX, length);
+            Arrays.fill(minX, oldLength, length, Double.NaN);
+            minY = Arrays.copyOf(minY, length);
+            maxX = Arrays.copyOf(maxX, length);
+            maxY = Arrays.copyOf(maxY, length);
+        }
+    }
+
+    /**
+     * A square node of the quadtree, holding the shapes from cx - half up to but not including cx + half, and likewise
+     * for y.
+     */
+    private static class Node {
+        private final double cx;
+        private final double cy;
+        private final double half;
+        private IntList items = new IntList();
+        /**
+         * The four quadrants, in the order top left, top right, bottom left, bottom right. Null for leaves.
+         */
+        private Node[] children;
+
+        Node(double cx, double cy, double half) {
+            this.cx = cx;
+            this.cy = cy;
+            this.half = half;
+        }
+
+        boolean contains(double minX, double minY, double maxX, double maxY) {
+            return minX >= cx - half && maxX < cx + half && minY >= cy - half && maxY < cy + half;
+        }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return minX <= cx + half && maxX >= cx - half && minY <= cy + half && maxY >= cy - half;
+        }
+
+        Node childContaining(double minX, double minY, double maxX, double maxY) {
+            int quadrant;
+            if (maxX < cx) {
+                quadrant = 0;
+            } else if (minX >= cx) {
+                quadrant = 1;
+            } else {
+                return null;
+            }
+            if (maxY < cy) {
+                return children[quadrant];
+            } else if (minY >= cy) {
+                return children[quadrant + 2];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A growable list of primitive ints.
+     */
+    static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            for (int k = 0; k < size; k++) {
+                if (values[k] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void remove(int value) {
+            for (int k = 0; k < size; k++) {
+                if (values[k] == value) {
+                    values[k] = values[--size];
+                    return;
+                }
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        IntList copy() {
+            IntList copy = new IntList();
+            copy.values = values.clone();
+            copy.size = size;
+            return copy;
+        }
+    }
+}
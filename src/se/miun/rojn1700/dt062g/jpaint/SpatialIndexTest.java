@@ -0,0 +1,192 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <h1>SpatialIndexTest</h1>
+ * This class tests SpatialIndex. Shapes whose bounding boxes are not finite, which once made the root of the tree
+ * grow forever, must be added quickly and be found by every query, also when read from an XML drawing. Shapes on the
+ * line between two quadrants must be removed from the node they were put in, also after the root has grown. Random
+ * queries are then checked against testing every bounding box.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+public class SpatialIndexTest {
+    private static final double INF = Double.POSITIVE_INFINITY;
+    private static final double NAN = Double.NaN;
+    /**
+     * The longest time in milliseconds a test may take before the index is taken to hang.
+     */
+    private static final long TIMEOUT = 10000;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        // TEST 1
+        // Shapes whose bounding boxes are not finite
+        System.out.println("Unbounded shapes...");
+        runWithTimeout("unbounded shapes", new Runnable() {
+            @Override
+            public void run() {
+                double[][] corners = {{10, 10, INF, 40}, {-INF, 10, 50, 40}, {-INF, -INF, INF, INF},
+                        {NAN, 10, 20, 20}, {10, 10, 20, -INF}};
+                for (double[] corner : corners) {
+                    Drawing drawing = new Drawing();
+                    drawing.addShape(rectangle(0, 0, 20, 20, "#00ff00"));
+                    drawing.addShape(rectangle(corner[0], corner[1], corner[2], corner[3], "#ff0000"));
+                    drawing.addShape(rectangle(500, 500, 520, 520, "#0000ff"));
+                    String name = Arrays.toString(corner);
+                    check(name + " near", new int[]{0, 1}, drawing.getStore().query(0, 0, 30, 30));
+                    check(name + " far", new int[]{1, 2}, drawing.getStore().query(490, 490, 530, 530));
+                    check(name + " everywhere", new int[]{0, 1, 2}, drawing.getStore().query(-1e9, -1e9, 1e9, 1e9));
+                    drawing.getStore().removeLast();
+                    check(name + " after removing", new int[]{0, 1}, drawing.getStore().query(-1e9, -1e9, 1e9, 1e9));
+                }
+
+                SpatialIndex index = new SpatialIndex();
+                index.insert(0, 0, 0, INF, 10);
+                check("only unbounded", new int[]{0}, index.query(100, 100, 200, 200));
+                index.insert(1, 5, 5, 10, 10);
+                index.remove(0);
+                check("unbounded removed", new int[0], index.query(100, 100, 200, 200));
+                if (index.getBounds(0) != null) {
+                    failures++;
+                    System.err.println("FAILED unbounded removed: bounds still kept");
+                }
+                index.insert(0, NAN, 0, 10, 10);
+                if (index.getBounds(0) == null) {
+                    failures++;
+                    System.err.println("FAILED bounds of unbounded shape: not kept");
+                }
+                index.clear();
+                check("unbounded cleared", new int[0], index.query(-INF, -INF, INF, INF));
+            }
+        });
+
+        // TEST 2
+        // An XML drawing with an infinite coordinate, which loaded before the index was added
+        System.out.println("\nXML drawing with INF...");
+        runWithTimeout("XML drawing", new Runnable() {
+            @Override
+            public void run() {
+                String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<drawing>\n"
+                        + "<name>Infinite</name>\n<author>Robin</author>\n"
+                        + xmlRectangle("#00ff00", "50.0", "50.0", "550.0", "300.0")
+                        + xmlRectangle("#ff0000", "10.0", "10.0", "INF", "40.0")
+                        + xmlRectangle("#0000ff", "-INF", "10.0", "20.0", "20.0")
+                        + "</drawing>\n";
+                try {
+                    Drawing drawing = FileHandler.load(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+                    check("XML shapes", new int[]{1, 2}, drawing.getStore().query(600, 600, 700, 700));
+                    new TileRenderer().render(drawing, 600, 400);
+                } catch (Exception e) {
+                    failures++;
+                    System.err.println("FAILED XML drawing: " + e);
+                }
+            }
+        });
+
+        // TEST 3
+        // Shapes on the split line of a root that has grown, which were once looked for in the wrong quadrant
+        System.out.println("\nShapes on a split line...");
+        double[][] points = {{-256, 0}, {0, -256}, {-256, -256}, {256, 0}, {0, 256}};
+        // Off the axes, so the shapes cover an area and small queries walk the tree instead of scanning
+        double[][] growTo = {{-1000, 500}, {500, -1000}, {-1000, -1000}, {1000, 500}, {500, 1000}};
+        for (int k = 0; k < points.length; k++) {
+            SpatialIndex index = new SpatialIndex();
+            double x = points[k][0];
+            double y = points[k][1];
+            index.insert(0, 0, 0, 0, 0);
+            index.insert(1, x, y, x, y);
+            // A high index, so a shape found twice is not merged by sorting the found indexes in a bit set
+            index.insert(99, growTo[k][0], growTo[k][1], growTo[k][0], growTo[k][1]);
+            String name = Arrays.toString(points[k]);
+            check(name + " found", new int[]{1}, index.query(x - 1, y - 1, x + 1, y + 1));
+            index.remove(1);
+            index.insert(1, x, y, x, y);
+            check(name + " found once after removing", new int[]{1}, index.query(x - 1, y - 1, x + 1, y + 1));
+            index.remove(1);
+            check(name + " removed", new int[0], index.query(x - 1, y - 1, x + 1, y + 1));
+        }
+
+        // TEST 4
+        // Random queries against testing every bounding box
+        System.out.println("\nRandom queries...");
+        Random random = new Random(2);
+        SpatialIndex index = new SpatialIndex();
+        int size = 20000;
+        double[][] bounds = new double[size][];
+        for (int i = 0; i < size; i++) {
+            double x = random.nextDouble() * 10000;
+            double y = random.nextDouble() * 10000;
+            if (i % 1000 == 0) {
+                bounds[i] = new double[]{x, y, INF, y + 10};
+            } else {
+                bounds[i] = new double[]{x, y, x + random.nextDouble() * 100, y + random.nextDouble() * 100};
+            }
+            index.insert(i, bounds[i][0], bounds[i][1], bounds[i][2], bounds[i][3]);
+        }
+        for (int test = 0; test < 200; test++) {
+            double x = random.nextDouble() * 10000;
+            double y = random.nextDouble() * 10000;
+            // Small queries walk the tree and large ones scan the bounding boxes
+            double side = test % 2 == 0 ? random.nextDouble() * 200 : 5000 + random.nextDouble() * 5000;
+            int[] expected = new int[size];
+            int found = 0;
+            for (int i = 0; i < size; i++) {
+                if (bounds[i][2] == INF || bounds[i][0] <= x + side && bounds[i][2] >= x
+                        && bounds[i][1] <= y + side && bounds[i][3] >= y) {
+                    expected[found++] = i;
+                }
+            }
+            check("query " + test, Arrays.copyOf(expected, found), index.query(x, y, x + side, y + side));
+        }
+
+        if (failures > 0) {
+            System.err.println("\n" + failures + " check(s) failed!");
+            System.exit(-1);
+        }
+        System.out.println("\nAll checks passed");
+    }
+
+    /**
+     * Runs a test on its own thread, failing it if it has not ended within TIMEOUT.
+     */
+    private static void runWithTimeout(String name, Runnable test) throws InterruptedException {
+        Thread thread = new Thread(test);
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(TIMEOUT);
+        if (thread.isAlive()) {
+            failures++;
+            System.err.println("FAILED " + name + ": still running after " + TIMEOUT + " ms");
+        }
+    }
+
+    private static String xmlRectangle(String color, String x1, String y1, String x2, String y2) {
+        return "<shape xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:type=\"rectangle\">\n"
+                + "<color>" + color + "</color>\n"
+                + "<point><x>" + x1 + "</x><y>" + y1 + "</y></point>\n"
+                + "<point><x>" + x2 + "</x><y>" + y2 + "</y></point>\n"
+                + "</shape>\n";
+    }
+
+    private static Shape rectangle(double x1, double y1, double x2, double y2, String color) {
+        Shape shape = new Rectangle(x1, y1, color);
+        shape.addPoint(x2, y2);
+        return shape;
+    }
+
+    private static void check(String name, int[] expected, int[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            failures++;
+            System.err.println("FAILED " + name + ": expected " + Arrays.toString(expected) + " but got "
+                    + Arrays.toString(actual));
+        }
+    }
+}
@@ -0,0 +1,609 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>TileRenderer</h1>
+ * This file contains the class TileRenderer, which renders a Drawing to an image by splitting the image into tiles
+ * and rendering the tiles in parallel.
+ * <p>
+ * Every tile is rendered with its own Graphics, clipped to the tile, so only the shapes whose bounds overlap the
+ * tile are drawn in it. The tiles are rendered on a ForkJoinPool into one shared BufferedImage. Each tile has a dirty
+ * flag, and a render only redraws the dirty tiles. Shapes added to the drawing since the last render only dirty the
+ * tiles they overlap, other changes to the drawing dirty all tiles. Callers knowing which region of the drawing has
+ * changed can invalidate just that region.
+ * <p>
+ * The drawing is shown through a Viewport. At scale 1 with the origin in the corner, the result is pixel for pixel
+ * the same as drawing the whole drawing with one Graphics on a white background. At other scales, shapes smaller
+ * than LOD_SIZE pixels are not drawn as shapes. Instead the whole pixels they mostly cover, at least the pixel under
+ * their center, are set to their color. This keeps zoomed out views of large drawings fast, as most shapes are then
+ * just a few pixel writes.
+ * <p>
+ * Tiles are rendered with a RenderQuality profile. The result above holds for the balanced profile. Each tile
+ * remembers the profile it was rendered with, so when the profile is raised again after an interaction only the tiles
+ * rendered at a lower quality are redrawn.
+ * <p>
+ * A large drawing can also be rendered a part at a time with renderPart, each part drawing the next range of shapes
+ * over the previous ones in all tiles. Once the last part is rendered the image is the same as from a single render.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-16
+ */
+class TileRenderer {
+    /**
+     * The width and height of a tile in pixels.
+     */
+    static final int TILE_SIZE = 256;
+    /**
+     * Shapes narrower and lower than this amount of pixels are filled as a block of pixels when the drawing is scaled.
+     */
+    static final double LOD_SIZE = 4;
+    private static final double SQRT_PI = Math.sqrt(Math.PI);
+    /**
+     * The scratch image of each thread rendering tiles, kept between tiles and renders.
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final ForkJoinPool pool;
+    private BufferedImage image;
+    private int columns;
+    private int rows;
+    private boolean[] dirty = new boolean[0];
+    /**
+     * The profile each tile was last rendered with.
+     */
+    private RenderQuality[] tileQuality = new RenderQuality[0];
+    private RenderQuality quality = RenderQuality.BALANCED;
+    /**
+     * The drawing, its size and its modification count when the image was last rendered.
+     */
+    private Drawing renderedDrawing;
+    private int renderedSize;
+    private int renderedModCount;
+    /**
+     * The viewport of the image.
+     */
+    private Viewport viewport = new Viewport();
+    private int tilesRendered;
+
+    /**
+     * Instantiates a new TileRenderer rendering on the common fork/join pool.
+     */
+    TileRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Instantiates a new TileRenderer.
+     *
+     * @param pool the pool the tiles are rendered on.
+     */
+    TileRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Brings the image up to date with a drawing at scale 1 and returns it. The image is reused between calls, and is
+     * replaced when the size changes.
+     *
+     * @param drawing the drawing to render.
+     * @param width   the width of the image.
+     * @param height  the height of the image.
+     * @return the rendered image.
+     */
+    BufferedImage render(Drawing drawing, int width, int height) {
+        return render(drawing, width, height, new Viewport());
+    }
+
+    /**
+     * Brings the image up to date with a drawing seen through a viewport and returns it. The image is reused between
+     * calls, and is replaced when the size changes. All tiles are redrawn when the viewport changes.
+     *
+     * @param drawing  the drawing to render.
+     * @param width    the width of the image.
+     * @param height   the height of the image.
+     * @param viewport the part of the drawing to show.
+     * @return the rendered image.
+     */
+    BufferedImage render(Drawing drawing, int width, int height, Viewport viewport) {
+        int count = update(drawing, width, height, viewport);
+        int[] tiles = new int[count];
+        count = 0;
+        for (int tile = 0; tile < dirty.length; tile++) {
+            if (dirty[tile]) {
+                tiles[count++] = tile;
+                dirty[tile] = false;
+                tileQuality[tile] = quality;
+            }
+        }
+        tilesRendered = tiles.length;
+        if (tiles.length > 0) {
+            // The tiles all read the same copy of the hidden shapes, instead of taking the lock of the culler
+            BitSet hidden = drawing.getStore().getCuller().getHidden();
+            pool.invoke(new TileTask(this, drawing, hidden, tiles, null, true, 0, tiles.length));
+        }
+        return image;
+    }
+
+    /**
+     * Takes on a drawing seen through a viewport and marks the tiles the next render has to redraw, without redrawing
+     * them. Lets callers find out how much work a render would be.
+     *
+     * @param drawing  the drawing to render.
+     * @param width    the width of the image.
+     * @param height   the height of the image.
+     * @param viewport the part of the drawing to show.
+     * @return the amount of dirty tiles
+     */
+    int update(Drawing drawing, int width, int height, Viewport viewport) {
+        prepare(width, height, viewport);
+        int size = drawing.getSize();
+        int modCount = drawing.getModCount();
+        if (drawing != renderedDrawing) {
+            invalidateAll();
+        } else if (modCount != renderedModCount) {
+            if (size > renderedSize && modCount - renderedModCount == size - renderedSize) {
+                for (int i = renderedSize; i < size; i++) {
+                    double[] bounds = drawing.getBounds(i);
+                    if (bounds != null) {
+                        invalidate(bounds[0], bounds[1], bounds[2], bounds[3]);
+                    }
+                }
+            } else {
+                invalidateAll();
+            }
+        }
+        renderedDrawing = drawing;
+        renderedSize = size;
+        renderedModCount = modCount;
+
+        int count = 0;
+        for (boolean tile : dirty) {
+            if (tile) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Renders a range of the shapes of a drawing seen through a viewport into every tile, over what the tiles already
+     * show. Rendering from the first shape clears the image first. Until the last shape has been rendered, the next
+     * call to render redraws all tiles. Once it has, the image is up to date with the drawing as it was when the first
+     * part was rendered, so later renders only redraw what has changed since then.
+     *
+     * @param drawing  the drawing to render.
+     * @param width    the width of the image.
+     * @param height   the height of the image.
+     * @param viewport the part of the drawing to show.
+     * @param from     the index of the first shape to render.
+     * @param to       the index after the last shape to render.
+     * @return the rendered image.
+     */
+    BufferedImage renderPart(Drawing drawing, int width, int height, Viewport viewport, int from, int to) {
+        prepare(width, height, viewport);
+        if (from == 0) {
+            renderedSize = drawing.getSize();
+            renderedModCount = drawing.getModCount();
+        }
+        // Sort the shapes of the part into the tiles they overlap, instead of querying every tile for every part
+        SpatialIndex.IntList[] parts = new SpatialIndex.IntList[dirty.length];
+        // The same tiles as invalidate marks dirty for the shape
+        double margin = Drawing.CLIP_MARGIN * viewport.getScale() + 1;
+        for (int i = from; i < to; i++) {
+            double[] bounds = drawing.getBounds(i);
+            if (bounds == null) {
+                continue;
+            }
+            int fromColumn = Math.max(0, (int) Math.floor((viewport.toPanelX(bounds[0]) - margin) / TILE_SIZE));
+            int fromRow = Math.max(0, (int) Math.floor((viewport.toPanelY(bounds[1]) - margin) / TILE_SIZE));
+            int toColumn = Math.min(columns - 1, (int) Math.floor((viewport.toPanelX(bounds[2]) + margin) / TILE_SIZE));
+            int toRow = Math.min(rows - 1, (int) Math.floor((viewport.toPanelY(bounds[3]) + margin) / TILE_SIZE));
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    int tile = row * columns + column;
+                    if (parts[tile] == null) {
+                        parts[tile] = new SpatialIndex.IntList();
+                    }
+                    parts[tile].add(i);
+                }
+            }
+        }
+        int count = 0;
+        int[] tiles = new int[dirty.length];
+        int[][] shapes = new int[dirty.length][];
+        for (int tile = 0; tile < dirty.length; tile++) {
+            dirty[tile] = true;
+            tileQuality[tile] = quality;
+            // The first part clears every tile, later parts only touch the tiles they overlap
+            if (from == 0 || parts[tile] != null) {
+                tiles[count++] = tile;
+                shapes[tile] = parts[tile] == null ? new int[0] : parts[tile].toArray();
+            }
+        }
+        // Not up to date with any drawing until the last part is rendered
+        renderedDrawing = null;
+        tilesRendered = count;
+        if (count > 0) {
+            BitSet hidden = drawing.getStore().getCuller().getHidden();
+            pool.invoke(new TileTask(this, drawing, hidden, tiles, shapes, from == 0, 0, count));
+        }
+        if (to >= renderedSize) {
+            for (int tile = 0; tile < dirty.length; tile++) {
+                dirty[tile] = false;
+            }
+            renderedDrawing = drawing;
+        }
+        return image;
+    }
+
+    /**
+     * Takes on a viewport, and replaces the image when the size changes.
+     */
+    private void prepare(int width, int height, Viewport viewport) {
+        if (!viewport.isSame(this.viewport)) {
+            this.viewport.set(viewport);
+            invalidateAll();
+        }
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            dirty = new boolean[columns * rows];
+            tileQuality = new RenderQuality[columns * rows];
+            renderedDrawing = null;
+        }
+    }
+
+    /**
+     * Marks the tiles overlapping a region of the drawing as dirty, so they are redrawn on the next render.
+     *
+     * @param minX the smallest x-value of the region.
+     * @param minY the smallest y-value of the region.
+     * @param maxX the largest x-value of the region.
+     * @param maxY the largest y-value of the region.
+     */
+    void invalidate(double minX, double minY, double maxX, double maxY) {
+        // Shapes are drawn at truncated integer coordinates, so allow for rounding on each side
+        double margin = Drawing.CLIP_MARGIN * viewport.getScale() + 1;
+        int fromColumn = Math.max(0, (int) Math.floor((viewport.toPanelX(minX) - margin) / TILE_SIZE));
+        int fromRow = Math.max(0, (int) Math.floor((viewport.toPanelY(minY) - margin) / TILE_SIZE));
+        int toColumn = Math.min(columns - 1, (int) Math.floor((viewport.toPanelX(maxX) + margin) / TILE_SIZE));
+        int toRow = Math.min(rows - 1, (int) Math.floor((viewport.toPanelY(maxY) + margin) / TILE_SIZE));
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                dirty[row * columns + column] = true;
+            }
+        }
+    }
+
+    /**
+     * Makes an image rendered from a snapshot of a drawing count as rendered from the drawing itself, if shapes have
+     * at most been appended to the drawing since the snapshot was taken. Later renders of the drawing then only redraw
+     * the appended shapes and what changes. The caller must know that no other changes were made, eg. by listening to
+     * the drawing, as changes such as clearing and replacing the shapes can add up to the same counts.
+     *
+     * @param snapshot the snapshot the image was rendered from.
+     * @param drawing  the drawing the snapshot was taken of.
+     */
+    void adopt(Drawing snapshot, Drawing drawing) {
+        int appended = drawing.getSize() - renderedSize;
+        if (renderedDrawing == snapshot && appended >= 0 && renderedModCount + appended == drawing.getModCount()) {
+            renderedDrawing = drawing;
+        }
+    }
+
+    /**
+     * Marks the tiles touched by changes to the drawing as dirty, so the next render does not have to work out what
+     * changed. The event is ignored unless it follows right after the last render or event, in which case the next
+     * render falls back to comparing the drawing with the last rendered one.
+     *
+     * @param e the event describing the changes.
+     */
+    void drawingChanged(DrawingEvent e) {
+        if (e.getDrawing() != renderedDrawing || renderedModCount + e.getCount() != e.getModCount()) {
+            return;
+        }
+        double[] bounds = e.getBounds();
+        if (bounds != null) {
+            invalidate(bounds[0], bounds[1], bounds[2], bounds[3]);
+        }
+        renderedSize = renderedDrawing.getSize();
+        renderedModCount = e.getModCount();
+    }
+
+    /**
+     * Sets the profile tiles are rendered with. Raising the profile dirties the tiles rendered with a lower one,
+     * lowering it leaves the tiles as they are.
+     *
+     * @param quality the profile to render with.
+     */
+    void setQuality(RenderQuality quality) {
+        this.quality = quality;
+        for (int tile = 0; tile < dirty.length; tile++) {
+            if (tileQuality[tile] != null && tileQuality[tile].compareTo(quality) < 0) {
+                dirty[tile] = true;
+            }
+        }
+    }
+
+    /**
+     * Gets the profile tiles are rendered with.
+     *
+     * @return the profile
+     */
+    RenderQuality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Marks all tiles as dirty.
+     */
+    void invalidateAll() {
+        for (int tile = 0; tile < dirty.length; tile++) {
+            dirty[tile] = true;
+        }
+    }
+
+    /**
+     * Gets the amount of tiles the image is split into.
+     *
+     * @return the amount of tiles
+     */
+    int getTileCount() {
+        return dirty.length;
+    }
+
+    /**
+     * Gets the amount of tiles redrawn by the last render.
+     *
+     * @return the amount of tiles
+     */
+    int getTilesRendered() {
+        return tilesRendered;
+    }
+
+    /**
+     * Draws the shapes overlapping a tile that are not hidden by later shapes, in the order of the drawing. The tile is
+     * cleared to white first, unless a later part of the shapes is drawn over the ones already there.
+     * <p>
+     * The antialiasing renderer cuts up curves at the edges of the clip, so a circle crossing the edge of a tile
+     * would come out slightly different than when drawn on the whole image. Rectangles, and circles and strokes
+     * inside the tile, are drawn straight on the image, with runs of the same color filled at once. A circle or stroke
+     * crossing the edge of the tile is instead drawn on a scratch image covering the whole shape, loaded with the
+     * current pixels of the tile, and the part inside the tile is copied back.
+     */
+    private void renderTile(Drawing drawing, BitSet hidden, int tile, int[] part, boolean clear, Scratch scratch) {
+        int x = (tile % columns) * TILE_SIZE;
+        int y = (tile / columns) * TILE_SIZE;
+        int width = Math.min(TILE_SIZE, image.getWidth() - x);
+        int height = Math.min(TILE_SIZE, image.getHeight() - y);
+        Graphics2D g = image.createGraphics();
+        quality.apply(g);
+        g.setClip(x, y, width, height);
+        if (clear) {
+            g.setColor(Color.white);
+            g.fillRect(x, y, width, height);
+        }
+        ShapeStore store = drawing.getStore();
+        if (!viewport.isIdentity()) {
+            renderScaledTile(store, hidden, g, x, y, width, height, part);
+            g.dispose();
+            return;
+        }
+        // Shapes are drawn at truncated integer coordinates, so allow for rounding on each side
+        double margin = Drawing.CLIP_MARGIN;
+        int[] indexes = part != null ? part
+                : store.query(x - margin, y - margin, x + width + margin, y + height + margin);
+        Shape[] flyweights = store.createFlyweights();
+        ShapeBatch batch = new ShapeBatch(g);
+        for (int i : indexes) {
+            if (hidden.get(i)) {
+                continue;
+            }
+            Shape shape = store.bind(flyweights, i);
+            double[] bounds = drawing.getBounds(i);
+            int minX = Math.max(0, (int) Math.floor(bounds[0] - margin));
+            int minY = Math.max(0, (int) Math.floor(bounds[1] - margin));
+            int maxX = Math.min(image.getWidth(), (int) Math.ceil(bounds[2] + margin) + 1);
+            int maxY = Math.min(image.getHeight(), (int) Math.ceil(bounds[3] + margin) + 1);
+            // At the fast profile nothing is antialiased, and exactness does not matter
+            if (shape.getKind() == ShapeStore.RECTANGLE || quality == RenderQuality.FAST
+                    || minX >= x && minY >= y && maxX <= x + width && maxY <= y + height) {
+                batch.add(shape);
+            } else {
+                batch.flush();
+                scratch.draw(image, shape, quality, minX, minY, maxX, maxY, x, y, width, height);
+            }
+        }
+        batch.flush();
+        g.dispose();
+    }
+
+    /**
+     * Draws the shapes overlapping a tile through the viewport, or only a part of them if given. Shapes smaller than
+     * LOD_SIZE pixels are filled as blocks of whole pixels straight into the image instead of being drawn.
+     */
+    private void renderScaledTile(ShapeStore store, BitSet hidden, Graphics2D g, int x, int y, int width, int height,
+                                  int[] part) {
+        double scale = viewport.getScale();
+        double margin = Drawing.CLIP_MARGIN + 1 / scale;
+        int[] indexes = part != null ? part : store.query(viewport.toDrawingX(x) - margin,
+                viewport.toDrawingY(y) - margin, viewport.toDrawingX(x + width) + margin,
+                viewport.toDrawingY(y + height) + margin);
+        g.transform(viewport.getTransform());
+        Shape[] flyweights = store.createFlyweights();
+        ShapeBatch batch = new ShapeBatch(g);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int scanline = image.getWidth();
+        double lodSize = LOD_SIZE / scale;
+        for (int i : indexes) {
+            if (hidden.get(i)) {
+                continue;
+            }
+            double startX = store.getStartX(i);
+            double startY = store.getStartY(i);
+            double dx = store.getEndX(i) - startX;
+            double dy = store.getEndY(i) - startY;
+            double centerX;
+            double centerY;
+            double halfWidth;
+            double halfHeight;
+            if (store.getKind(i) == ShapeStore.CIRCLE) {
+                double radius = Math.sqrt(dx * dx + dy * dy);
+                if (2 * radius >= lodSize) {
+                    batch.add(store.bind(flyweights, i));
+                    continue;
+                }
+                centerX = startX;
+                centerY = startY;
+                // A square with the same area as the circle
+                halfWidth = radius * SQRT_PI / 2;
+                halfHeight = halfWidth;
+            } else if (store.getKind(i) == ShapeStore.STROKE) {
+                double[] bounds = store.getBounds(i);
+                halfWidth = (bounds[2] - bounds[0]) / 2;
+                halfHeight = (bounds[3] - bounds[1]) / 2;
+                if (2 * halfWidth >= lodSize || 2 * halfHeight >= lodSize) {
+                    batch.add(store.bind(flyweights, i));
+                    continue;
+                }
+                centerX = bounds[0] + halfWidth;
+                centerY = bounds[1] + halfHeight;
+            } else {
+                if (Math.abs(dx) >= lodSize || Math.abs(dy) >= lodSize) {
+                    batch.add(store.bind(flyweights, i));
+                    continue;
+                }
+                centerX = startX + dx / 2;
+                centerY = startY + dy / 2;
+                halfWidth = Math.abs(dx) / 2;
+                halfHeight = Math.abs(dy) / 2;
+            }
+            int argb = store.getARGB(i);
+            if (argb == 0) {
+                continue;
+            }
+            // The block goes straight into the image, so the shapes of other colors before it must be filled first
+            batch.setColor(store.getPaint(i));
+            // At least the pixel under the center is filled
+            int fromX = (int) Math.floor(viewport.toPanelX(centerX - halfWidth) + 0.5);
+            int toX = Math.max(fromX + 1, (int) Math.floor(viewport.toPanelX(centerX + halfWidth) + 0.5));
+            int fromY = (int) Math.floor(viewport.toPanelY(centerY - halfHeight) + 0.5);
+            int toY = Math.max(fromY + 1, (int) Math.floor(viewport.toPanelY(centerY + halfHeight) + 0.5));
+            fromX = Math.max(fromX, x);
+            fromY = Math.max(fromY, y);
+            toX = Math.min(toX, x + width);
+            toY = Math.min(toY, y + height);
+            for (int py = fromY; py < toY; py++) {
+                for (int px = fromX; px < toX; px++) {
+                    pixels[py * scanline + px] = argb;
+                }
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Renders a range of tiles, splitting the range in two while it holds more than one tile.
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TileRenderer renderer;
+        private final Drawing drawing;
+        /**
+         * The shapes hidden by later shapes, when the render started.
+         */
+        private final BitSet hidden;
+        private final int[] tiles;
+        /**
+         * The part of the shapes to draw in each tile, by tile. Null if the tiles are drawn from scratch.
+         */
+        private final int[][] parts;
+        private final boolean clear;
+        private final int from;
+        private final int to;
+
+        TileTask(TileRenderer renderer, Drawing drawing, BitSet hidden, int[] tiles, int[][] parts, boolean clear,
+                 int from, int to) {
+            this.renderer = renderer;
+            this.drawing = drawing;
+            this.hidden = hidden;
+            this.tiles = tiles;
+            this.parts = parts;
+            this.clear = clear;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int tile = tiles[from];
+                renderer.renderTile(drawing, hidden, tile, parts == null ? null : parts[tile], clear, SCRATCH.get());
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(renderer, drawing, hidden, tiles, parts, clear, from, middle),
+                    new TileTask(renderer, drawing, hidden, tiles, parts, clear, middle, to));
+        }
+    }
+
+    /**
+     * An image for drawing a shape on its own, as if it was drawn on the whole image, and copying the part inside a
+     * tile back to the image. Every thread has one, which starts at the size of a tile and only grows as far as the
+     * shapes drawn on it need, as a smaller image would cut the curves of the shape at its edges.
+     */
+    private static class Scratch {
+        private BufferedImage scratch = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        /**
+         * The pixels copied between the tile and the scratch image, which never cover more than a tile.
+         */
+        private final int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+
+        void draw(BufferedImage image, Shape shape, RenderQuality quality, int minX, int minY, int maxX, int maxY,
+                  int tileX, int tileY, int tileWidth, int tileHeight) {
+            int width = maxX - minX;
+            int height = maxY - minY;
+            if (scratch.getWidth() < width || scratch.getHeight() < height) {
+                scratch = new BufferedImage(Math.max(scratch.getWidth(), width), Math.max(scratch.getHeight(), height),
+                        BufferedImage.TYPE_INT_RGB);
+            }
+            // The part of the shape inside the tile, in image coordinates
+            int fromX = Math.max(minX, tileX);
+            int fromY = Math.max(minY, tileY);
+            int toX = Math.min(maxX, tileX + tileWidth);
+            int toY = Math.min(maxY, tileY + tileHeight);
+            if (fromX >= toX || fromY >= toY) {
+                return;
+            }
+            image.getRaster().getDataElements(fromX, fromY, toX - fromX, toY - fromY, pixels);
+            scratch.getRaster().setDataElements(fromX - minX, fromY - minY, toX - fromX, toY - fromY, pixels);
+
+            Graphics2D g = scratch.createGraphics();
+            quality.apply(g);
+            g.setClip(0, 0, width, height);
+            g.translate(-minX, -minY);
+            shape.draw(g);
+            g.dispose();
+
+            scratch.getRaster().getDataElements(fromX - minX, fromY - minY, toX - fromX, toY - fromY, pixels);
+            image.getRaster().setDataElements(fromX, fromY, toX - fromX, toY - fromY, pixels);
+        }
+    }
+}
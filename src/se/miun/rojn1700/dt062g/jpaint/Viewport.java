@@ -0,0 +1,191 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+
+/**
+ * <h1>Viewport</h1>
+ * This file contains the class Viewport, which maps the coordinates of a drawing to the pixels of the panel it is
+ * shown in.
+ * <p>
+ * A viewport is a scale and the point of the drawing shown in the upper left corner of the panel. At scale 1 with
+ * the origin in the corner, the coordinates of the drawing are the pixels of the panel.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-19
+ */
+class Viewport {
+    /**
+     * The smallest scale, ie. how far the viewport can be zoomed out.
+     */
+    static final double MIN_SCALE = 1.0 / 1024;
+    /**
+     * The largest scale, ie. how far the viewport can be zoomed in.
+     */
+    static final double MAX_SCALE = 64;
+
+    private double scale = 1;
+    private double x;
+    private double y;
+
+    /**
+     * Instantiates a new Viewport at scale 1, with the origin in the upper left corner.
+     */
+    Viewport() {
+    }
+
+    /**
+     * Instantiates a copy of a viewport.
+     *
+     * @param viewport the viewport to copy.
+     */
+    Viewport(Viewport viewport) {
+        set(viewport);
+    }
+
+    /**
+     * Makes this viewport show the same as another viewport.
+     *
+     * @param viewport the viewport to copy.
+     */
+    void set(Viewport viewport) {
+        scale = viewport.scale;
+        x = viewport.x;
+        y = viewport.y;
+    }
+
+    /**
+     * Gets the amount of pixels per unit of the drawing.
+     *
+     * @return the scale
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * Gets the x-value of the point of the drawing in the upper left corner.
+     *
+     * @return the x-value
+     */
+    double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y-value of the point of the drawing in the upper left corner.
+     *
+     * @return the y-value
+     */
+    double getY() {
+        return y;
+    }
+
+    /**
+     * Checks if the viewport shows the drawing at scale 1 with the origin in the upper left corner.
+     *
+     * @return true if the coordinates of the drawing are the pixels of the panel.
+     */
+    boolean isIdentity() {
+        return scale == 1 && x == 0 && y == 0;
+    }
+
+    /**
+     * Checks if another viewport shows the same part of the drawing.
+     *
+     * @param viewport the other viewport.
+     * @return true if the viewports are the same.
+     */
+    boolean isSame(Viewport viewport) {
+        return scale == viewport.scale && x == viewport.x && y == viewport.y;
+    }
+
+    double toDrawingX(double panelX) {
+        return x + panelX / scale;
+    }
+
+    double toDrawingY(double panelY) {
+        return y + panelY / scale;
+    }
+
+    double toPanelX(double drawingX) {
+        return (drawingX - x) * scale;
+    }
+
+    double toPanelY(double drawingY) {
+        return (drawingY - y) * scale;
+    }
+
+    /**
+     * Converts a point of the panel to the coordinates of the drawing.
+     *
+     * @param point the point in pixels of the panel.
+     * @return the point in coordinates of the drawing.
+     */
+    Point2D toDrawing(java.awt.Point point) {
+        return new Point2D.Double(toDrawingX(point.getX()), toDrawingY(point.getY()));
+    }
+
+    /**
+     * Gets the transform from coordinates of the drawing to pixels of the panel.
+     *
+     * @return the transform
+     */
+    AffineTransform getTransform() {
+        return new AffineTransform(scale, 0, 0, scale, -x * scale, -y * scale);
+    }
+
+    /**
+     * Zooms in or out, keeping the point of the drawing under a pixel of the panel in place.
+     *
+     * @param factor the factor to multiply the scale with, larger than 1 to zoom in.
+     * @param panelX the x-value of the pixel to zoom around.
+     * @param panelY the y-value of the pixel to zoom around.
+     */
+    void zoom(double factor, double panelX, double panelY) {
+        double drawingX = toDrawingX(panelX);
+        double drawingY = toDrawingY(panelY);
+        scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        x = drawingX - panelX / scale;
+        y = drawingY - panelY / scale;
+    }
+
+    /**
+     * Moves the drawing along with the mouse.
+     *
+     * @param dx the distance to move in pixels of the panel along the x-axis.
+     * @param dy the distance to move in pixels of the panel along the y-axis.
+     */
+    void pan(double dx, double dy) {
+        x -= dx / scale;
+        y -= dy / scale;
+    }
+
+    /**
+     * Zooms and pans so that a rectangle of the drawing fills the panel, keeping its proportions.
+     *
+     * @param bounds the rectangle as {minX, minY, maxX, maxY}.
+     * @param width  the width of the panel.
+     * @param height the height of the panel.
+     */
+    void fit(double[] bounds, int width, int height) {
+        double boundsWidth = Math.max(bounds[2] - bounds[0], 1);
+        double boundsHeight = Math.max(bounds[3] - bounds[1], 1);
+        scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, Math.min(width / boundsWidth, height / boundsHeight)));
+        x = (bounds[0] + bounds[2]) / 2 - width / scale / 2;
+        y = (bounds[1] + bounds[3]) / 2 - height / scale / 2;
+    }
+
+    /**
+     * Goes back to scale 1 with the origin in the upper left corner.
+     */
+    void reset() {
+        scale = 1;
+        x = 0;
+        y = 0;
+    }
+}
@@ -0,0 +1,115 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <h1>XmlDrawingCodec</h1>
+ * This file contains the class XmlDrawingCodec, which reads and writes drawings as XML using JAXB.
+ * <p>
+ * Creating a JAXBContext means going through the annotated classes by reflection and takes hundreds of milliseconds,
+ * so a single context is created once and shared, as a context may be used by several threads. Marshallers and
+ * unmarshallers may not, so each one is used by one thread at a time: they are taken from a pool, created when the pool
+ * is empty, and put back when done. The pool thereby holds about as many as the most threads that have used the codec
+ * at once. Warming up creates the context and runs a small drawing through a marshaller and an unmarshaller, so that
+ * JAXB has set up everything it does lazily.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-29
+ */
+class XmlDrawingCodec extends DrawingCodec {
+    private volatile JAXBContext context;
+    private final ConcurrentLinkedQueue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Instantiates a new XmlDrawingCodec. The JAXB context is created when first needed.
+     */
+    XmlDrawingCodec() {
+        super("XML", ".xml");
+    }
+
+    @Override
+    protected Drawing decode(InputStream in) throws IOException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        try {
+            if (unmarshaller == null) {
+                unmarshaller = getContext().createUnmarshaller();
+            }
+            // The parser closes the stream it has read, but the caller owns it
+            Object result = unmarshaller.unmarshal(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            });
+            unmarshallers.offer(unmarshaller);
+            if (!(result instanceof Drawing)) {
+                throw new IOException("Not a drawing: " + result);
+            }
+            return (Drawing) result;
+        } catch (JAXBException e) {
+            // An unmarshaller that failed may be left in any state, so it is not put back
+            throw new IOException(e.getMessage() != null ? e.getMessage() : String.valueOf(e.getCause()), e);
+        }
+    }
+
+    @Override
+    protected void encode(Drawing drawing, OutputStream out) throws IOException {
+        Marshaller marshaller = marshallers.poll();
+        try {
+            if (marshaller == null) {
+                marshaller = getContext().createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            }
+            marshaller.marshal(drawing, out);
+            marshallers.offer(marshaller);
+        } catch (JAXBException e) {
+            throw new IOException(e.getMessage() != null ? e.getMessage() : String.valueOf(e.getCause()), e);
+        }
+    }
+
+    @Override
+    void warmUp() {
+        Drawing drawing = new Drawing("warm up", "");
+        Shape shape = new Circle(0, 0, "#000000");
+        shape.addPoint(1, 1);
+        drawing.addShape(shape);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encode(drawing, out);
+            decode(new ByteArrayInputStream(out.toByteArray()));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the shared context, creating it on first use.
+     */
+    private JAXBContext getContext() throws JAXBException {
+        JAXBContext result = context;
+        if (result == null) {
+            synchronized (this) {
+                result = context;
+                if (result == null) {
+                    result = JAXBContext.newInstance(Drawing.class);
+                    context = result;
+                }
+            }
+        }
+        return result;
+    }
+}
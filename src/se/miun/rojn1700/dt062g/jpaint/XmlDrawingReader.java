@@ -0,0 +1,203 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <h1>XmlDrawingReader</h1>
+ * This file contains the class XmlDrawingReader, which reads drawings saved as XML one shape at a time.
+ * <p>
+ * Unlike the XmlDrawingCodec, which has JAXB read the whole file into a Drawing, the reader pulls the elements from
+ * the file with StAX and hands every shape to a ShapeSink as soon as its element has been read. Only the shape being
+ * read is held, so a file of any size is read in the same memory, and the sink decides what to keep. The file is read
+ * as JAXB reads it: elements the format does not have are skipped, and a shape with more than two points keeps its
+ * first two.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class XmlDrawingReader {
+    /**
+     * The namespace of the type attribute telling the kind of a shape.
+     */
+    static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * The factory creating the parsers. A factory may be shared once it has been set up.
+     */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private XmlDrawingReader() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // A drawing has no use for a DTD, and reading one could make the parser fetch other files
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Reads a drawing from a stream, handing its shapes to a sink as they are read. The stream is not closed.
+     *
+     * @param in   the stream to read from.
+     * @param sink the sink taking in the drawing.
+     * @throws IOException if the stream could not be read, does not hold a drawing or the sink stopped the reading.
+     */
+    static void read(InputStream in, ShapeSink sink) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            reader.nextTag();
+            if (!reader.getLocalName().equals("drawing")) {
+                throw new IOException("Not a drawing: <" + reader.getLocalName() + ">");
+            }
+            // A name or an author left out is empty, as in a Drawing read by JAXB
+            String name = "";
+            String author = "";
+            boolean begun = false;
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if (element.equals("shape")) {
+                    if (!begun) {
+                        sink.begin(name, author);
+                        begun = true;
+                    }
+                    sink.shape(readShape(reader));
+                } else if (element.equals("name") && !begun) {
+                    name = reader.getElementText();
+                } else if (element.equals("author") && !begun) {
+                    author = reader.getElementText();
+                } else {
+                    skip(reader);
+                }
+            }
+            if (!begun) {
+                sink.begin(name, author);
+            }
+            sink.end();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the shape element the reader is at, leaving the reader at its end.
+     */
+    private static Shape readShape(XMLStreamReader reader) throws XMLStreamException, IOException {
+        String type = reader.getAttributeValue(XSI, "type");
+        if (type == null) {
+            throw new IOException("A shape without a type at line " + reader.getLocation().getLineNumber());
+        }
+        // The type may be written with a prefix for the namespace of the drawing, which has none
+        type = type.substring(type.indexOf(':') + 1);
+        String color = null;
+        String path = null;
+        double[] point = new double[2];
+        double[] values = new double[4];
+        int points = 0;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (element.equals("color")) {
+                color = reader.getElementText();
+            } else if (element.equals("path")) {
+                path = reader.getElementText();
+            } else if (element.equals("point")) {
+                readPoint(reader, point);
+                if (points < 2) {
+                    values[2 * points] = point[0];
+                    values[2 * points + 1] = point[1];
+                }
+                points++;
+            } else {
+                skip(reader);
+            }
+        }
+
+        if (type.equals("stroke")) {
+            return new Stroke(color, path != null ? path : "");
+        }
+        if (points == 0) {
+            throw new IOException("A shape without a start point at line " + reader.getLocation().getLineNumber());
+        }
+        Shape shape;
+        if (type.equals("circle")) {
+            shape = new Circle(values[0], values[1], color);
+        } else if (type.equals("rectangle")) {
+            shape = new Rectangle(values[0], values[1], color);
+        } else {
+            throw new IOException("Unknown type of shape: " + type);
+        }
+        if (points > 1) {
+            shape.addPoint(values[2], values[3]);
+        }
+        return shape;
+    }
+
+    /**
+     * Reads the point element the reader is at into an array of its x- and y-value, leaving the reader at its end.
+     * A value left out is 0, as JAXB reads it.
+     */
+    private static void readPoint(XMLStreamReader reader, double[] point) throws XMLStreamException {
+        point[0] = 0;
+        point[1] = 0;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (element.equals("x")) {
+                point[0] = parseDouble(reader.getElementText());
+            } else if (element.equals("y")) {
+                point[1] = parseDouble(reader.getElementText());
+            } else {
+                skip(reader);
+            }
+        }
+    }
+
+    /**
+     * Reads a double written as XML Schema writes it, which is as Java writes it except for the infinities.
+     */
+    static double parseDouble(String text) {
+        text = text.trim();
+        if (text.equals("INF")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (text.equals("-INF")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(text);
+    }
+
+    /**
+     * Skips the element the reader is at, with everything in it.
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package se.miun.rojn1700.dt062g.jpaint;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>XmlDrawingWriter</h1>
+ * This file contains the class XmlDrawingWriter, a ShapeSink that writes a drawing as XML one shape at a time.
+ * <p>
+ * Every shape is written with StAX as soon as it is handed over, and nothing of it is kept, so a drawing of any size
+ * is written in the same memory. Connected to an XmlDrawingReader it copies or converts a drawing while reading it.
+ * The XML is laid out as JAXB lays it out, and strokes are simplified as when JAXB writes them, so a file written by
+ * either reads the same.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-30
+ */
+class XmlDrawingWriter implements ShapeSink {
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+    private static final String INDENT = "    ";
+
+    private final OutputStream out;
+    private XMLStreamWriter writer;
+
+    /**
+     * Instantiates a new XmlDrawingWriter. The stream is flushed when the drawing ends, but not closed.
+     *
+     * @param out the stream to write to.
+     */
+    XmlDrawingWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(String name, String author) throws IOException {
+        // StAX can not write the standalone declaration JAXB writes, so the declaration is written as it is
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            writer = FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartElement("drawing");
+            writeElement(1, "name", name);
+            writeElement(1, "author", author);
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void shape(Shape shape) throws IOException {
+        try {
+            indent(1);
+            writer.writeStartElement("shape");
+            writer.writeNamespace("xsi", XmlDrawingReader.XSI);
+            writer.writeAttribute("xsi", XmlDrawingReader.XSI, "type", getType(shape));
+            writeElement(2, "color", shape.getColor());
+            if (shape.getKind() == ShapeStore.STROKE) {
+                writeElement(2, "path", ((Stroke) shape).getPath());
+            } else {
+                writePoint(shape.getStartX(), shape.getStartY());
+                if (shape.hasEndPoint()) {
+                    writePoint(shape.getEndX(), shape.getEndY());
+                }
+            }
+            indent(1);
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            indent(0);
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.writeCharacters("\n");
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        out.flush();
+    }
+
+    private static String getType(Shape shape) {
+        switch (shape.getKind()) {
+            case ShapeStore.CIRCLE:
+                return "circle";
+            case ShapeStore.STROKE:
+                return "stroke";
+            default:
+                return "rectangle";
+        }
+    }
+
+    private void writePoint(double x, double y) throws XMLStreamException {
+        indent(2);
+        writer.writeStartElement("point");
+        writeElement(3, "x", printDouble(x));
+        writeElement(3, "y", printDouble(y));
+        indent(2);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes an element holding only text on a line of its own, or nothing if the text is null.
+     */
+    private void writeElement(int depth, String element, String text) throws XMLStreamException {
+        if (text == null) {
+            return;
+        }
+        indent(depth);
+        writer.writeStartElement(element);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    private void indent(int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int k = 0; k < depth; k++) {
+            writer.writeCharacters(INDENT);
+        }
+    }
+
+    /**
+     * Writes a double as XML Schema writes it, which is as Java writes it except for the infinities.
+     */
+    static String printDouble(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "INF";
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            return "-INF";
+        }
+        return Double.toString(value);
+    }
+}
@@ -1,5 +1,8 @@
 package se.miun.rojn1700.dt062g.jpaint.client;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -149,6 +152,39 @@ public class Client {
         return "";
     }
 
+    /**
+     * Receives a thumbnail of a drawing on the server.
+     *
+     * @param filename the name of the file on the server.
+     * @return the thumbnail. Returns null if the server has no thumbnail of the file, or if the connection fails.
+     */
+    public BufferedImage getThumbnailFromServer(String filename) {
+        if (connect()) {
+            try {
+                // Sends the thumb command
+                os.writeUTF("thumb");
+
+                // Sends the name of the file
+                os.writeUTF(filename);
+
+                // Receives the thumbnail as PNG data
+                int length = is.readInt();
+                BufferedImage thumbnail = null;
+                if (length > 0) {
+                    byte[] data = new byte[length];
+                    is.readFully(data);
+                    thumbnail = ImageIO.read(new ByteArrayInputStream(data));
+                }
+                disconnect();
+                return thumbnail;
+            } catch (java.io.IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        disconnect();
+        return null;
+    }
+
     /**
      * Sends a file to be saved on the server.
      *
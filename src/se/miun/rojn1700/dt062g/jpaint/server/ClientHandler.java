@@ -25,15 +25,18 @@ public class ClientHandler extends Thread {
     private Socket s;
     private DataInputStream is;
     private DataOutputStream os;
+    private ThumbnailCache thumbnails;
 
     /**
      * Initializes a new ClientHandler. Will open up output- and inputstreams. If a xml-directory is not present, a xml-
      * directory will be created.
      *
-     * @param s The socket of the connecting client.
+     * @param s          The socket of the connecting client.
+     * @param thumbnails The cache of thumbnails of the drawings on the server.
      */
-    ClientHandler(Socket s) {
+    ClientHandler(Socket s, ThumbnailCache thumbnails) {
         this.s = s;
+        this.thumbnails = thumbnails;
         try {
             os = new DataOutputStream(s.getOutputStream());
             is = new DataInputStream(s.getInputStream());
@@ -47,7 +50,8 @@ public class ClientHandler extends Thread {
     }
 
     /**
-     * Reads a message from the client and runs the appropriate method. Handled options are "list", "save" and "load".
+     * Reads a message from the client and runs the appropriate method. Handled options are "list", "save", "load" and
+     * "thumb".
      */
     @Override
     public void run() {
@@ -64,6 +68,9 @@ public class ClientHandler extends Thread {
                 case "load":
                     sendFileToClient();
                     break;
+                case "thumb":
+                    sendThumbnailToClient();
+                    break;
                 default:
                     System.out.println("Unhandled option. Closing connection...");
             }
@@ -143,6 +150,32 @@ public class ClientHandler extends Thread {
         }
     }
 
+    /**
+     * Sends a thumbnail of a drawing on the server to the client, as PNG data. If there is no thumbnail of the
+     * drawing, a length of 0 is sent.
+     */
+    public void sendThumbnailToClient() {
+        try {
+            System.out.println("Sending thumbnail to " + s.getInetAddress().getHostAddress() + "...");
+
+            // Receiving filename of drawing from client
+            String fileName = is.readUTF();
+
+            // Sending thumbnail to client
+            byte[] data;
+            try {
+                data = thumbnails.get(fileName);
+            } catch (java.io.IOException e) {
+                System.err.println(e.getMessage());
+                data = new byte[0];
+            }
+            os.writeInt(data.length);
+            os.write(data);
+        } catch (java.io.IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
     /**
      * Closes the connection to the client
      */
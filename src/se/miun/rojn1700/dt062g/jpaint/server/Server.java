@@ -2,6 +2,7 @@ package se.miun.rojn1700.dt062g.jpaint.server;
 
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
 
 /**
  * <h1>Server</h1>
@@ -38,11 +39,15 @@ public class Server {
             return;
         }
 
+        // Thumbnails of the drawings, at most 8 MB in memory and 64 MB on disk
+        ThumbnailCache thumbnails = new ThumbnailCache(Paths.get("xml"), Paths.get("xml", "thumbnails"),
+                8 * 1024 * 1024, 64 * 1024 * 1024);
+
         while(true) {
             try {
                 Socket s = ss.accept();
                 System.out.println("New connection by " + s.getInetAddress().getHostAddress());
-                new ClientHandler(s).start();
+                new ClientHandler(s, thumbnails).start();
             } catch (java.io.IOException e) {
                 System.err.println(e.getMessage());
             }
@@ -0,0 +1,179 @@
+package se.miun.rojn1700.dt062g.jpaint.server;
+
+import se.miun.rojn1700.dt062g.jpaint.BatchRenderer;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h1>ThumbnailCache</h1>
+ * This file contains the class ThumbnailCache, which renders small PNG previews of the drawings stored on the server
+ * and keeps them in a cache.
+ * <p>
+ * Thumbnails are keyed by the name and the modification time of the drawing file, so a drawing that is saved again
+ * gets a new thumbnail the next time it is asked for. The most recently used thumbnails are kept in memory, and all
+ * rendered thumbnails are written to a cache directory, so they survive a restart of the server. Both tiers are
+ * bounded by a size in bytes, and the least recently used thumbnails are dropped first. The file names come from the
+ * clients, so only the files right in the directory of the drawings are served, and names such as "../x.xml" are
+ * treated as missing files.
+ * <p>
+ * Giving proper comments in your program makes it more
+ * user friendly and it is assumed as a high quality code.
+ *
+ * @author Robin Jönsson(rojn1700)
+ * @version 1.0
+ * @since 2019-01-18
+ */
+public class ThumbnailCache {
+    /**
+     * The largest width and height of a thumbnail, in pixels.
+     */
+    public static final int THUMBNAIL_SIZE = 96;
+
+    private Path directory;
+    private Path cacheDirectory;
+    private long memoryLimit;
+    private long diskLimit;
+    private long memoryUsed;
+    /**
+     * The thumbnails in memory, in order of use with the least recently used first.
+     */
+    private LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The key of the newest thumbnail of each drawing file.
+     */
+    private Map<String, String> currentKeys = new HashMap<>();
+
+    /**
+     * Instantiates a new ThumbnailCache.
+     *
+     * @param directory      the directory of the drawing files.
+     * @param cacheDirectory the directory to write the thumbnails to.
+     * @param memoryLimit    the largest amount of bytes of thumbnails to keep in memory.
+     * @param diskLimit      the largest amount of bytes of thumbnails to keep in the cache directory.
+     */
+    public ThumbnailCache(Path directory, Path cacheDirectory, long memoryLimit, long diskLimit) {
+        this.directory = directory;
+        this.cacheDirectory = cacheDirectory;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+    }
+
+    /**
+     * Gets the thumbnail of a drawing file, rendering it if there is no thumbnail of the current version of the file.
+     *
+     * @param fileName the name of the drawing file in the directory.
+     * @return the thumbnail as PNG data.
+     * @throws IOException if the file does not exist in the directory, or the thumbnail could not be rendered.
+     */
+    public byte[] get(String fileName) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        Path file;
+        try {
+            file = root.resolve(fileName).normalize();
+        } catch (InvalidPathException e) {
+            throw new NoSuchFileException(fileName);
+        }
+        if (!root.equals(file.getParent()) || !Files.isRegularFile(file)) {
+            throw new NoSuchFileException(fileName);
+        }
+        // The normalized name, so the key and the cached file can not reach outside the cache directory either
+        fileName = file.getFileName().toString();
+        String key = fileName + "." + Files.getLastModifiedTime(file).toMillis() + ".png";
+        synchronized (this) {
+            byte[] data = memory.get(key);
+            if (data != null) {
+                return data;
+            }
+        }
+
+        Path cached = cacheDirectory.resolve(key);
+        byte[] data;
+        if (Files.isRegularFile(cached)) {
+            data = Files.readAllBytes(cached);
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(BatchRenderer.renderThumbnail(file.toFile(), THUMBNAIL_SIZE), "png", png);
+            data = png.toByteArray();
+            Files.createDirectories(cacheDirectory);
+            Files.write(cached, data);
+            trimDisk();
+        }
+        put(fileName, key, data);
+        return data;
+    }
+
+    /**
+     * Adds a thumbnail to memory, replacing older thumbnails of the same file and dropping the least recently used
+     * thumbnails while the memory limit is exceeded.
+     */
+    private synchronized void put(String fileName, String key, byte[] data) {
+        String old = currentKeys.put(fileName, key);
+        if (old != null && !old.equals(key)) {
+            remove(old);
+            try {
+                Files.deleteIfExists(cacheDirectory.resolve(old));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        remove(key);
+        memory.put(key, data);
+        memoryUsed += data.length;
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memoryUsed > memoryLimit && eldest.hasNext()) {
+            memoryUsed -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        byte[] data = memory.remove(key);
+        if (data != null) {
+            memoryUsed -= data.length;
+        }
+    }
+
+    /**
+     * Deletes the least recently used thumbnails in the cache directory while the disk limit is exceeded.
+     */
+    private synchronized void trimDisk() {
+        File[] files = cacheDirectory.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        long used = 0;
+        for (File file : files) {
+            used += file.length();
+        }
+        if (used <= diskLimit) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length && used > diskLimit; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                used -= length;
+            }
+        }
+    }
+}